@@ -0,0 +1,29 @@
+package basic.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Entry point of the benchmark jar. Runs JMH, writing results as JSON to
+ * jmh-result.json unless a result format is given on the command line.
+ */
+public class BenchmarkMain {
+
+    /**
+     * The main method executes at program execution.
+     * @param args JMH arguments.
+     * @throws Exception when JMH fails.
+     */
+    public static void main(String[] args) throws Exception{
+        ArrayList<String> jmhArgs = new ArrayList<>(Arrays.asList(args));
+        if (!jmhArgs.contains("-rf")){
+            jmhArgs.add("-rf");
+            jmhArgs.add("json");
+            if (!jmhArgs.contains("-rff")){
+                jmhArgs.add("-rff");
+                jmhArgs.add("jmh-result.json");
+            }
+        }
+        org.openjdk.jmh.Main.main(jmhArgs.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,164 @@
+package basic.bench;
+
+import basic.Bytecode;
+import basic.BytecodeCompiler;
+import basic.ExecutionContext;
+import basic.Interpreter;
+import basic.Program;
+import basic.VirtualMachine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per loop iteration of the interpreter's hot paths, on the tree
+ * walker and on the virtual machine. Each program loops ITERATIONS times
+ * over the statement measured, so scores are per statement executed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecutionBenchmark {
+
+    // loop iterations per benchmark invocation
+    public static final int ITERATIONS = 10000;
+
+    @Param({"tree", "vm"})
+    public String engine;
+
+    private NullOutputSink sink;
+    private Runner math;
+    private Runner conditions;
+    private Runner loop;
+    private Runner goSub;
+    private Runner read;
+    private Runner print;
+
+    /**
+     * A linked program ready to run on the chosen engine.
+     */
+    private final class Runner {
+
+        private final Program program;
+        private final Interpreter interpreter;
+        private final Bytecode bytecode;
+
+        /**
+         * Constructor, linking the program and compiling it for the virtual machine.
+         * @param source program.
+         * @throws Exception when program does not parse or link.
+         */
+        Runner(String source) throws Exception{
+            program = Programs.link(source);
+            interpreter = new Interpreter(program);
+            bytecode = engine.equals("vm") ? new BytecodeCompiler(program).compile() : null;
+        }
+
+        /**
+         * Runs the program once.
+         * @return chars printed so far, so output is consumed.
+         * @throws Exception on runtime error.
+         */
+        long run() throws Exception{
+            if (bytecode != null) new VirtualMachine(bytecode, sink).run();
+            else interpreter.run(new ExecutionContext(program, sink, InputStream.nullInputStream()));
+            return sink.getChars();
+        }
+    }
+
+    /**
+     * Builds each program.
+     * @throws Exception when a program does not parse or link.
+     */
+    @Setup
+    public void setup() throws Exception{
+        sink = new NullOutputSink();
+        math = new Runner(Programs.mathLoop(ITERATIONS));
+        conditions = new Runner(Programs.booleanLoop(ITERATIONS));
+        loop = new Runner(Programs.forLoop(ITERATIONS));
+        goSub = new Runner(Programs.goSubLoop(ITERATIONS));
+        read = new Runner(Programs.dataRead(ITERATIONS));
+        print = new Runner(Programs.printLoop(ITERATIONS));
+    }
+
+    /**
+     * Arithmetic on variables, the work of mathOp.
+     * @return chars printed.
+     * @throws Exception on runtime error.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ITERATIONS)
+    public long mathOp() throws Exception{
+        return math.run();
+    }
+
+    /**
+     * A condition that is never true, the work of evaluateBoolean.
+     * @return chars printed.
+     * @throws Exception on runtime error.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ITERATIONS)
+    public long evaluateBoolean() throws Exception{
+        return conditions.run();
+    }
+
+    /**
+     * A FOR loop around a single assignment of a constant.
+     * @return chars printed.
+     * @throws Exception on runtime error.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ITERATIONS)
+    public long forLoop() throws Exception{
+        return loop.run();
+    }
+
+    /**
+     * A GOSUB and RETURN round trip per iteration.
+     * @return chars printed.
+     * @throws Exception on runtime error.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ITERATIONS)
+    public long goSubReturn() throws Exception{
+        return goSub.run();
+    }
+
+    /**
+     * A READ of one datum per iteration.
+     * @return chars printed.
+     * @throws Exception on runtime error.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ITERATIONS)
+    public long dataRead() throws Exception{
+        return read.run();
+    }
+
+    /**
+     * A PRINT of three items per iteration into a sink that discards them.
+     * @return chars printed.
+     * @throws Exception on runtime error.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ITERATIONS)
+    public long print() throws Exception{
+        return print.run();
+    }
+}
@@ -0,0 +1,91 @@
+package basic.bench;
+
+import basic.Lexer;
+import basic.Parser;
+import basic.SymbolTable;
+import basic.Token;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of lexing and parsing generated programs of increasing size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrontEndBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int lines;
+
+    private String source;
+    private String[] sourceLines;
+    private ArrayList<Token> tokens;
+
+    /**
+     * Generates the program and lexes it once for the parser benchmark.
+     * @throws Exception when program does not lex.
+     */
+    @Setup
+    public void setup() throws Exception{
+        source = Programs.mixed(lines, 42);
+        sourceLines = source.split("\n");
+        tokens = Programs.lex(source);
+    }
+
+    /**
+     * Lexes the program a line at a time into token objects, as Lexer.lex does.
+     * @return number of tokens.
+     * @throws Exception when lexing error.
+     */
+    @Benchmark
+    public int lexLines() throws Exception{
+        Lexer lexer = new Lexer();
+        int count = 0;
+        for (String line : sourceLines) count += lexer.lex(line).size();
+        return count;
+    }
+
+    /**
+     * Lexes the whole program into packed tokens, as the token pipeline does.
+     * @return number of tokens.
+     * @throws Exception when lexing error.
+     */
+    @Benchmark
+    public int lexPacked() throws Exception{
+        Lexer lexer = new Lexer(source, new SymbolTable());
+        int start = 0;
+        while (start < source.length()){
+            int end = source.indexOf('\n', start);
+            if (end < 0) end = source.length();
+            lexer.lexLine(start, end);
+            start = end + 1;
+        }
+        return lexer.size();
+    }
+
+    /**
+     * Parses the lexed program into a tree.
+     * @return number of top level statements.
+     * @throws Exception on syntax error.
+     */
+    @Benchmark
+    public int parse() throws Exception{
+        return new Parser(new ArrayList<>(tokens)).parse().getStatements().size();
+    }
+}
@@ -0,0 +1,42 @@
+package basic.bench;
+
+import basic.OutputSink;
+
+/**
+ * Output sink that discards program output, counting chars so the work
+ * of formatting it cannot be optimized away.
+ */
+public class NullOutputSink extends OutputSink {
+
+    private long chars = 0;
+
+    /**
+     * Constructor.
+     */
+    public NullOutputSink(){
+        super(false, FlushPolicy.EXIT);
+    }
+
+    /**
+     * Counts and discards text.
+     * @param text text to write.
+     */
+    @Override
+    protected void write(String text){
+        chars += text.length();
+    }
+
+    /**
+     * Does nothing; nothing is kept.
+     */
+    @Override
+    public void flush(){}
+
+    /**
+     * Get number of chars written so far.
+     * @return number of chars.
+     */
+    public long getChars() {
+        return chars;
+    }
+}
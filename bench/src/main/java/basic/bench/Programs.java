@@ -0,0 +1,199 @@
+package basic.bench;
+
+import basic.Lexer;
+import basic.Parser;
+import basic.Program;
+import basic.StatementsNode;
+import basic.Token;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Generators of BASIC programs for benchmarks, and helpers to lex and
+ * parse them. Variable and label names are letters only, as a digit
+ * would end the name.
+ */
+public final class Programs {
+
+    private Programs(){}
+
+    /**
+     * Makes a name of letters only from a number.
+     * @param n number.
+     * @return name, distinct for each number.
+     */
+    public static String name(int n){
+        StringBuilder name = new StringBuilder();
+        do {
+            name.append((char) ('a' + n % 26));
+            n /= 26;
+        } while (n > 0);
+        return name.toString();
+    }
+
+    /**
+     * Generates a program that mixes every kind of statement, for front end
+     * benchmarks. Jumps all go to a label on the last line.
+     * @param lines number of lines, roughly.
+     * @param seed seed of random choices.
+     * @return source.
+     */
+    public static String mixed(int lines, long seed){
+        Random random = new Random(seed);
+        StringBuilder source = new StringBuilder();
+        int line = 0;
+        while (line < lines){
+            String var = name(random.nextInt(64));
+            String other = name(random.nextInt(64));
+            switch (random.nextInt(8)){
+                case 0:
+                case 1:
+                    source.append(var).append(" = ").append(other).append(" * ").append(random.nextInt(100))
+                            .append(" + ").append(var).append(" / 2.5\n");
+                    line++;
+                    break;
+                case 2:
+                    source.append("PRINT ").append(var).append(", \"value\", ").append(random.nextInt(1000)).append('\n');
+                    line++;
+                    break;
+                case 3:
+                    source.append("FOR ").append(var).append(" = 0 TO ").append(1 + random.nextInt(10)).append('\n')
+                            .append(other).append(" = ").append(var).append(" - 1\n")
+                            .append("NEXT ").append(var).append('\n');
+                    line += 3;
+                    break;
+                case 4:
+                    source.append("IF (").append(var).append(" < ").append(other).append(") THEN done\n");
+                    line++;
+                    break;
+                case 5:
+                    source.append("DATA ").append(random.nextInt(1000)).append(", ")
+                            .append(random.nextInt(1000)).append(".5, \"text\"\n");
+                    line++;
+                    break;
+                case 6:
+                    source.append("READ ").append(var).append(", ").append(other).append('\n');
+                    line++;
+                    break;
+                default:
+                    source.append(var).append(" = RANDOM()\n");
+                    line++;
+            }
+        }
+        return source.append("done: x = 0\n").toString();
+    }
+
+    /**
+     * Generates a loop of arithmetic on variables.
+     * @param iterations number of iterations.
+     * @return source.
+     */
+    public static String mathLoop(int iterations){
+        return "a = 3\nb = 4.5\nc = 2\n"
+                + "FOR i = 0 TO " + iterations + "\n"
+                + "x = a * b + c / b - a\n"
+                + "NEXT i\n";
+    }
+
+    /**
+     * Generates a loop of conditions on variables that are never true.
+     * @param iterations number of iterations.
+     * @return source.
+     */
+    public static String booleanLoop(int iterations){
+        return "a = 3\nb = 4\n"
+                + "FOR i = 0 TO " + iterations + "\n"
+                + "IF (a * 2 < b - i) THEN never\n"
+                + "NEXT i\n"
+                + "never: x = 0\n";
+    }
+
+    /**
+     * Generates a loop with the smallest body.
+     * @param iterations number of iterations.
+     * @return source.
+     */
+    public static String forLoop(int iterations){
+        return "FOR i = 0 TO " + iterations + "\n"
+                + "x = 1\n"
+                + "NEXT i\n";
+    }
+
+    /**
+     * Generates a loop that calls a subroutine each iteration.
+     * @param iterations number of iterations.
+     * @return source.
+     */
+    public static String goSubLoop(int iterations){
+        return "x = 0\n"
+                + "FOR i = 0 TO " + iterations + "\n"
+                + "GOSUB step\n"
+                + "NEXT i\n"
+                + "IF (0 = 0) THEN done\n"
+                + "step: x = 1\n"
+                + "RETURN\n"
+                + "done: y = 0\n";
+    }
+
+    /**
+     * Generates a loop that reads one datum each iteration, restoring first
+     * so the program can be run again.
+     * @param items number of data items and iterations.
+     * @return source.
+     */
+    public static String dataRead(int items){
+        StringBuilder source = new StringBuilder("RESTORE\n");
+        source.append("FOR i = 0 TO ").append(items).append("\nREAD a\nNEXT i\n");
+        for (int i = 0; i < items; i++){
+            source.append(i % 10 == 0 ? "DATA " : ", ");
+            source.append(i % 3 == 0 ? String.valueOf(i) : i % 3 == 1 ? i + ".5" : "\"s\"");
+            if (i % 10 == 9 || i == items - 1) source.append('\n');
+        }
+        return source.toString();
+    }
+
+    /**
+     * Generates a loop that prints a number, a string and a float each iteration.
+     * @param iterations number of iterations.
+     * @return source.
+     */
+    public static String printLoop(int iterations){
+        return "FOR i = 0 TO " + iterations + "\n"
+                + "PRINT i, \"item\", 2.5\n"
+                + "NEXT i\n";
+    }
+
+    /**
+     * Lexes a program line by line.
+     * @param source program.
+     * @return tokens of all lines.
+     * @throws Exception when lexing error.
+     */
+    public static ArrayList<Token> lex(String source) throws Exception{
+        Lexer lexer = new Lexer();
+        ArrayList<Token> tokens = new ArrayList<>();
+        for (String line : source.split("\n")) tokens.addAll(lexer.lex(line));
+        return tokens;
+    }
+
+    /**
+     * Lexes and parses a program.
+     * @param source program.
+     * @return top of tree.
+     * @throws Exception on syntax error.
+     */
+    public static StatementsNode parse(String source) throws Exception{
+        return new Parser(lex(source)).parse();
+    }
+
+    /**
+     * Lexes, parses and links a program.
+     * @param source program.
+     * @return linked program.
+     * @throws Exception on syntax error or missing label.
+     */
+    public static Program link(String source) throws Exception{
+        return Program.link(parse(source));
+    }
+}
@@ -0,0 +1,55 @@
+import java.util.ArrayList;
+
+/**
+ * Node that represents an element of an array, or in a DIM statement an
+ * array with its dimensions. The suffix of the name gives the type of
+ * elements: % for ints, $ for strings, and none for floats.
+ */
+public class ArrayNode extends Node {
+
+    private final VariableNode var;
+    private final ArrayList<Node> indices;
+
+    /**
+     * Constructor.
+     * @param var variable naming the array, whose slot holds it.
+     * @param indices expression of index in each dimension, or of size in a DIM statement.
+     */
+    public ArrayNode(VariableNode var, ArrayList<Node> indices){
+        this.var = var;
+        this.indices = new ArrayList<>(indices);
+    }
+
+    /**
+     * Get variable naming the array.
+     * @return variable.
+     */
+    public VariableNode getVar() {
+        return var;
+    }
+
+    /**
+     * Get index expressions, first dimension first.
+     * @return index expressions.
+     */
+    public ArrayList<Node> getIndices() {
+        return indices;
+    }
+
+    /**
+     * Get type of elements from the suffix of the name.
+     * @return BasicArray.INT, BasicArray.FLOAT or BasicArray.STRING.
+     */
+    public byte getType() {
+        return BasicArray.typeOf(var.getName());
+    }
+
+    /**
+     * Get string representation of the node.
+     * @return string representation of the node.
+     */
+    @Override
+    public String toString() {
+        return "Element: { array: \"" + var + "\", indices: \"" + indices + "\" }";
+    }
+}
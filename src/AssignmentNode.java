@@ -4,6 +4,7 @@
 public class AssignmentNode extends StatementNode {
 
     private final VariableNode variable;
+    private final ArrayNode element;
     private final Node value;
 
     /**
@@ -13,17 +14,37 @@ public class AssignmentNode extends StatementNode {
      */
     public AssignmentNode(VariableNode variable, Node value){
         this.variable = variable;
+        this.element = null;
         this.value = value;
     }
 
     /**
-     * Getter for assignment variable.
+     * Constructor for assigning an element of an array.
+     * @param element that will receive value.
+     * @param value that will be assigned.
+     */
+    public AssignmentNode(ArrayNode element, Node value){
+        this.variable = element.getVar();
+        this.element = element;
+        this.value = value;
+    }
+
+    /**
+     * Getter for assignment variable, which for an element is the array's.
      * @return assignment variable.
      */
     public VariableNode getVariable() {
         return this.variable;
     }
 
+    /**
+     * Getter for assigned element.
+     * @return element of array, or null when assigning a variable.
+     */
+    public ArrayNode getElement() {
+        return this.element;
+    }
+
     /**
      * Getter for assignment value.
      * @return assignment value.
@@ -41,7 +62,7 @@ public class AssignmentNode extends StatementNode {
         return "Assignment: { from: \""
                 + this.value
                 + "\", to: \""
-                + this.variable
+                + (this.element != null ? this.element : this.variable)
                 + "\" }";
     }
 }
@@ -0,0 +1,185 @@
+import java.io.IOException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Output sink that copies text into a ring buffer and writes it to
+ * another sink on a background thread, so printing never waits on io
+ * unless the ring is full.
+ */
+public class AsyncOutputSink extends OutputSink {
+
+    // default ring size of 64K chars
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final OutputSink target;
+    private final char[] ring;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+    private final Thread drainer;
+
+    // running totals of chars put in the ring, taken out, and written to target
+    private long produced;
+    private long consumed;
+    private long written;
+    private boolean closed;
+    private IOException failure;
+
+    /**
+     * Constructor, starting the background thread.
+     * @param target sink that receives the text; it is closed with this sink.
+     * @param capacity size of ring in chars.
+     * @param raw true to print items without header and tabs.
+     * @param policy when to flush.
+     */
+    public AsyncOutputSink(OutputSink target, int capacity, boolean raw, FlushPolicy policy){
+        super(raw, policy);
+        this.target = target;
+        this.ring = new char[capacity];
+        this.drainer = new Thread(this::drain, "basic-output");
+        this.drainer.setDaemon(true);
+        this.drainer.start();
+    }
+
+    /**
+     * Helper fn that rethrows a failure of the background thread.
+     * @throws IOException failure of background thread.
+     */
+    private void checkFailure() throws IOException{
+        if (failure != null) throw new IOException("Asynchronous output failed.", failure);
+    }
+
+    /**
+     * Copies text into the ring, waiting while it is full.
+     * @param text text to write.
+     * @throws IOException when the background thread failed.
+     */
+    @Override
+    protected void write(String text) throws IOException{
+        put(text, null);
+    }
+
+    /**
+     * Copies a string of the interpreter into the ring, waiting while it is full.
+     * @param text text to write.
+     * @throws IOException when the background thread failed.
+     */
+    @Override
+    protected void write(BasicString text) throws IOException{
+        put(null, text);
+    }
+
+    /**
+     * Helper fn that copies the chars of either kind of string into the ring.
+     * @param text java string, or null.
+     * @param string string of the interpreter, used when text is null.
+     * @throws IOException when the background thread failed.
+     */
+    private void put(String text, BasicString string) throws IOException{
+        int offset = 0;
+        int length = text != null ? text.length() : string.length();
+        lock.lock();
+        try {
+            while (offset < length){
+                checkFailure();
+                while (produced - consumed == ring.length && failure == null){
+                    notFull.awaitUninterruptibly();
+                }
+                checkFailure();
+                int start = (int) (produced % ring.length);
+                int count = Math.min(length - offset, ring.length - (int) (produced - consumed));
+                count = Math.min(count, ring.length - start);
+                if (text != null) text.getChars(offset, offset + count, ring, start);
+                else string.getChars(offset, offset + count, ring, start);
+                offset += count;
+                produced += count;
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Body of background thread, writing chunks of the ring to target.
+     */
+    private void drain(){
+        char[] chunk = new char[Math.min(ring.length, 8192)];
+        while (true){
+            int count;
+            lock.lock();
+            try {
+                while (produced == consumed && !closed) notEmpty.awaitUninterruptibly();
+                if (produced == consumed) return;
+                int start = (int) (consumed % ring.length);
+                count = Math.min(chunk.length, (int) (produced - consumed));
+                count = Math.min(count, ring.length - start);
+                System.arraycopy(ring, start, chunk, 0, count);
+                consumed += count;
+                notFull.signal();
+            } finally {
+                lock.unlock();
+            }
+            IOException error = null;
+            try {
+                target.write(new String(chunk, 0, count));
+            } catch (IOException e){
+                error = e;
+            }
+            lock.lock();
+            try {
+                if (error != null){
+                    failure = error;
+                    notFull.signalAll();
+                }
+                written += count;
+                drained.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Waits until the ring is written to target, then flushes target.
+     * @throws IOException when writing fails.
+     */
+    @Override
+    public void flush() throws IOException{
+        lock.lock();
+        try {
+            while (written != produced && failure == null) drained.awaitUninterruptibly();
+            checkFailure();
+        } finally {
+            lock.unlock();
+        }
+        target.flush();
+    }
+
+    /**
+     * Flushes, stops the background thread and closes target.
+     * @throws IOException when writing fails.
+     */
+    @Override
+    public void close() throws IOException{
+        try {
+            flush();
+        } finally {
+            lock.lock();
+            try {
+                closed = true;
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                drainer.join();
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+            target.close();
+        }
+    }
+}
@@ -1,7 +1,8 @@
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This program reads a file to lex, parse, and interpret.
@@ -12,51 +13,290 @@ import java.util.ArrayList;
  */
 public class Basic {
 
+    /**
+     * Helper fn that opens the sink for program output.
+     * @param outputFile file to write to, or null for standard output.
+     * @param async true to write on a background thread.
+     * @param raw true to print items without header and tabs.
+     * @param flushPolicy when to flush, or null for the default of the destination.
+     * @return output sink.
+     * @throws IOException when file cannot be opened.
+     */
+    private static OutputSink openOutput(String outputFile, boolean async, boolean raw,
+                                         OutputSink.FlushPolicy flushPolicy) throws IOException{
+        // files flush on exit and standard output per line unless told otherwise
+        if (flushPolicy == null)
+            flushPolicy = outputFile != null ? OutputSink.FlushPolicy.EXIT : OutputSink.FlushPolicy.LINE;
+        // when asynchronous, the wrapper formats and flushes and the target only writes
+        boolean targetRaw = raw && !async;
+        OutputSink.FlushPolicy targetPolicy = async ? OutputSink.FlushPolicy.EXIT : flushPolicy;
+        OutputSink out = outputFile != null
+                ? new ChannelOutputSink(Path.of(outputFile), ChannelOutputSink.DEFAULT_BUFFER, targetRaw, targetPolicy)
+                : new StreamOutputSink(System.out, targetRaw, targetPolicy);
+        if (async) out = new AsyncOutputSink(out, AsyncOutputSink.DEFAULT_CAPACITY, raw, flushPolicy);
+        return out;
+    }
+
+    /**
+     * Helper fn that waits for the first tokens of the file.
+     * @param parser parser to check, if the file is streamed.
+     * @param frontEnd front end to check, if the file is lexed in parallel.
+     * @return true if there is anything to parse.
+     */
+    private static boolean hasTokens(Parser parser, ParallelFrontEnd frontEnd){
+        try {
+            return frontEnd != null ? frontEnd.hasTokens() : parser.hasTokens();
+        } catch (Exception e){
+            System.out.println("Error: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Helper fn that writes the hot-spot report of a profiled run, and its
+     * collapsed stacks beside it with .folded appended to the name.
+     * @param profiler profiler of the run.
+     * @param profileFile file to write report to.
+     */
+    private static void writeProfile(Profiler profiler, String profileFile){
+        try {
+            profiler.writeReport(Path.of(profileFile));
+            profiler.writeStacks(Path.of(profileFile + ".folded"));
+        } catch (IOException e){
+            System.err.println("Failed to write profile: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Helper fn that runs every program of a directory or manifest and
+     * writes the summary, exiting with status 1 if any job did not succeed.
+     * @param jobsPath directory of .bas files, or manifest file.
+     * @param parallelism most jobs to run at once.
+     * @param timeoutMillis milliseconds each run may take, or 0 for no limit.
+     * @param summaryFile file to write summary to, or null for standard output.
+     * @param cacheDir directory of program images, or null.
+     * @param raw true to print items without header and tabs.
+     * @param flushPolicy when to flush output files, or null to flush on exit.
+     */
+    private static void runBatch(Path jobsPath, int parallelism, long timeoutMillis, String summaryFile,
+                                 String cacheDir, boolean raw, OutputSink.FlushPolicy flushPolicy){
+        List<BatchRunner.Result> results;
+        long started = System.nanoTime();
+        try (BatchRunner runner = new BatchRunner(parallelism, timeoutMillis,
+                cacheDir != null ? Path.of(cacheDir) : null, raw,
+                flushPolicy != null ? flushPolicy : OutputSink.FlushPolicy.EXIT)){
+            results = runner.run(BatchRunner.jobs(jobsPath));
+            BatchRunner.writeSummary(results, summaryFile != null ? Path.of(summaryFile) : null);
+        } catch (Exception e){
+            System.out.println("Batch failed: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        // tally statuses
+        int[] counts = new int[BatchRunner.Status.values().length];
+        for (BatchRunner.Result result : results) counts[result.status.ordinal()]++;
+        System.out.printf("Ran %d jobs in %d ms: %d ok, %d failed, %d timed out.%n", results.size(),
+                (System.nanoTime() - started) / 1_000_000, counts[BatchRunner.Status.OK.ordinal()],
+                counts[BatchRunner.Status.FAILED.ordinal()], counts[BatchRunner.Status.TIMEOUT.ordinal()]);
+        if (counts[BatchRunner.Status.OK.ordinal()] != results.size()) System.exit(1);
+    }
+
     /**
      * The main method executes at program execution.
      * @param args arguments from command line.
      */
     public static void main(String[] args) {
 
-        // if there is not only one argument, inform user and quit
-        if (args.length != 1){
-            System.out.println("Please pass one argument for filename.");
+        // read options preceding filename
+        boolean useVm = false;
+        String compileTarget = null;
+        String outputFile = null;
+        String dataFile = null;
+        String cacheDir = null;
+        String profileFile = null;
+        boolean jmx = false;
+        boolean batch = false;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        long timeoutMillis = 0;
+        String summaryFile = null;
+        boolean async = false;
+        boolean raw = false;
+        OutputSink.FlushPolicy flushPolicy = null;
+        int argIndex = 0;
+        while (argIndex < args.length && args[argIndex].startsWith("-")){
+            if (args[argIndex].equals("-vm")) useVm = true;
+            else if (args[argIndex].equals("-compile") && argIndex + 1 < args.length)
+                compileTarget = args[++argIndex];
+            else if (args[argIndex].equals("-out") && argIndex + 1 < args.length)
+                outputFile = args[++argIndex];
+            else if (args[argIndex].equals("-data") && argIndex + 1 < args.length)
+                dataFile = args[++argIndex];
+            else if (args[argIndex].equals("-cache") && argIndex + 1 < args.length)
+                cacheDir = args[++argIndex];
+            else if (args[argIndex].equals("-profile") && argIndex + 1 < args.length)
+                profileFile = args[++argIndex];
+            else if (args[argIndex].equals("-jmx")) jmx = true;
+            else if (args[argIndex].equals("-batch")) batch = true;
+            else if (args[argIndex].equals("-jobs") && argIndex + 1 < args.length
+                    && args[argIndex + 1].matches("[1-9]\\d{0,3}"))
+                parallelism = Integer.parseInt(args[++argIndex]);
+            else if (args[argIndex].equals("-timeout") && argIndex + 1 < args.length
+                    && args[argIndex + 1].matches("\\d{1,12}"))
+                timeoutMillis = Long.parseLong(args[++argIndex]);
+            else if (args[argIndex].equals("-summary") && argIndex + 1 < args.length)
+                summaryFile = args[++argIndex];
+            else if (args[argIndex].equals("-async")) async = true;
+            else if (args[argIndex].equals("-raw")) raw = true;
+            else if (args[argIndex].equals("-flush") && argIndex + 1 < args.length
+                    && args[argIndex + 1].matches("line|statement|exit"))
+                flushPolicy = OutputSink.FlushPolicy.valueOf(args[++argIndex].toUpperCase());
+            else {
+                System.out.println("Unknown option '" + args[argIndex] + "'.");
+                System.exit(1);
+            }
+            argIndex++;
+        }
+
+        // if there is not only one filename, inform user and quit
+        if (args.length - argIndex != 1){
+            System.out.println("Please pass one argument for filename, optionally preceded by -vm, -compile <target>, "
+                    + "-out <file>, -data <file>, -cache <dir>, -profile <file>, -jmx, -async, -raw or -flush <line|statement|exit>; "
+                    + "or pass -batch and a directory or manifest, optionally with -jobs <n>, -timeout <ms>, -summary <file>, "
+                    + "-cache <dir>, -raw or -flush <line|statement|exit>.");
             System.exit(1);
         }
 
-        // make list for tokens
-        ArrayList<Token> tokens = new ArrayList<>();
+        // run many programs, each with its own input and output, on the tree interpreter
+        if (batch) {
+            if (useVm || compileTarget != null || outputFile != null || dataFile != null || profileFile != null || jmx || async)
+                System.err.println("Batch mode ignores -vm, -compile, -out, -data, -profile, -jmx and -async.");
+            runBatch(Path.of(args[argIndex]), parallelism, timeoutMillis, summaryFile, cacheDir, raw, flushPolicy);
+            return;
+        }
 
-        // attempt to read file and iterate over lines
-        try {
-            for(String line : Files.readAllLines(Path.of(args[0]))){
-                Lexer lexer = new Lexer();
-                try{
-                    tokens.addAll(lexer.lex(line));
-                } catch (Exception e){
-                    System.out.println("Error: " + e.getMessage());
-                }
+        // time the load for JFR when asked to
+        ProgramLoadEvent load = null;
+        if (JfrEvents.ENABLED){
+            load = new ProgramLoadEvent();
+            load.begin();
+        }
+
+        // with a cache, a source that has not changed is loaded as a linked program image
+        Path path = Path.of(args[argIndex]);
+        Path imageFile = null;
+        byte[] hash = null;
+        ProgramImage image = null;
+        if (cacheDir != null) {
+            try {
+                hash = ProgramImage.hash(path);
+                imageFile = ProgramImage.cacheFile(Path.of(cacheDir), hash);
+                image = ProgramImage.read(imageFile, hash);
+            } catch (IOException e) {
+                // unreadable source is reported below
+            } catch (Exception e) {
+                System.err.println("Ignoring program image: " + e.getMessage());
+            }
+        }
+
+        // otherwise map file and lex it in parallel if large, or start lexing it in the background
+        TokenPipeline pipeline = null;
+        ParallelFrontEnd frontEnd = null;
+        if (image == null) {
+            try {
+                if (ParallelFrontEnd.worthwhile(path))
+                    frontEnd = new ParallelFrontEnd(path, ForkJoinPool.commonPool(), ParallelFrontEnd.MIN_CHUNK);
+                else pipeline = new TokenPipeline(path);
+            } catch (IOException e){
+                System.out.println("Failed to read file, please check filename.");
             }
-        } catch (IOException e){
-            System.out.println("Failed to read file, please check filename.");
         }
 
-        // attempt to parse line then interpret it
-        Parser parser = new Parser(tokens);
-        if (tokens.size() > 0) {
+        // attempt to parse tokens as they are lexed then interpret them
+        Parser parser = pipeline != null ? new Parser(pipeline) : new Parser(new ArrayList<>());
+        if (image != null || hasTokens(parser, frontEnd)) {
+            OutputSink out = null;
             try {
-                // parse
-                StatementsNode node = parser.parse();
-                // interpret
-                Interpreter interpreter = new Interpreter(node);
-                interpreter.initialize();
+                out = compileTarget != null ? null : openOutput(outputFile, async, raw, flushPolicy);
+                Program program;
+                if (image != null) {
+                    // report lexing errors as when the image was written
+                    for (String error : image.getErrors()) System.out.println("Error: " + error);
+                    program = image.toProgram();
+                    if (JfrEvents.ENABLED) load.cached = true;
+                } else {
+                    // parse, then link and store an image when caching
+                    long parsing = System.nanoTime();
+                    StatementsNode node = frontEnd != null ? frontEnd.parse() : parser.parse();
+                    long linking = System.nanoTime();
+                    program = Program.link(node);
+                    if (JfrEvents.ENABLED) {
+                        load.lexTime = frontEnd != null ? frontEnd.getLexNanos() : pipeline.getLexNanos();
+                        load.parseTime = linking - parsing;
+                        load.linkTime = System.nanoTime() - linking;
+                    }
+                    if (imageFile != null) {
+                        List<String> errors = frontEnd != null ? frontEnd.getErrors() : pipeline.getErrors();
+                        try {
+                            ProgramImage.write(imageFile, hash, program, errors);
+                        } catch (Exception e) {
+                            System.err.println("Failed to cache program: " + e.getMessage());
+                        }
+                    }
+                }
+                if (JfrEvents.ENABLED && load.shouldCommit()) {
+                    load.source = path.toString();
+                    load.statements = program.getTop().getStatements().size();
+                    load.commit();
+                }
+                // external data is read after the program's own
+                if (dataFile != null) {
+                    program = program.withData(DataSegment.load(Path.of(dataFile)));
+                }
+                if (compileTarget != null) {
+                    new ClassFileCompiler(program, ClassFileCompiler.classNameFor(args[argIndex]))
+                            .compileTo(Path.of(compileTarget));
+                    System.out.println("Compiled to " + compileTarget);
+                    return;
+                }
+                // interpret, or compile and run on virtual machine
+                if (useVm) {
+                    if (profileFile != null) System.err.println("Profiling needs the tree interpreter; ignoring -profile.");
+                    if (jmx) System.err.println("Metrics need the tree interpreter; ignoring -jmx.");
+                    new VirtualMachine(new BytecodeCompiler(program).compile(), out).run();
+                } else {
+                    // say which PARALLEL FOR loops could not be split
+                    for (String warning : program.getWarnings()) System.err.println(warning);
+                    ExecutionContext context = new ExecutionContext(program, out, System.in);
+                    if (jmx) context.registerMetrics();
+                    if (profileFile != null) {
+                        // the profile is written even if the program fails
+                        Profiler profiler = new Profiler(program);
+                        context.setProfiler(profiler);
+                        try {
+                            new Interpreter(program).run(context);
+                        } finally {
+                            writeProfile(profiler, profileFile);
+                        }
+                    } else new Interpreter(program).run(context);
+                }
+                out.close();
+                out = null;
                 // state completion
                 System.out.println("\nDone!\n");
 
             } catch (Exception e) {
                 e.printStackTrace();
+            } finally {
+                if (out != null) {
+                    try {
+                        out.close();
+                    } catch (IOException e) {
+                        System.out.println("Failed to write output: " + e.getMessage());
+                    }
+                }
             }
         } else System.out.println("File not readable (no tokens found).");
+        if (pipeline != null) pipeline.close();
 
     }
 }
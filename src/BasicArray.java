@@ -0,0 +1,227 @@
+import java.util.Arrays;
+
+/**
+ * Array made by DIM: its elements in one flat int, float or string array
+ * in row-major order, so the last index varies fastest. Each dimension of
+ * size n is indexed from 0 to n-1. Numbers start at 0 and strings empty.
+ * The MAT operations work on whole arrays through MatrixKernels.
+ */
+public class BasicArray {
+
+    // element types
+    public static final byte INT = 0;
+    public static final byte FLOAT = 1;
+    public static final byte STRING = 2;
+
+    // largest number of elements an array may have
+    private static final int MAX_LENGTH = Integer.MAX_VALUE - 8;
+
+    final String name;
+    final byte type;
+    final int[] dims;
+
+    // elements; only the array of the element type is made
+    final int[] ints;
+    final float[] floats;
+    final BasicString[] strings;
+
+    /**
+     * Constructor.
+     * @param name name of array, for messages.
+     * @param dims size of each dimension.
+     * @throws Exception when a size is below 1 or the array is too large.
+     */
+    public BasicArray(String name, int[] dims) throws Exception{
+        this.name = name;
+        this.type = typeOf(name);
+        this.dims = dims.clone();
+        long length = 1;
+        for (int size : dims){
+            if (size < 1) throw new Exception("Array '" + name + "' given size " + size + "; sizes start at 1.");
+            length *= size;
+            if (length > MAX_LENGTH) throw new Exception("Array '" + name + "' is too large.");
+        }
+        ints = type == INT ? new int[(int) length] : null;
+        floats = type == FLOAT ? new float[(int) length] : null;
+        strings = type == STRING ? new BasicString[(int) length] : null;
+        if (strings != null) Arrays.fill(strings, BasicString.EMPTY);
+    }
+
+    /**
+     * Gets the type of elements an array name holds from its suffix.
+     * @param name name of array.
+     * @return INT for names ending in %, STRING for $, otherwise FLOAT.
+     */
+    public static byte typeOf(String name){
+        if (name.endsWith("%")) return INT;
+        if (name.endsWith("$")) return STRING;
+        return FLOAT;
+    }
+
+    /**
+     * Get name of array.
+     * @return name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get type of elements.
+     * @return INT, FLOAT or STRING.
+     */
+    public byte getType() {
+        return type;
+    }
+
+    /**
+     * Get size of each dimension.
+     * @return sizes.
+     */
+    public int[] getDims() {
+        return dims.clone();
+    }
+
+    /**
+     * Get number of elements.
+     * @return number of elements.
+     */
+    public int length() {
+        return type == INT ? ints.length : type == FLOAT ? floats.length : strings.length;
+    }
+
+    /**
+     * Helper fn that gets the rows of an array used as a matrix; an array
+     * of one dimension is a column.
+     * @return rows.
+     * @throws Exception when the array has more than two dimensions.
+     */
+    private int rows() throws Exception{
+        if (dims.length > 2) throw new Exception("MAT multiply needs arrays of one or two dimensions, not '" + name + "'.");
+        return dims[0];
+    }
+
+    /**
+     * Helper fn that gets the columns of an array used as a matrix.
+     * @return columns.
+     */
+    private int columns(){
+        return dims.length == 2 ? dims[1] : 1;
+    }
+
+    /**
+     * Helper fn that checks an operand matches this array in type and shape.
+     * @param operand array operand.
+     * @throws Exception when it does not.
+     */
+    private void match(BasicArray operand) throws Exception{
+        if (operand.type != type)
+            throw new Exception("MAT needs arrays of one type, not '" + name + "' and '" + operand.name + "'.");
+        if (!Arrays.equals(operand.dims, dims))
+            throw new Exception("MAT needs arrays of one shape, not '" + name + "' " + Arrays.toString(dims)
+                    + " and '" + operand.name + "' " + Arrays.toString(operand.dims) + ".");
+    }
+
+    /**
+     * Helper fn that checks this array holds numbers.
+     * @throws Exception when it holds strings.
+     */
+    private void numeric() throws Exception{
+        if (type == STRING) throw new Exception("MAT arithmetic needs numeric arrays, not '" + name + "'.");
+    }
+
+    /**
+     * Copies the elements of another array of the same type and shape.
+     * @param from array to copy.
+     * @throws Exception when the arrays do not match.
+     */
+    public void copy(BasicArray from) throws Exception{
+        match(from);
+        if (type == INT) System.arraycopy(from.ints, 0, ints, 0, ints.length);
+        else if (type == FLOAT) System.arraycopy(from.floats, 0, floats, 0, floats.length);
+        else System.arraycopy(from.strings, 0, strings, 0, strings.length);
+    }
+
+    /**
+     * Sets every element to a number, truncated for an int array.
+     * @param value number.
+     * @throws Exception when the array holds strings.
+     */
+    public void fill(float value) throws Exception{
+        if (type == INT) Arrays.fill(ints, (int) value);
+        else if (type == FLOAT) Arrays.fill(floats, value);
+        else throw new Exception("Cannot fill string array '" + name + "' with a number.");
+    }
+
+    /**
+     * Sets every element to a string.
+     * @param value string.
+     * @throws Exception when the array holds numbers.
+     */
+    public void fill(BasicString value) throws Exception{
+        if (type != STRING) throw new Exception("Cannot fill numeric array '" + name + "' with a string.");
+        Arrays.fill(strings, value);
+    }
+
+    /**
+     * Sets each element to the sum, or difference, of the elements of two arrays.
+     * @param a first operand.
+     * @param b second operand.
+     * @param subtract true to subtract b from a.
+     * @throws Exception when the arrays do not match or hold strings.
+     */
+    public void add(BasicArray a, BasicArray b, boolean subtract) throws Exception{
+        numeric();
+        match(a);
+        match(b);
+        if (type == INT){
+            if (subtract) MatrixKernels.subtract(a.ints, b.ints, ints);
+            else MatrixKernels.add(a.ints, b.ints, ints);
+        }
+        else if (subtract) MatrixKernels.subtract(a.floats, b.floats, floats);
+        else MatrixKernels.add(a.floats, b.floats, floats);
+    }
+
+    /**
+     * Sets each element to that of another array multiplied by a number.
+     * @param k number.
+     * @param a operand.
+     * @throws Exception when the arrays do not match or hold strings.
+     */
+    public void scale(float k, BasicArray a) throws Exception{
+        numeric();
+        match(a);
+        if (type == INT) MatrixKernels.scale(k, a.ints, ints);
+        else MatrixKernels.scale(k, a.floats, floats);
+    }
+
+    /**
+     * Sets this array to the matrix product of two others; an array of
+     * one dimension is used as a column.
+     * @param a n by k operand.
+     * @param b k by m operand.
+     * @throws Exception when the arrays are not numeric of one type, or their shapes do not fit.
+     */
+    public void multiply(BasicArray a, BasicArray b) throws Exception{
+        numeric();
+        if (a.type != type || b.type != type)
+            throw new Exception("MAT needs arrays of one type, not '" + a.name + "', '" + b.name + "' and '" + name + "'.");
+        int n = a.rows();
+        int k = a.columns();
+        int m = b.columns();
+        if (b.rows() != k || rows() != n || columns() != m)
+            throw new Exception("MAT cannot multiply '" + a.name + "' " + Arrays.toString(a.dims) + " by '" + b.name
+                    + "' " + Arrays.toString(b.dims) + " into '" + name + "' " + Arrays.toString(dims) + ".");
+        // a result that is also an operand is made apart, then copied
+        boolean aliased = a == this || b == this;
+        if (type == INT){
+            int[] result = aliased ? new int[ints.length] : ints;
+            MatrixKernels.multiply(a.ints, b.ints, result, n, k, m);
+            if (aliased) System.arraycopy(result, 0, ints, 0, ints.length);
+        } else {
+            float[] result = aliased ? new float[floats.length] : floats;
+            MatrixKernels.multiply(a.floats, b.floats, result, n, k, m);
+            if (aliased) System.arraycopy(result, 0, floats, 0, floats.length);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import java.io.Reader;
+
+/**
+ * Linked BASIC script that runs without being lexed, parsed or linked
+ * again. Variables of the script are read from the bindings of the
+ * script context before it runs: integers go to the int store, other
+ * numbers to the float store, and strings and characters to the string
+ * store. After it runs, every variable holding a value is put in the
+ * engine scope as an Integer, Float or String. Output goes to the
+ * context's writer, and INPUT reads lines from its reader.
+ */
+public class BasicCompiledScript extends CompiledScript {
+
+    private final BasicScriptEngine engine;
+    private final Program program;
+    private final Interpreter interpreter;
+
+    /**
+     * Constructor.
+     * @param engine engine that compiled the script.
+     * @param program linked program of the script.
+     */
+    BasicCompiledScript(BasicScriptEngine engine, Program program){
+        this.engine = engine;
+        this.program = program;
+        this.interpreter = new Interpreter(program);
+    }
+
+    /**
+     * Helper fn that copies bound values into the stores of variables of the script.
+     * @param scriptContext context holding bindings.
+     * @param context context of the run.
+     * @throws ScriptException when a bound value is neither a number nor a string.
+     */
+    private void bind(ScriptContext scriptContext, ExecutionContext context) throws ScriptException{
+        String[] names = program.getSlotNames();
+        for (int slot = 0; slot < names.length; slot++){
+            if (names[slot] == null) continue;
+            Object value = scriptContext.getAttribute(names[slot]);
+            if (value == null) continue;
+            if (value instanceof Integer || value instanceof Short || value instanceof Byte
+                    || (value instanceof Long && (Long) value == ((Long) value).intValue())){
+                context.intStore[slot] = ((Number) value).intValue();
+                context.intSet[slot] = true;
+            }
+            else if (value instanceof Number){
+                context.floatStore[slot] = ((Number) value).floatValue();
+                context.floatSet[slot] = true;
+            }
+            else if (value instanceof CharSequence || value instanceof Character)
+                context.stringStore[slot] = value instanceof BasicString ? (BasicString) value
+                        : BasicString.of(value.toString());
+            else throw new ScriptException("Cannot bind '" + names[slot] + "' to a "
+                        + value.getClass().getName() + "; only numbers and strings can be bound.");
+        }
+    }
+
+    /**
+     * Helper fn that puts the value of each variable of the script in the engine scope.
+     * @param scriptContext context holding bindings.
+     * @param context context of the run.
+     */
+    private void unbind(ScriptContext scriptContext, ExecutionContext context){
+        String[] names = program.getSlotNames();
+        for (int slot = 0; slot < names.length; slot++){
+            if (names[slot] == null) continue;
+            Object value;
+            if (context.intSet[slot]) value = context.intStore[slot];
+            else if (context.floatSet[slot]) value = context.floatStore[slot];
+            else if (context.stringStore[slot] != null) value = context.stringStore[slot].toString();
+            else continue;
+            scriptContext.setAttribute(names[slot], value, ScriptContext.ENGINE_SCOPE);
+        }
+    }
+
+    /**
+     * Runs the script in a fresh execution context.
+     * @param scriptContext context holding bindings, reader and writer.
+     * @return null, as BASIC statements have no value.
+     * @throws ScriptException when binding a value fails or the script fails.
+     */
+    @Override
+    public Object eval(ScriptContext scriptContext) throws ScriptException{
+        Reader reader = scriptContext.getReader() != null ? scriptContext.getReader() : Reader.nullReader();
+        OutputSink out = new WriterOutputSink(scriptContext.getWriter(), false, OutputSink.FlushPolicy.EXIT);
+        ExecutionContext context = new ExecutionContext(program, out, reader);
+        bind(scriptContext, context);
+        try {
+            interpreter.run(context);
+        } catch (Exception e){
+            ScriptException error = new ScriptException(e.getMessage() != null ? e.getMessage() : e.toString());
+            error.initCause(e);
+            throw error;
+        } finally {
+            unbind(scriptContext, context);
+        }
+        return null;
+    }
+
+    @Override
+    public ScriptEngine getEngine() {
+        return engine;
+    }
+}
@@ -0,0 +1,102 @@
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+
+/**
+ * JSR-223 engine running BASIC scripts on the tree interpreter. Compiling
+ * a script links it once, through the factory's cache; evaluating it runs
+ * the linked program in a fresh execution context, so one compiled script
+ * may be evaluated by several threads at once.
+ */
+public class BasicScriptEngine extends AbstractScriptEngine implements Compilable {
+
+    private final BasicScriptEngineFactory factory;
+
+    /**
+     * Constructor.
+     * @param factory factory that made the engine, holding the cache of linked programs.
+     */
+    public BasicScriptEngine(BasicScriptEngineFactory factory){
+        this.factory = factory;
+    }
+
+    /**
+     * Helper fn that reads a script to its end.
+     * @param reader script.
+     * @return text of script.
+     * @throws ScriptException when reading fails.
+     */
+    private static String read(Reader reader) throws ScriptException{
+        try {
+            StringWriter script = new StringWriter();
+            reader.transferTo(script);
+            return script.toString();
+        } catch (IOException e){
+            throw new ScriptException(e);
+        }
+    }
+
+    /**
+     * Links a script, or takes it from the cache if it was linked before.
+     * @param script script.
+     * @return compiled script.
+     * @throws ScriptException when the script does not lex, parse or link.
+     */
+    @Override
+    public CompiledScript compile(String script) throws ScriptException{
+        return new BasicCompiledScript(this, factory.program(script));
+    }
+
+    /**
+     * Links a script read to its end.
+     * @param script reader of script.
+     * @return compiled script.
+     * @throws ScriptException when reading fails, or the script does not lex, parse or link.
+     */
+    @Override
+    public CompiledScript compile(Reader script) throws ScriptException{
+        return compile(read(script));
+    }
+
+    /**
+     * Compiles and runs a script.
+     * @param script script.
+     * @param context context holding bindings, reader and writer.
+     * @return null, as BASIC statements have no value.
+     * @throws ScriptException when the script does not compile or fails.
+     */
+    @Override
+    public Object eval(String script, ScriptContext context) throws ScriptException{
+        return compile(script).eval(context);
+    }
+
+    /**
+     * Compiles and runs a script read to its end.
+     * @param reader reader of script.
+     * @param context context holding bindings, reader and writer.
+     * @return null, as BASIC statements have no value.
+     * @throws ScriptException when the script cannot be read, does not compile or fails.
+     */
+    @Override
+    public Object eval(Reader reader, ScriptContext context) throws ScriptException{
+        return eval(read(reader), context);
+    }
+
+    @Override
+    public Bindings createBindings() {
+        return new SimpleBindings();
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory() {
+        return factory;
+    }
+}
@@ -0,0 +1,214 @@
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JSR-223 factory of BASIC script engines, found by ScriptEngineManager
+ * through META-INF/services. Engines made by one factory share an LRU
+ * cache of linked programs keyed by source, so a script evaluated again
+ * is neither lexed, parsed nor linked again. The cache holds 256 programs
+ * unless the basic.scriptCache system property says otherwise.
+ */
+public class BasicScriptEngineFactory implements ScriptEngineFactory {
+
+    // programs kept by default, and the property that changes it
+    public static final int DEFAULT_CACHE_SIZE = 256;
+    public static final String CACHE_SIZE_PROPERTY = "basic.scriptCache";
+
+    private static final String ENGINE_VERSION = "1.0";
+    private static final String LANGUAGE_VERSION = "1.0";
+
+    private final int cacheSize;
+
+    // linked programs by source, least recently used first
+    private final LinkedHashMap<String, Program> programs;
+
+    /**
+     * Constructor, sizing the cache from the system property.
+     */
+    public BasicScriptEngineFactory(){
+        this(Integer.getInteger(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE));
+    }
+
+    /**
+     * Constructor.
+     * @param cacheSize most linked programs to keep, or 0 to keep none.
+     */
+    public BasicScriptEngineFactory(int cacheSize){
+        this.cacheSize = cacheSize;
+        this.programs = new LinkedHashMap<>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Program> eldest){
+                return size() > BasicScriptEngineFactory.this.cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Lexes, parses and links a script. Unlike running a file, a lexing
+     * error or a statement that does not parse fails the whole script.
+     * @param source script.
+     * @return linked program.
+     * @throws ScriptException when the script does not lex, parse or link.
+     */
+    private static Program link(String source) throws ScriptException{
+        Lexer lexer = new Lexer();
+        ArrayList<Token> tokens = new ArrayList<>();
+        String[] lines = source.split("\r\n|\r|\n");
+        for (int line = 0; line < lines.length; line++){
+            try {
+                tokens.addAll(lexer.lex(lines[line]));
+            } catch (Exception e){
+                throw new ScriptException(e.getMessage(), null, line + 1);
+            }
+        }
+        try {
+            Parser parser = new Parser(tokens);
+            StatementsNode top = parser.parse();
+            if (parser.hasTokens())
+                throw new ScriptException("Syntax error: statement " + (top.getStatements().size() + 1)
+                        + " could not be parsed.");
+            return Program.link(top);
+        } catch (ScriptException e){
+            throw e;
+        } catch (Exception e){
+            throw new ScriptException(e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the linked program of a script from the cache, linking it on a miss.
+     * @param source script.
+     * @return linked program.
+     * @throws ScriptException when the script does not lex, parse or link.
+     */
+    Program program(String source) throws ScriptException{
+        synchronized (programs){
+            Program program = programs.get(source);
+            if (program != null) return program;
+        }
+        // link outside the lock; two threads missing at once both link, and either result will do
+        Program program = link(source);
+        if (cacheSize > 0){
+            synchronized (programs){
+                programs.put(source, program);
+            }
+        }
+        return program;
+    }
+
+    /**
+     * Get number of linked programs in the cache.
+     * @return programs cached.
+     */
+    public int getCachedCount() {
+        synchronized (programs){
+            return programs.size();
+        }
+    }
+
+    /**
+     * Empties the cache of linked programs.
+     */
+    public void clearCache() {
+        synchronized (programs){
+            programs.clear();
+        }
+    }
+
+    @Override
+    public String getEngineName() {
+        return "BASIC-like Interpreter";
+    }
+
+    @Override
+    public String getEngineVersion() {
+        return ENGINE_VERSION;
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return List.of("bas");
+    }
+
+    @Override
+    public List<String> getMimeTypes() {
+        return List.of("text/x-basic");
+    }
+
+    @Override
+    public List<String> getNames() {
+        return List.of("basic", "BASIC");
+    }
+
+    @Override
+    public String getLanguageName() {
+        return "BASIC";
+    }
+
+    @Override
+    public String getLanguageVersion() {
+        return LANGUAGE_VERSION;
+    }
+
+    /**
+     * Gets a standard parameter; engines may be used by several threads,
+     * as each evaluation runs in a context of its own.
+     * @param key parameter name.
+     * @return value of parameter, or null if unknown.
+     */
+    @Override
+    public Object getParameter(String key) {
+        switch (key){
+            case ScriptEngine.ENGINE: return getEngineName();
+            case ScriptEngine.ENGINE_VERSION: return getEngineVersion();
+            case ScriptEngine.NAME: return getNames().get(0);
+            case ScriptEngine.LANGUAGE: return getLanguageName();
+            case ScriptEngine.LANGUAGE_VERSION: return getLanguageVersion();
+            case "THREADING": return "MULTITHREADED";
+            default: return null;
+        }
+    }
+
+    /**
+     * BASIC has no objects, so there is no method call syntax.
+     * @param obj name of object.
+     * @param m name of method.
+     * @param args names of arguments.
+     * @return never.
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public String getMethodCallSyntax(String obj, String m, String... args) {
+        throw new UnsupportedOperationException("BASIC has no methods.");
+    }
+
+    /**
+     * Gets a statement printing a string.
+     * @param toDisplay string to print.
+     * @return PRINT statement.
+     */
+    @Override
+    public String getOutputStatement(String toDisplay) {
+        return "PRINT \"" + toDisplay + "\"";
+    }
+
+    /**
+     * Gets a program of statements, one per line.
+     * @param statements statements in order.
+     * @return program.
+     */
+    @Override
+    public String getProgram(String... statements) {
+        return String.join("\n", statements);
+    }
+
+    @Override
+    public ScriptEngine getScriptEngine() {
+        return new BasicScriptEngine(this);
+    }
+}
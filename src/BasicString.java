@@ -0,0 +1,260 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+
+/**
+ * String value of the tree interpreter. Chars are kept one byte each while
+ * they all fit Latin-1, and in a char array otherwise. A slice, as made by
+ * LEFT$, RIGHT$ and MID$, shares the chars of the string it is cut from
+ * rather than copying them. Joining two long strings with + makes a rope
+ * that only points at both, and the rope is copied into one flat array the
+ * first time its chars are read, so a string grown a piece at a time is
+ * not copied whole at every step.
+ */
+public final class BasicString implements CharSequence {
+
+    // the empty string
+    public static final BasicString EMPTY = new BasicString(new byte[0], 0, 0);
+
+    // joins of at most this many chars are copied flat at once
+    static final int FLAT_LIMIT = 64;
+
+    // longest string that can be made flat
+    private static final int MAX_LENGTH = Integer.MAX_VALUE - 8;
+
+    private final int offset;
+    private final int length;
+    private final boolean latin1;
+
+    // byte[] of Latin-1 or char[] holding the chars from offset; null until a rope is flattened
+    private volatile Object buffer;
+
+    // halves of a rope, dropped once it is flattened
+    private BasicString left;
+    private BasicString right;
+
+    /**
+     * Constructor of a flat string or slice.
+     * @param buffer byte[] of Latin-1 or char[] holding the chars.
+     * @param offset index of first char in buffer.
+     * @param length number of chars.
+     */
+    private BasicString(Object buffer, int offset, int length){
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        this.latin1 = buffer instanceof byte[];
+    }
+
+    /**
+     * Constructor of a rope.
+     * @param left first half.
+     * @param right second half.
+     */
+    private BasicString(BasicString left, BasicString right){
+        this.offset = 0;
+        this.length = left.length + right.length;
+        this.latin1 = left.latin1 && right.latin1;
+        this.left = left;
+        this.right = right;
+    }
+
+    /**
+     * Makes a string of the chars of a java string, one byte each if they all fit Latin-1.
+     * @param text chars of string.
+     * @return string.
+     */
+    public static BasicString of(String text){
+        if (text.isEmpty()) return EMPTY;
+        for (int i = 0; i < text.length(); i++)
+            if (text.charAt(i) > 0xFF) return new BasicString(text.toCharArray(), 0, text.length());
+        return new BasicString(text.getBytes(StandardCharsets.ISO_8859_1), 0, text.length());
+    }
+
+    /**
+     * Get number of chars.
+     * @return length.
+     */
+    @Override
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Check whether every char fits one byte.
+     * @return true if Latin-1.
+     */
+    public boolean isLatin1() {
+        return latin1;
+    }
+
+    /**
+     * Helper fn that gets the buffer, flattening a rope first.
+     * @return byte[] or char[] holding the chars from offset.
+     */
+    private Object flat(){
+        Object chars = buffer;
+        return chars != null ? chars : flatten();
+    }
+
+    /**
+     * Helper fn that copies the chars of a rope into one array. Halves are
+     * walked with a stack rather than recursion, as a string grown a char
+     * at a time is a rope as deep as it is long. Locks are only ever taken
+     * from a rope down to its halves, so two threads flattening ropes that
+     * share halves cannot deadlock.
+     * @return byte[] or char[] holding the chars.
+     */
+    private synchronized Object flatten(){
+        if (buffer != null) return buffer;
+        byte[] bytes = latin1 ? new byte[length] : null;
+        char[] chars = latin1 ? null : new char[length];
+        int position = 0;
+        ArrayDeque<BasicString> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()){
+            BasicString node = pending.pop();
+            Object source;
+            BasicString first;
+            BasicString second;
+            // a half may be flattened by another thread meanwhile
+            synchronized (node){
+                source = node.buffer;
+                first = node.left;
+                second = node.right;
+            }
+            if (source == null){
+                pending.push(second);
+                pending.push(first);
+                continue;
+            }
+            if (bytes != null) System.arraycopy(source, node.offset, bytes, position, node.length);
+            else if (source instanceof char[]) System.arraycopy(source, node.offset, chars, position, node.length);
+            else {
+                byte[] from = (byte[]) source;
+                for (int i = 0; i < node.length; i++) chars[position + i] = (char) (from[node.offset + i] & 0xFF);
+            }
+            position += node.length;
+        }
+        buffer = bytes != null ? bytes : chars;
+        left = null;
+        right = null;
+        return buffer;
+    }
+
+    /**
+     * Get char at an index.
+     * @param index index of char.
+     * @return char.
+     */
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length)
+            throw new StringIndexOutOfBoundsException("index " + index + ", length " + length);
+        Object chars = flat();
+        return chars instanceof byte[] ? (char) (((byte[]) chars)[offset + index] & 0xFF)
+                : ((char[]) chars)[offset + index];
+    }
+
+    /**
+     * Cuts a slice sharing the chars of this string.
+     * @param begin index of first char, inclusive.
+     * @param end index after last char.
+     * @return slice.
+     */
+    public BasicString slice(int begin, int end){
+        if (begin < 0 || begin > end || end > length)
+            throw new StringIndexOutOfBoundsException("begin " + begin + ", end " + end + ", length " + length);
+        if (begin == 0 && end == length) return this;
+        if (begin == end) return EMPTY;
+        return new BasicString(flat(), offset + begin, end - begin);
+    }
+
+    /**
+     * Cuts a slice sharing the chars of this string.
+     * @param begin index of first char, inclusive.
+     * @param end index after last char.
+     * @return slice.
+     */
+    @Override
+    public BasicString subSequence(int begin, int end) {
+        return slice(begin, end);
+    }
+
+    /**
+     * Joins another string after this one: copied when short, otherwise as a rope.
+     * @param other string to follow this one.
+     * @return joined string.
+     */
+    public BasicString concat(BasicString other){
+        if (other.length == 0) return this;
+        if (length == 0) return other;
+        if ((long) length + other.length > MAX_LENGTH) throw new OutOfMemoryError("String is too long.");
+        if (length + other.length > FLAT_LIMIT) return new BasicString(this, other);
+        int total = length + other.length;
+        if (latin1 && other.latin1){
+            byte[] bytes = new byte[total];
+            System.arraycopy(flat(), offset, bytes, 0, length);
+            System.arraycopy(other.flat(), other.offset, bytes, length, other.length);
+            return new BasicString(bytes, 0, total);
+        }
+        char[] chars = new char[total];
+        getChars(0, length, chars, 0);
+        other.getChars(0, other.length, chars, length);
+        return new BasicString(chars, 0, total);
+    }
+
+    /**
+     * Copies chars into an array, as String.getChars does.
+     * @param begin index of first char, inclusive.
+     * @param end index after last char.
+     * @param destination array to copy into.
+     * @param at index in destination of first char.
+     */
+    public void getChars(int begin, int end, char[] destination, int at){
+        if (begin < 0 || begin > end || end > length)
+            throw new StringIndexOutOfBoundsException("begin " + begin + ", end " + end + ", length " + length);
+        Object chars = flat();
+        if (chars instanceof char[]) System.arraycopy(chars, offset + begin, destination, at, end - begin);
+        else {
+            byte[] bytes = (byte[]) chars;
+            for (int i = begin; i < end; i++) destination[at++] = (char) (bytes[offset + i] & 0xFF);
+        }
+    }
+
+    /**
+     * Compares chars with another string.
+     * @param other object to compare.
+     * @return true if other is a string of the same chars.
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof BasicString) || ((BasicString) other).length != length) return false;
+        BasicString string = (BasicString) other;
+        for (int i = 0; i < length; i++)
+            if (charAt(i) != string.charAt(i)) return false;
+        return true;
+    }
+
+    /**
+     * Get hash of chars, as String.hashCode computes it.
+     * @return hash.
+     */
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = 0; i < length; i++) hash = 31 * hash + charAt(i);
+        return hash;
+    }
+
+    /**
+     * Get chars as a java string.
+     * @return java string.
+     */
+    @Override
+    public String toString() {
+        Object chars = flat();
+        return chars instanceof byte[] ? new String((byte[]) chars, offset, length, StandardCharsets.ISO_8859_1)
+                : new String((char[]) chars, offset, length);
+    }
+}
@@ -0,0 +1,385 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs many programs in one JVM on a bounded fork-join pool, each with an
+ * input and output file of its own. Jobs come from a directory, where each
+ * .bas file below it reads the .in file beside it, if there is one, and
+ * writes the .out file beside it; or from a manifest, each line naming a
+ * program, then optionally an input file ("-" for none) and an output
+ * file, separated by whitespace, with blank lines and lines starting with
+ * # skipped and relative paths resolved against the manifest's directory.
+ * Sources that appear more than once, under any name, are lexed, parsed
+ * and linked once and the Program shared, since running a program does
+ * not change it. Each run may be given a timeout, and the status and
+ * timings of every job are written as a tab-separated summary.
+ */
+public class BatchRunner implements AutoCloseable {
+
+    // buffer of each job's output file, 64 KiB
+    public static final int OUTPUT_BUFFER = 1 << 16;
+
+    /**
+     * How a job ended.
+     */
+    public enum Status {
+        OK, FAILED, TIMEOUT
+    }
+
+    /**
+     * A program to run with its input and output files.
+     */
+    static final class Job {
+
+        final Path program;
+        final Path input;
+        final Path output;
+
+        /**
+         * Constructor.
+         * @param program source file.
+         * @param input file INPUT reads lines from, or null for none.
+         * @param output file program output is written to.
+         */
+        Job(Path program, Path input, Path output){
+            this.program = program;
+            this.input = input;
+            this.output = output;
+        }
+    }
+
+    /**
+     * Status, timings and counts of a finished job.
+     */
+    static final class Result {
+
+        final Job job;
+        Status status = Status.FAILED;
+        // true when the program was linked for an earlier job with the same source
+        boolean shared = false;
+        long loadNanos = 0;
+        long runNanos = 0;
+        long statements = 0;
+        long written = 0;
+        String message = "";
+
+        /**
+         * Constructor.
+         * @param job job the result is of.
+         */
+        Result(Job job){
+            this.job = job;
+        }
+    }
+
+    /**
+     * Linked program of a source and its lexing errors, or why it did not load.
+     */
+    private static final class Loaded {
+
+        final Program program;
+        final List<String> errors;
+        final String failure;
+
+        /**
+         * Constructor.
+         * @param program linked program, or null if loading failed.
+         * @param errors messages of lexing errors.
+         * @param failure why loading failed, or null.
+         */
+        Loaded(Program program, List<String> errors, String failure){
+            this.program = program;
+            this.errors = errors;
+            this.failure = failure;
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final long timeoutMillis;
+    private final Path cacheDir;
+    private final boolean raw;
+    private final OutputSink.FlushPolicy flushPolicy;
+
+    // linked programs by SHA-256 of source, completed by the first job to need each
+    private final ConcurrentHashMap<String, CompletableFuture<Loaded>> programs = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     * @param parallelism most jobs to run at once.
+     * @param timeoutMillis milliseconds each run may take, or 0 for no limit.
+     * @param cacheDir directory of program images to load and store, or null.
+     * @param raw true to print items without header and tabs.
+     * @param flushPolicy when to flush output files.
+     */
+    public BatchRunner(int parallelism, long timeoutMillis, Path cacheDir, boolean raw,
+                       OutputSink.FlushPolicy flushPolicy){
+        this.pool = new ForkJoinPool(parallelism);
+        this.timeoutMillis = timeoutMillis;
+        this.cacheDir = cacheDir;
+        this.raw = raw;
+        this.flushPolicy = flushPolicy;
+    }
+
+    /**
+     * Helper fn that names the file beside a program with another extension.
+     * @param program source file.
+     * @param extension extension to replace the program's with, including the dot.
+     * @return sibling file.
+     */
+    private static Path sibling(Path program, String extension){
+        String name = program.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return program.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + extension);
+    }
+
+    /**
+     * Reads the jobs of a directory or manifest.
+     * @param path directory of .bas files, or manifest file.
+     * @return jobs in order.
+     * @throws Exception when the jobs cannot be read or a manifest line is malformed.
+     */
+    static List<Job> jobs(Path path) throws Exception{
+        return Files.isDirectory(path) ? fromDirectory(path) : fromManifest(path);
+    }
+
+    /**
+     * Makes a job of each .bas file below a directory, in path order.
+     * @param dir directory to search.
+     * @return jobs.
+     * @throws IOException when directory cannot be read.
+     */
+    static List<Job> fromDirectory(Path dir) throws IOException{
+        List<Path> sources;
+        try (Stream<Path> files = Files.walk(dir)){
+            sources = files.filter(file -> file.getFileName().toString().endsWith(".bas") && Files.isRegularFile(file))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        ArrayList<Job> jobs = new ArrayList<>(sources.size());
+        for (Path source : sources){
+            Path input = sibling(source, ".in");
+            jobs.add(new Job(source, Files.isRegularFile(input) ? input : null, sibling(source, ".out")));
+        }
+        return jobs;
+    }
+
+    /**
+     * Reads the jobs listed in a manifest.
+     * @param manifest manifest file.
+     * @return jobs in manifest order.
+     * @throws Exception when manifest cannot be read or a line has too many fields.
+     */
+    static List<Job> fromManifest(Path manifest) throws Exception{
+        Path base = manifest.toAbsolutePath().getParent();
+        ArrayList<Job> jobs = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)){
+            lineNumber++;
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] fields = line.split("\\s+");
+            if (fields.length > 3)
+                throw new Exception("Manifest line " + lineNumber + " has more than program, input and output.");
+            Path program = base.resolve(fields[0]);
+            Path input = fields.length > 1 && !fields[1].equals("-") ? base.resolve(fields[1]) : null;
+            Path output = fields.length > 2 ? base.resolve(fields[2]) : sibling(program, ".out");
+            jobs.add(new Job(program, input, output));
+        }
+        return jobs;
+    }
+
+    /**
+     * Helper fn that hashes a source.
+     * @param source bytes of source.
+     * @return SHA-256 of source.
+     */
+    private static byte[] hash(byte[] source){
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(source);
+        } catch (NoSuchAlgorithmException e){
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    /**
+     * Lexes, parses and links a source, or loads it from the image cache.
+     * Lexing errors are kept and the line skipped, as the token pipeline does.
+     * @param source bytes of source.
+     * @param hash SHA-256 of source.
+     * @return linked program, or why it did not load.
+     */
+    private Loaded load(byte[] source, byte[] hash){
+        Path imageFile = cacheDir != null ? ProgramImage.cacheFile(cacheDir, hash) : null;
+        try {
+            if (imageFile != null){
+                ProgramImage image = ProgramImage.read(imageFile, hash);
+                if (image != null) return new Loaded(image.toProgram(), image.getErrors(), null);
+            }
+        } catch (Exception e){
+            System.err.println("Ignoring program image: " + e.getMessage());
+        }
+        try {
+            Lexer lexer = new Lexer();
+            ArrayList<Token> tokens = new ArrayList<>();
+            ArrayList<String> errors = new ArrayList<>();
+            for (String line : new String(source, StandardCharsets.UTF_8).split("\r\n|\r|\n")){
+                try {
+                    tokens.addAll(lexer.lex(line));
+                } catch (Exception e){
+                    errors.add(e.getMessage());
+                }
+            }
+            Program program = Program.link(new Parser(tokens).parse());
+            if (imageFile != null){
+                try {
+                    ProgramImage.write(imageFile, hash, program, errors);
+                } catch (Exception e){
+                    System.err.println("Failed to cache program: " + e.getMessage());
+                }
+            }
+            return new Loaded(program, errors, null);
+        } catch (Exception e){
+            return new Loaded(null, List.of(), describe(e));
+        }
+    }
+
+    /**
+     * Helper fn that describes why a job failed.
+     * @param e exception thrown.
+     * @return message, or name of the exception if it has none.
+     */
+    private static String describe(Exception e){
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+
+    /**
+     * Runs one job, loading its program or sharing it with an earlier job.
+     * @param job job to run.
+     * @return result of job; failures are recorded in it, not thrown.
+     */
+    private Result runJob(Job job){
+        Result result = new Result(job);
+        long started = System.nanoTime();
+        Loaded loaded;
+        try {
+            byte[] source = Files.readAllBytes(job.program);
+            byte[] hash = hash(source);
+            String key = HexFormat.of().formatHex(hash);
+            CompletableFuture<Loaded> mine = new CompletableFuture<>();
+            CompletableFuture<Loaded> existing = programs.putIfAbsent(key, mine);
+            if (existing == null){
+                mine.complete(load(source, hash));
+                loaded = mine.join();
+            } else {
+                result.shared = true;
+                loaded = existing.join();
+            }
+        } catch (IOException e){
+            result.message = "Failed to read program: " + describe(e);
+            return result;
+        } finally {
+            result.loadNanos = System.nanoTime() - started;
+        }
+        if (loaded.program == null){
+            result.message = loaded.failure;
+            return result;
+        }
+
+        // run with the job's own context, so jobs sharing a program do not see each other
+        started = System.nanoTime();
+        try (InputStream input = job.input != null ? Files.newInputStream(job.input) : InputStream.nullInputStream();
+             OutputSink out = new ChannelOutputSink(job.output, OUTPUT_BUFFER, raw, flushPolicy)){
+            for (String error : loaded.errors) out.println("Error: " + error);
+            ExecutionContext context = new ExecutionContext(loaded.program, out, input);
+            if (timeoutMillis > 0) context.setTimeout(timeoutMillis);
+            try {
+                new Interpreter(loaded.program).run(context);
+                result.status = Status.OK;
+            } catch (Exception e){
+                result.status = context.isTimedOut() ? Status.TIMEOUT : Status.FAILED;
+                result.message = describe(e);
+            } finally {
+                result.statements = context.executed;
+                result.written = out.getWritten();
+            }
+        } catch (IOException e){
+            result.status = Status.FAILED;
+            result.message = "Failed to open input or output: " + describe(e);
+        } finally {
+            result.runNanos = System.nanoTime() - started;
+        }
+        return result;
+    }
+
+    /**
+     * Runs jobs on the pool and waits for all of them.
+     * @param jobs jobs to run.
+     * @return results in job order.
+     */
+    List<Result> run(List<Job> jobs){
+        ArrayList<ForkJoinTask<Result>> tasks = new ArrayList<>(jobs.size());
+        for (Job job : jobs) tasks.add(pool.submit(() -> runJob(job)));
+        ArrayList<Result> results = new ArrayList<>(jobs.size());
+        for (ForkJoinTask<Result> task : tasks) results.add(task.join());
+        return results;
+    }
+
+    /**
+     * Writes a tab-separated summary with a header line and a line per job.
+     * @param results results in job order.
+     * @param out writer to write to; not closed.
+     * @throws IOException when writing fails.
+     */
+    static void writeSummary(List<Result> results, Writer out) throws IOException{
+        out.write("job\tprogram\tstatus\tshared\tload_ms\trun_ms\tstatements\tchars\tmessage\n");
+        int number = 0;
+        for (Result result : results){
+            out.write(String.format("%d\t%s\t%s\t%s\t%.3f\t%.3f\t%d\t%d\t%s\n",
+                    ++number, result.job.program, result.status, result.shared,
+                    result.loadNanos / 1e6, result.runNanos / 1e6, result.statements, result.written,
+                    result.message.replace('\t', ' ').replace('\n', ' ')));
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the summary to a file, or to standard output if none is given.
+     * @param results results in job order.
+     * @param summaryFile file to write to, or null.
+     * @throws IOException when writing fails.
+     */
+    static void writeSummary(List<Result> results, Path summaryFile) throws IOException{
+        if (summaryFile == null){
+            writeSummary(results, new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+            return;
+        }
+        try (Writer out = Files.newBufferedWriter(summaryFile, StandardCharsets.UTF_8)){
+            writeSummary(results, out);
+        }
+    }
+
+    /**
+     * Shuts down the pool.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
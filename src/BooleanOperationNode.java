@@ -27,6 +27,9 @@ public class BooleanOperationNode extends Node {
     private Node right;
     private final Operator operator;
 
+    // specialized kind of each operand, filled in as the node executes
+    private final byte[] operandKinds = new byte[2];
+
     public BooleanOperationNode(Node left, Node right, Operator operator){
         this.left = left;
         this.right = right;
@@ -65,6 +68,14 @@ public class BooleanOperationNode extends Node {
         return operator;
     }
 
+    /**
+     * Get specialized operand kinds, left then right.
+     * @return operand kinds.
+     */
+    public byte[] getOperandKinds() {
+        return operandKinds;
+    }
+
     /**
      * Get string representation of node.
      * @return string representation of node.
@@ -0,0 +1,123 @@
+/**
+ * A program compiled for the bytecode virtual machine: an opcode
+ * array together with its constant pools.
+ */
+public class Bytecode {
+
+    private final int[] code;
+    private final float[] floats;
+    private final String[] strings;
+    private final FunctionNode[] functions;
+    private final int loopCount;
+    private final String[] slotNames;
+    private final DataSegment data;
+    private final int maxStack;
+
+    /**
+     * Constructor.
+     * @param code opcode array.
+     * @param floats float constant pool.
+     * @param strings string constant pool.
+     * @param functions function constant pool.
+     * @param loopCount number of FOR loops, each keeping its bounds and index while it runs.
+     * @param slotNames variable names indexed by slot.
+     * @param data data segment.
+     * @param maxStack maximum depth of numeric stack.
+     */
+    public Bytecode(
+            int[] code,
+            float[] floats,
+            String[] strings,
+            FunctionNode[] functions,
+            int loopCount,
+            String[] slotNames,
+            DataSegment data,
+            int maxStack
+    ){
+        this.code = code;
+        this.floats = floats;
+        this.strings = strings;
+        this.functions = functions;
+        this.loopCount = loopCount;
+        this.slotNames = slotNames;
+        this.data = data;
+        this.maxStack = maxStack;
+    }
+
+    /**
+     * Get opcode array.
+     * @return opcode array.
+     */
+    public int[] getCode() {
+        return code;
+    }
+
+    /**
+     * Get float constant pool.
+     * @return float constant pool.
+     */
+    public float[] getFloats() {
+        return floats;
+    }
+
+    /**
+     * Get string constant pool.
+     * @return string constant pool.
+     */
+    public String[] getStrings() {
+        return strings;
+    }
+
+    /**
+     * Get function constant pool.
+     * @return function constant pool.
+     */
+    public FunctionNode[] getFunctions() {
+        return functions;
+    }
+
+    /**
+     * Get number of FOR loops.
+     * @return number of loops.
+     */
+    public int getLoopCount() {
+        return loopCount;
+    }
+
+    /**
+     * Get variable names indexed by slot.
+     * @return variable names.
+     */
+    public String[] getSlotNames() {
+        return slotNames;
+    }
+
+    /**
+     * Get data segment.
+     * @return data segment.
+     */
+    public DataSegment getData() {
+        return data;
+    }
+
+    /**
+     * Get maximum depth of numeric stack.
+     * @return maximum stack depth.
+     */
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    /**
+     * Get string representation of the bytecode.
+     * @return string representation of the bytecode.
+     */
+    @Override
+    public String toString() {
+        return "Bytecode: { code: \"" + code.length +
+                "\", floats: \"" + floats.length +
+                "\", strings: \"" + strings.length +
+                "\", functions: \"" + functions.length +
+                "\" }";
+    }
+}
@@ -0,0 +1,416 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * Compiler that lowers a linked AST into bytecode for the virtual machine.
+ */
+public class BytecodeCompiler {
+
+    // linked program holding tree, labels and data
+    private final Program linked;
+
+    // code buffer
+    private int[] code = new int[256];
+    private int size = 0;
+
+    // constant pools
+    private final ArrayList<Float> floats = new ArrayList<>();
+    private final ArrayList<String> strings = new ArrayList<>();
+    private final ArrayList<FunctionNode> functions = new ArrayList<>();
+    private int loopCount = 0;
+
+    // statement addresses and jump operands awaiting a label address
+    private final IdentityHashMap<StatementNode, Integer> addresses = new IdentityHashMap<>();
+    private final HashMap<Integer, StatementNode> fixups = new HashMap<>();
+
+    // numeric stack depth tracking
+    private int depth = 0;
+    private int maxStack = 0;
+
+    /**
+     * Constructor.
+     * @param linked linked program to compile.
+     */
+    public BytecodeCompiler(Program linked){
+        this.linked = linked;
+    }
+
+    /**
+     * Helper fn that appends a word to the code buffer.
+     * @param word opcode or operand.
+     */
+    private void emit(int word){
+        if (size == code.length) {
+            int[] grown = new int[code.length * 2];
+            System.arraycopy(code, 0, grown, 0, size);
+            code = grown;
+        }
+        code[size++] = word;
+    }
+
+    /**
+     * Helper fn that emits an opcode with a jump operand to a statement.
+     * @param opcode jump opcode.
+     * @param target statement to jump to.
+     */
+    private void emitJump(int opcode, StatementNode target){
+        emit(opcode);
+        fixups.put(size, target);
+        emit(-1);
+    }
+
+    /**
+     * Helper fn that adjusts tracked stack depth.
+     * @param change change in depth.
+     */
+    private void adjustStack(int change){
+        depth += change;
+        if (depth > maxStack) maxStack = depth;
+    }
+
+    /**
+     * Helper fn that adds a float to the constant pool.
+     * @param value float constant.
+     * @return index of constant.
+     */
+    private int floatConstant(float value){
+        floats.add(value);
+        return floats.size() - 1;
+    }
+
+    /**
+     * Helper fn that adds a string to the constant pool.
+     * @param value string constant.
+     * @return index of constant.
+     */
+    private int stringConstant(String value){
+        int index = strings.indexOf(value);
+        if (index >= 0) return index;
+        strings.add(value);
+        return strings.size() - 1;
+    }
+
+    /**
+     * Helper fn that adds a function to the constant pool.
+     * @param node function node.
+     * @return index of function.
+     */
+    private int functionConstant(FunctionNode node){
+        functions.add(node);
+        return functions.size() - 1;
+    }
+
+    /**
+     * Compiles a numeric expression, leaving its value on the stack.
+     * @param node expression to compile.
+     * @return true if the expression yields an int, as mathOp would.
+     * @throws Exception on invalid syntax.
+     */
+    private boolean compileNumeric(Node node) throws Exception{
+        if (node instanceof IntegerNode){
+            emit(Opcode.PUSH);
+            emit(floatConstant((float) ((IntegerNode) node).getInteger()));
+            adjustStack(1);
+            return true;
+        }
+        else if (node instanceof FloatNode){
+            emit(Opcode.PUSH);
+            emit(floatConstant(((FloatNode) node).getFloat()));
+            adjustStack(1);
+        }
+        else if (node instanceof VariableNode){
+            emit(Opcode.LOAD);
+            emit(((VariableNode) node).getSymbol());
+            adjustStack(1);
+        }
+        else if (node instanceof FunctionNode){
+            emit(Opcode.CALL);
+            emit(functionConstant((FunctionNode) node));
+            adjustStack(1);
+        }
+        else if (node instanceof MathOpNode){
+            MathOpNode op = (MathOpNode) node;
+            compileNumeric(op.getLeft());
+            compileNumeric(op.getRight());
+            switch (op.getOperation()){
+                case ADD:
+                    emit(Opcode.ADD);
+                    break;
+                case SUBTRACT:
+                    emit(Opcode.SUBTRACT);
+                    break;
+                case MULTIPLY:
+                    emit(Opcode.MULTIPLY);
+                    break;
+                case DIVIDE:
+                    emit(Opcode.DIVIDE);
+                    break;
+                default:
+                    throw new Exception("Invalid operation.");
+            }
+            adjustStack(-1);
+            if (op.isKeepInt()) emit(Opcode.TRUNCATE);
+            return op.isKeepInt();
+        }
+        else if (node instanceof ArrayNode)
+            throw new Exception("Arrays can only run on the tree interpreter.");
+        else if (node instanceof ConcatNode)
+            throw new Exception("String concatenation can only run on the tree interpreter.");
+        else throw new Exception("Math operation has invalid syntax.");
+        return false;
+    }
+
+    /**
+     * Compiles an assignment.
+     * @param node assignment node.
+     * @throws Exception on invalid syntax.
+     */
+    private void compileAssignment(AssignmentNode node) throws Exception{
+        Node value = node.getValue();
+        int slot = node.getVariable().getSymbol();
+        if (node.getElement() != null || value instanceof ArrayNode)
+            throw new Exception("Arrays can only run on the tree interpreter.");
+        if (value instanceof ConcatNode)
+            throw new Exception("String concatenation can only run on the tree interpreter.");
+        // string functions left after folding take variables
+        if (value instanceof FunctionNode && ((FunctionNode) value).returnsString())
+            throw new Exception("Assigning string functions of variables can only run on the tree interpreter.");
+        if (value instanceof IntegerNode){
+            emit(Opcode.STORE_IMM);
+            emit(slot);
+            emit(((IntegerNode) value).getInteger());
+        }
+        else if (value instanceof StringNode){
+            emit(Opcode.STORE_STRING);
+            emit(slot);
+            emit(stringConstant(((StringNode) value).getString()));
+        }
+        else if (value instanceof FloatNode || value instanceof MathOpNode){
+            emit(compileNumeric(value) ? Opcode.STORE_INT : Opcode.STORE_FLOAT);
+            emit(slot);
+            adjustStack(-1);
+        }
+        // the interpreter only assigns literals and math operations
+    }
+
+    /**
+     * Compiles a print statement.
+     * @param node print node.
+     * @throws Exception on invalid syntax.
+     */
+    private void compilePrint(PrintNode node) throws Exception{
+        emit(Opcode.PRINT_HEADER);
+        for (Node printable : node.getNodes()){
+            if (printable instanceof IntegerNode){
+                emit(Opcode.PRINT_IMM);
+                emit(((IntegerNode) printable).getInteger());
+            }
+            else if (printable instanceof StringNode){
+                emit(Opcode.PRINT_STRING);
+                emit(stringConstant(((StringNode) printable).getString()));
+            }
+            else if (printable instanceof VariableNode){
+                emit(Opcode.PRINT_VAR);
+                emit(((VariableNode) printable).getSymbol());
+            }
+            else if (printable instanceof FunctionNode){
+                emit(Opcode.PRINT_CALL);
+                emit(functionConstant((FunctionNode) printable));
+            }
+            else {
+                emit(compileNumeric(printable) ? Opcode.PRINT_INT : Opcode.PRINT_FLOAT);
+                adjustStack(-1);
+            }
+        }
+        emit(Opcode.PRINT_END);
+    }
+
+    /**
+     * Compiles an if statement as a conditional jump.
+     * @param node if node.
+     * @throws Exception on invalid syntax.
+     */
+    private void compileIf(IfNode node) throws Exception{
+        if (node.isAlwaysTaken()){
+            emitJump(Opcode.JUMP, node.getTarget());
+            return;
+        }
+        emitJump(compileCondition(node.getCondition()), node.getTarget());
+        adjustStack(-2);
+    }
+
+    /**
+     * Compiles both sides of a condition, leaving them on the stack.
+     * @param condition condition to compile.
+     * @return conditional jump opcode taken when the condition holds.
+     * @throws Exception on invalid syntax.
+     */
+    private int compileCondition(BooleanOperationNode condition) throws Exception{
+        compileNumeric(condition.getLeft());
+        compileNumeric(condition.getRight());
+        int opcode;
+        switch (condition.getOperator()){
+            case EQUALS:
+                opcode = Opcode.IF_EQ;
+                break;
+            case NOTEQUALS:
+                opcode = Opcode.IF_NE;
+                break;
+            case GT:
+                opcode = Opcode.IF_GT;
+                break;
+            case GTE:
+                opcode = Opcode.IF_GE;
+                break;
+            case LT:
+                opcode = Opcode.IF_LT;
+                break;
+            case LTE:
+                opcode = Opcode.IF_LE;
+                break;
+            default:
+                throw new Exception("Boolean operation invalid.");
+        }
+        return opcode;
+    }
+
+    /**
+     * Compiles a for loop with its body inline.
+     * @param node for node.
+     * @throws Exception on invalid syntax.
+     */
+    private void compileFor(ForNode node) throws Exception{
+        int loop = loopCount++;
+        int slot = node.getVar().getSymbol();
+        // evaluate bounds, then count iterations, exiting past NEXT when there are none
+        compileNumeric(node.getStart());
+        compileNumeric(node.getStop());
+        compileNumeric(node.getStep());
+        adjustStack(-3);
+        emit(Opcode.FOR);
+        emit(loop);
+        emit(slot);
+        int exit = size;
+        emit(-1);
+        // body, then step back to its start
+        int body = size;
+        compileStatements(node.getStatementsNode());
+        emit(Opcode.NEXT);
+        emit(loop);
+        emit(slot);
+        emit(body);
+        code[exit] = size;
+    }
+
+    /**
+     * Compiles a while loop with its body inline.
+     * @param node while node.
+     * @throws Exception on invalid syntax.
+     */
+    private void compileWhile(WhileNode node) throws Exception{
+        // test condition, jumping over the exit into the body when it holds
+        int test = size;
+        emit(compileCondition(node.getCondition()));
+        adjustStack(-2);
+        emit(size + 3);
+        emit(Opcode.JUMP);
+        int exit = size;
+        emit(-1);
+        // body, then back to the test
+        compileStatements(node.getStatementsNode());
+        emit(Opcode.JUMP);
+        emit(test);
+        code[exit] = size;
+    }
+
+    /**
+     * Compiles a single statement.
+     * @param node statement to compile.
+     * @throws Exception on invalid syntax.
+     */
+    private void compileStatement(StatementNode node) throws Exception{
+        addresses.put(node, size);
+        if (node instanceof AssignmentNode)
+            compileAssignment((AssignmentNode) node);
+        else if (node instanceof PrintNode)
+            compilePrint((PrintNode) node);
+        else if (node instanceof IfNode)
+            compileIf((IfNode) node);
+        else if (node instanceof ForNode)
+            compileFor((ForNode) node);
+        else if (node instanceof WhileNode)
+            compileWhile((WhileNode) node);
+        else if (node instanceof DimNode || node instanceof MatNode)
+            throw new Exception("Arrays can only run on the tree interpreter.");
+        else if (node instanceof GoSubNode)
+            emitJump(Opcode.GOSUB, ((GoSubNode) node).getTarget());
+        else if (node instanceof ReturnNode)
+            emit(Opcode.RETURN);
+        else if (node instanceof ReadNode){
+            for (VariableNode var : ((ReadNode) node).getNodes()){
+                emit(Opcode.READ);
+                emit(var.getSymbol());
+            }
+        }
+        else if (node instanceof RestoreNode){
+            emit(Opcode.RESTORE);
+            emit(((RestoreNode) node).getPosition());
+        }
+        else if (node instanceof InputNode){
+            for (Node input : ((InputNode) node).getNodes()){
+                if (input instanceof StringNode){
+                    emit(Opcode.PROMPT);
+                    emit(stringConstant(((StringNode) input).getString()));
+                } else {
+                    emit(Opcode.INPUT);
+                    emit(((VariableNode) input).getSymbol());
+                }
+            }
+        }
+        else throw new Exception("Statement '" + node + "' cannot be compiled.");
+    }
+
+    /**
+     * Compiles a list of statements in order.
+     * @param node statements to compile.
+     * @throws Exception on invalid syntax.
+     */
+    private void compileStatements(StatementsNode node) throws Exception{
+        for (StatementNode statement : node.getStatements())
+            compileStatement(statement);
+    }
+
+    /**
+     * Compiles the linked tree into bytecode.
+     * @return compiled bytecode.
+     * @throws Exception on invalid syntax.
+     */
+    public Bytecode compile() throws Exception{
+        compileStatements(linked.getTop());
+        int halt = size;
+        emit(Opcode.HALT);
+
+        // resolve jumps; a labelled DATA statement is gone, so jumping to it ends the program
+        for (Integer operand : fixups.keySet()){
+            Integer address = addresses.get(fixups.get(operand));
+            code[operand] = address == null ? halt : address;
+        }
+
+        // build pools
+        int[] finalCode = new int[size];
+        System.arraycopy(code, 0, finalCode, 0, size);
+        float[] floatPool = new float[floats.size()];
+        for (int i = 0; i < floatPool.length; i++) floatPool[i] = floats.get(i);
+        return new Bytecode(
+                finalCode,
+                floatPool,
+                strings.toArray(new String[0]),
+                functions.toArray(new FunctionNode[0]),
+                loopCount,
+                linked.getSlotNames(),
+                linked.getData(),
+                maxStack
+        );
+    }
+}
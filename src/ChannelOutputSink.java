@@ -0,0 +1,119 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Output sink that writes UTF-8 to a file through a large direct buffer.
+ */
+public class ChannelOutputSink extends OutputSink {
+
+    // default buffer size of 1 MiB
+    public static final int DEFAULT_BUFFER = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    /**
+     * Constructor, truncating the file if it exists.
+     * @param path file to write to.
+     * @param bufferSize size of buffer in bytes.
+     * @param raw true to print items without header and tabs.
+     * @param policy when to flush.
+     * @throws IOException when file cannot be opened.
+     */
+    public ChannelOutputSink(Path path, int bufferSize, boolean raw, FlushPolicy policy) throws IOException{
+        super(raw, policy);
+        this.channel = FileChannel.open(path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Helper fn that writes the buffer's contents to the channel.
+     * @throws IOException when writing fails.
+     */
+    private void drain() throws IOException{
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Writes text into the buffer, draining it when full.
+     * @param text text to write.
+     * @throws IOException when writing fails.
+     */
+    @Override
+    protected void write(String text) throws IOException{
+        int length = text.length();
+        for (int i = 0; i < length; i++){
+            char c = text.charAt(i);
+            // anything beyond ASCII is encoded from here in one go
+            if (c >= 0x80){
+                byte[] bytes = text.substring(i).getBytes(StandardCharsets.UTF_8);
+                int offset = 0;
+                while (offset < bytes.length){
+                    if (!buffer.hasRemaining()) drain();
+                    int count = Math.min(buffer.remaining(), bytes.length - offset);
+                    buffer.put(bytes, offset, count);
+                    offset += count;
+                }
+                return;
+            }
+            if (!buffer.hasRemaining()) drain();
+            buffer.put((byte) c);
+        }
+    }
+
+    /**
+     * Writes a string of the interpreter into the buffer without making a
+     * java string of it; a Latin-1 char takes at most two bytes of UTF-8.
+     * @param text text to write.
+     * @throws IOException when writing fails.
+     */
+    @Override
+    protected void write(BasicString text) throws IOException{
+        if (!text.isLatin1()){
+            write(text.toString());
+            return;
+        }
+        int length = text.length();
+        for (int i = 0; i < length; i++){
+            char c = text.charAt(i);
+            if (c >= 0x80){
+                if (!buffer.hasRemaining()) drain();
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                c = (char) (0x80 | (c & 0x3F));
+            }
+            if (!buffer.hasRemaining()) drain();
+            buffer.put((byte) c);
+        }
+    }
+
+    /**
+     * Writes buffered bytes to the file.
+     * @throws IOException when writing fails.
+     */
+    @Override
+    public void flush() throws IOException{
+        drain();
+    }
+
+    /**
+     * Flushes and closes the file.
+     * @throws IOException when writing fails.
+     */
+    @Override
+    public void close() throws IOException{
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,566 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * Compiler that translates a linked AST into a standalone JVM class.
+ * Each statement becomes a case of a dispatch switch, so labels are
+ * branch targets and GOSUB pushes the case to return to on an int
+ * stack. Variables become static fields, one per store and slot. The
+ * cases are split in order across block methods, each a switch of its
+ * own that returns the case to go to when it leaves its block, since a
+ * JVM method holds at most 64 KiB of bytecode.
+ */
+public class ClassFileCompiler {
+
+    // chars of source after which a block method is closed at the next case; about
+    // 5 KiB of bytecode, under the 8000 bytes above which HotSpot will not compile a method
+    private static final int BLOCK_CHARS = 16384;
+
+    // linked program holding tree, labels and data
+    private final Program linked;
+    private final String className;
+
+    // generated source and case number of each statement
+    private final StringBuilder source = new StringBuilder();
+    private final IdentityHashMap<StatementNode, Integer> cases = new IdentityHashMap<>();
+    private final IdentityHashMap<StatementNode, Integer> endCases = new IdentityHashMap<>();
+    private int caseCount = 0;
+    private int loopCount = 0;
+    private String[] slotNames;
+
+    // first case of each block method, and where the open block's source starts
+    private final ArrayList<Integer> blockStarts = new ArrayList<>();
+    private int blockSource;
+
+    /**
+     * Constructor.
+     * @param linked linked program to compile.
+     * @param className name of class to generate.
+     */
+    public ClassFileCompiler(Program linked, String className){
+        this.linked = linked;
+        this.className = className;
+    }
+
+    /**
+     * Derives a valid class name from a file name.
+     * @param fileName name of source file.
+     * @return class name.
+     */
+    public static String classNameFor(String fileName){
+        String base = Path.of(fileName).getFileName().toString();
+        if (base.contains(".")) base = base.substring(0, base.lastIndexOf('.'));
+        StringBuilder name = new StringBuilder();
+        for (char c : base.toCharArray())
+            name.append(Character.isJavaIdentifierPart(c) ? c : '_');
+        if (name.length() == 0 || !Character.isJavaIdentifierStart(name.charAt(0)))
+            name.insert(0, "Basic_");
+        name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+        return name.toString();
+    }
+
+    /**
+     * Helper fn that appends an indented line of source.
+     * @param indent indentation level.
+     * @param line line to append.
+     */
+    private void line(int indent, String line){
+        source.append("    ".repeat(indent)).append(line).append('\n');
+    }
+
+    /**
+     * Helper fn that makes a Java string literal.
+     * @param string string to quote.
+     * @return quoted literal.
+     */
+    private static String quote(String string){
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : string.toCharArray()){
+            if (c == '"' || c == '\\') quoted.append('\\').append(c);
+            else if (c >= ' ' && c < 127) quoted.append(c);
+            else quoted.append(String.format("\\u%04x", (int) c));
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Helper fn that makes a Java float literal.
+     * @param value float value.
+     * @return float literal.
+     */
+    private static String floatLiteral(float value){
+        if (Float.isNaN(value)) return "Float.NaN";
+        if (Float.isInfinite(value)) return value > 0 ? "Float.POSITIVE_INFINITY" : "Float.NEGATIVE_INFINITY";
+        return Float.toString(value) + "f";
+    }
+
+    /**
+     * Numbers statements in emission order, giving each NEXT and WEND its own case.
+     * @param node statements to number.
+     */
+    private void numberStatements(StatementsNode node){
+        for (StatementNode statement : node.getStatements()){
+            cases.put(statement, caseCount++);
+            if (statement instanceof ForNode){
+                numberStatements(((ForNode) statement).getStatementsNode());
+                endCases.put(statement, caseCount++);
+            }
+            else if (statement instanceof WhileNode){
+                numberStatements(((WhileNode) statement).getStatementsNode());
+                endCases.put(statement, caseCount++);
+            }
+        }
+    }
+
+    /**
+     * Helper fn that opens a block method whose first case is given.
+     * @param first first case of block.
+     */
+    private void openBlock(int first){
+        line(1, "static int block" + blockStarts.size() + "(int pc) {");
+        line(2, "while (true) switch (pc) {");
+        blockStarts.add(first);
+        blockSource = source.length();
+    }
+
+    /**
+     * Helper fn that closes the open block method; a case it does not hold
+     * is returned for the dispatch loop to find.
+     */
+    private void closeBlock(){
+        line(3, "default:");
+        line(4, "return pc;");
+        line(2, "}");
+        line(1, "}");
+        line(0, "");
+    }
+
+    /**
+     * Helper fn that starts a case, first moving to a new block method if
+     * the open one is full. The old block then ends with the same case
+     * returning it, so statements that fall through reach the new block.
+     * @param number case number.
+     */
+    private void caseLabel(int number){
+        if (source.length() - blockSource > BLOCK_CHARS){
+            line(3, "case " + number + ":");
+            line(4, "return " + number + ";");
+            closeBlock();
+            openBlock(number);
+        }
+        line(3, "case " + number + ":");
+    }
+
+    /**
+     * Helper fn that gets the case a jump goes to.
+     * @param target statement jumped to.
+     * @return case number; a labelled DATA statement is gone, so it ends the program.
+     */
+    private int targetCase(StatementNode target){
+        Integer number = cases.get(target);
+        return number == null ? caseCount : number;
+    }
+
+    /**
+     * Generates a float expression mirroring the interpreter's mathOp.
+     * @param node expression node.
+     * @return Java expression.
+     * @throws Exception on invalid syntax.
+     */
+    private String numeric(Node node) throws Exception{
+        if (node instanceof IntegerNode)
+            return floatLiteral((float) ((IntegerNode) node).getInteger());
+        else if (node instanceof FloatNode)
+            return floatLiteral(((FloatNode) node).getFloat());
+        else if (node instanceof VariableNode){
+            int slot = ((VariableNode) node).getSymbol();
+            return "(hi" + slot + " ? (float) i" + slot + " : hf" + slot + " ? f" + slot +
+                    " : raise(" + quote("Variable '" + slotNames[slot] + "' not found.") + "))";
+        }
+        else if (node instanceof FunctionNode){
+            if (((FunctionNode) node).getFunction() == TokenType.FN_RANDOM)
+                return "(float) random()";
+            // pure functions of literals are evaluated now, failures are raised when reached
+            try {
+                Node result = Interpreter.function((FunctionNode) node);
+                if (result instanceof IntegerNode) return floatLiteral((float) ((IntegerNode) result).getInteger());
+                if (result instanceof FloatNode) return floatLiteral(((FloatNode) result).getFloat());
+                return "raise(" + quote("Function does not return numeric type.") + ")";
+            } catch (Exception e){
+                return "raise(" + quote(String.valueOf(e.getMessage())) + ")";
+            }
+        }
+        else if (node instanceof MathOpNode){
+            MathOpNode op = (MathOpNode) node;
+            String operator;
+            switch (op.getOperation()){
+                case ADD:
+                    operator = " + ";
+                    break;
+                case SUBTRACT:
+                    operator = " - ";
+                    break;
+                case MULTIPLY:
+                    operator = " * ";
+                    break;
+                case DIVIDE:
+                    operator = " / ";
+                    break;
+                default:
+                    throw new Exception("Invalid operation.");
+            }
+            String expression = "(" + numeric(op.getLeft()) + operator + numeric(op.getRight()) + ")";
+            return op.isKeepInt() ? "(float) (int) " + expression : expression;
+        }
+        else if (node instanceof ArrayNode)
+            throw new Exception("Arrays can only run on the tree interpreter.");
+        else if (node instanceof ConcatNode)
+            throw new Exception("String concatenation can only run on the tree interpreter.");
+        throw new Exception("Math operation has invalid syntax.");
+    }
+
+    /**
+     * Generates a condition mirroring the interpreter's evaluateBoolean.
+     * @param condition boolean node.
+     * @return Java boolean expression.
+     * @throws Exception on invalid syntax.
+     */
+    private String condition(BooleanOperationNode condition) throws Exception{
+        String operator;
+        switch (condition.getOperator()){
+            case EQUALS:
+                operator = " == ";
+                break;
+            case NOTEQUALS:
+                operator = " != ";
+                break;
+            case GT:
+                operator = " > ";
+                break;
+            case GTE:
+                operator = " >= ";
+                break;
+            case LT:
+                operator = " < ";
+                break;
+            case LTE:
+                operator = " <= ";
+                break;
+            default:
+                throw new Exception("Boolean operation invalid.");
+        }
+        return numeric(condition.getLeft()) + operator + numeric(condition.getRight());
+    }
+
+    /**
+     * Generates printing of one item.
+     * @param node item to print.
+     * @throws Exception on invalid syntax.
+     */
+    private void generatePrint(Node node) throws Exception{
+        line(4, "System.out.print(\"\\t\");");
+        if (node instanceof IntegerNode)
+            line(4, "System.out.println(" + ((IntegerNode) node).getInteger() + ");");
+        else if (node instanceof StringNode)
+            line(4, "System.out.println(" + quote(((StringNode) node).getString()) + ");");
+        else if (node instanceof VariableNode){
+            int slot = ((VariableNode) node).getSymbol();
+            line(4, "if (hi" + slot + ") System.out.println(i" + slot + ");");
+            line(4, "else if (hf" + slot + ") System.out.println(f" + slot + ");");
+            line(4, "else if (s" + slot + " != null) System.out.println(s" + slot + ");");
+            line(4, "else System.err.println(" + quote("Variable '" + slotNames[slot] + "' does not exist.") + ");");
+        }
+        else if (node instanceof FunctionNode){
+            if (((FunctionNode) node).getFunction() == TokenType.FN_RANDOM){
+                line(4, "System.out.println(random());");
+                return;
+            }
+            try {
+                Node result = Interpreter.function((FunctionNode) node);
+                if (result instanceof StringNode)
+                    line(4, "System.out.println(" + quote(((StringNode) result).getString()) + ");");
+                else if (result instanceof IntegerNode)
+                    line(4, "System.out.println(" + ((IntegerNode) result).getInteger() + ");");
+                else
+                    line(4, "System.out.println(" + floatLiteral(((FloatNode) result).getFloat()) + ");");
+            } catch (Exception e){
+                line(4, "raise(" + quote(String.valueOf(e.getMessage())) + ");");
+            }
+        }
+        else if (node instanceof MathOpNode && ((MathOpNode) node).isKeepInt())
+            line(4, "System.out.println((int) " + numeric(node) + ");");
+        else
+            line(4, "System.out.println(" + numeric(node) + ");");
+    }
+
+    /**
+     * Generates a single statement as a switch case.
+     * @param node statement to generate.
+     * @throws Exception on invalid syntax.
+     */
+    private void generateStatement(StatementNode node) throws Exception{
+        int number = cases.get(node);
+        caseLabel(number);
+        if (node instanceof AssignmentNode){
+            Node value = ((AssignmentNode) node).getValue();
+            int slot = ((AssignmentNode) node).getVariable().getSymbol();
+            if (((AssignmentNode) node).getElement() != null || value instanceof ArrayNode)
+                throw new Exception("Arrays can only run on the tree interpreter.");
+            if (value instanceof ConcatNode)
+                throw new Exception("String concatenation can only run on the tree interpreter.");
+            // string functions left after folding take variables
+            if (value instanceof FunctionNode && ((FunctionNode) value).returnsString())
+                throw new Exception("Assigning string functions of variables can only run on the tree interpreter.");
+            if (value instanceof IntegerNode)
+                line(4, "i" + slot + " = " + ((IntegerNode) value).getInteger() + "; hi" + slot + " = true;");
+            else if (value instanceof StringNode)
+                line(4, "s" + slot + " = " + quote(((StringNode) value).getString()) + ";");
+            else if (value instanceof MathOpNode && ((MathOpNode) value).isKeepInt())
+                line(4, "i" + slot + " = (int) " + numeric(value) + "; hi" + slot + " = true;");
+            else if (value instanceof FloatNode || value instanceof MathOpNode)
+                line(4, "f" + slot + " = " + numeric(value) + "; hf" + slot + " = true;");
+        }
+        else if (node instanceof PrintNode){
+            line(4, "System.out.println(\"Printing:\");");
+            for (Node printable : ((PrintNode) node).getNodes())
+                generatePrint(printable);
+        }
+        else if (node instanceof IfNode){
+            String test = ((IfNode) node).isAlwaysTaken() ? "if (true)" :
+                    "if (" + condition(((IfNode) node).getCondition()) + ")";
+            line(4, test + " { pc = " + targetCase(((IfNode) node).getTarget()) + "; continue; }");
+        }
+        else if (node instanceof GoSubNode){
+            line(4, "if (rsp == ret.length) ret = java.util.Arrays.copyOf(ret, rsp * 2);");
+            line(4, "ret[rsp++] = " + (number + 1) + ";");
+            line(4, "pc = " + targetCase(((GoSubNode) node).getTarget()) + ";");
+            line(4, "continue;");
+        }
+        else if (node instanceof ReturnNode){
+            line(4, "if (rsp == 0) throw fail(\"Invalid RETURN: No node exists to return to.\");");
+            line(4, "pc = ret[--rsp];");
+            line(4, "continue;");
+        }
+        else if (node instanceof ReadNode){
+            for (VariableNode var : ((ReadNode) node).getNodes()){
+                int slot = var.getSymbol();
+                line(4, "datum = dataIndex < DATA.length ? DATA[dataIndex++] : null;");
+                line(4, "if (datum instanceof Integer) { i" + slot + " = (Integer) datum; hi" + slot + " = true; }");
+                line(4, "else if (datum instanceof Float) { f" + slot + " = (Float) datum; hf" + slot + " = true; }");
+                line(4, "else if (datum instanceof String) s" + slot + " = (String) datum;");
+                line(4, "else throw fail(" + quote("Node '" + var.getName() + "' is of unsupported type.") + ");");
+            }
+        }
+        else if (node instanceof RestoreNode)
+            line(4, "dataIndex = " + ((RestoreNode) node).getPosition() + ";");
+        else if (node instanceof InputNode){
+            for (Node input : ((InputNode) node).getNodes()){
+                if (input instanceof StringNode)
+                    line(4, "System.out.println(" + quote(((StringNode) input).getString()) + ");");
+                else {
+                    int slot = ((VariableNode) input).getSymbol();
+                    line(4, "if (in == null) in = new java.util.Scanner(System.in);");
+                    line(4, "System.out.print(" + quote(slotNames[slot] + ": ") + ");");
+                    line(4, "s" + slot + " = in.nextLine();");
+                    line(4, "System.out.print(\"\\n\");");
+                }
+            }
+        }
+        else if (node instanceof ForNode){
+            // evaluate bounds once and count iterations, leaving past NEXT when there are none
+            ForNode forNode = (ForNode) node;
+            int loop = loopCount++;
+            int slot = forNode.getVar().getSymbol();
+            int next = endCases.get(forNode);
+            line(4, "loopTrips[" + loop + "] = trips(loopStart[" + loop + "] = " + numeric(forNode.getStart())
+                    + ", " + numeric(forNode.getStop()) + ", loopStep[" + loop + "] = " + numeric(forNode.getStep()) + ");");
+            line(4, "if (loopTrips[" + loop + "] == 0) { hf" + slot + " = false; pc = " + (next + 1) + "; continue; }");
+            line(4, "loopIndex[" + loop + "] = 0; f" + slot + " = (float) loopStart[" + loop + "]; hf" + slot + " = true;");
+            for (StatementNode statement : forNode.getStatements())
+                generateStatement(statement);
+            caseLabel(next);
+            line(4, "if (++loopIndex[" + loop + "] < loopTrips[" + loop + "]) { f" + slot + " = (float) (loopStart["
+                    + loop + "] + loopIndex[" + loop + "] * loopStep[" + loop + "]); hf" + slot
+                    + " = true; pc = " + (number + 1) + "; continue; }");
+            line(4, "hf" + slot + " = false;");
+        }
+        else if (node instanceof WhileNode){
+            // test condition, leaving past WEND when it fails, and come back after the body
+            WhileNode whileNode = (WhileNode) node;
+            int wend = endCases.get(whileNode);
+            line(4, "if (!(" + condition(whileNode.getCondition()) + ")) { pc = " + (wend + 1) + "; continue; }");
+            for (StatementNode statement : whileNode.getStatements())
+                generateStatement(statement);
+            caseLabel(wend);
+            line(4, "pc = " + number + ";");
+            line(4, "continue;");
+        }
+        else if (node instanceof DimNode || node instanceof MatNode)
+            throw new Exception("Arrays can only run on the tree interpreter.");
+        else throw new Exception("Statement '" + node + "' cannot be compiled.");
+    }
+
+    /**
+     * Helper fn that counts the FOR loops in a tree.
+     * @param nodeWS top node of tree.
+     * @return number of FOR loops.
+     */
+    private static int countLoops(NodeWithStatements nodeWS){
+        int count = 0;
+        for (StatementNode node : nodeWS.getStatements()){
+            if (node instanceof ForNode) count++;
+            if (node instanceof NodeWithStatements) count += countLoops((NodeWithStatements) node);
+        }
+        return count;
+    }
+
+    /**
+     * Generates Java source for the linked tree.
+     * @return Java source of the class.
+     * @throws Exception on invalid syntax.
+     */
+    public String generateSource() throws Exception{
+        slotNames = linked.getSlotNames();
+        numberStatements(linked.getTop());
+
+        // class header and variable fields
+        line(0, "// Generated by Basic; do not edit.");
+        line(0, "public final class " + className + " {");
+        line(0, "");
+        for (int slot = 0; slot < slotNames.length; slot++){
+            // slots are symbol IDs, and labels have IDs too
+            if (slotNames[slot] == null) continue;
+            line(1, "// variable " + slotNames[slot]);
+            line(1, "static int i" + slot + "; static boolean hi" + slot + ";");
+            line(1, "static float f" + slot + "; static boolean hf" + slot + ";");
+            line(1, "static String s" + slot + ";");
+        }
+
+        // data items and input
+        StringBuilder data = new StringBuilder();
+        DataSegment segment = linked.getData();
+        for (int i = 0; i < segment.size(); i++){
+            if (data.length() > 0) data.append(", ");
+            if (segment.tagAt(i) == DataSegment.INT) data.append(segment.intAt(i));
+            else if (segment.tagAt(i) == DataSegment.FLOAT) data.append(floatLiteral(segment.floatAt(i)));
+            else data.append(quote(segment.stringAt(i)));
+        }
+        line(1, "static final Object[] DATA = { " + data + " };");
+        line(1, "static int dataIndex;");
+        line(1, "static java.util.Scanner in;");
+        line(0, "");
+
+        // runtime helpers
+        line(1, "static RuntimeException fail(String message) { return new RuntimeException(message); }");
+        line(1, "static float raise(String message) { throw fail(message); }");
+        line(1, "static int random() { return (int) Math.floor(Math.random() * 1000) + 1; }");
+        // same count as ForNode.trips
+        line(1, "static long trips(double start, double stop, double step) {");
+        line(2, "boolean up = stop >= start;");
+        line(2, "if (!(up ? start < stop : start > stop)) return 0;");
+        line(2, "if (up ? !(step > 0) : !(step < 0)) return Long.MAX_VALUE;");
+        line(2, "double estimate = Math.ceil((stop - start) / step);");
+        line(2, "long trips = estimate < Long.MAX_VALUE ? (long) estimate : Long.MAX_VALUE;");
+        line(2, "while (trips > 0 && !(up ? start + (trips - 1) * step < stop : start + (trips - 1) * step > stop)) trips--;");
+        line(2, "while (trips < Long.MAX_VALUE && (up ? start + trips * step < stop : start + trips * step > stop)) trips++;");
+        line(2, "return trips;");
+        line(1, "}");
+        line(0, "");
+
+        // state of loops and subroutines, shared by the block methods
+        int loops = Math.max(countLoops(linked.getTop()), 1);
+        line(1, "static double[] loopStart = new double[" + loops + "], loopStep = new double[" + loops + "];");
+        line(1, "static long[] loopTrips = new long[" + loops + "], loopIndex = new long[" + loops + "];");
+        line(1, "static int[] ret = new int[16];");
+        line(1, "static int rsp;");
+        line(1, "static Object datum;");
+        line(0, "");
+
+        // statements as cases of block methods, the last falling through to the end case
+        openBlock(0);
+        for (StatementNode statement : linked.getTop().getStatements())
+            generateStatement(statement);
+        line(3, "case " + caseCount + ":");
+        line(4, "return " + caseCount + ";");
+        closeBlock();
+
+        // dispatch loop, running the block holding each case until the end case
+        line(1, "public static void main(String[] args) {");
+        line(2, "int pc = 0;");
+        line(2, "while (pc != " + caseCount + ") {");
+        for (int block = blockStarts.size() - 1; block >= 0; block--)
+            line(3, (block == blockStarts.size() - 1 ? "" : "else ") + "if (pc >= " + blockStarts.get(block)
+                    + ") pc = block" + block + "(pc);");
+        line(3, "else throw fail(\"Invalid case \" + pc + \".\");");
+        line(2, "}");
+        line(1, "}");
+        line(0, "}");
+        return source.toString();
+    }
+
+    /**
+     * Compiles the tree into a class file in a directory, or a runnable jar
+     * when the target ends in ".jar".
+     * @param target output directory or jar file.
+     * @throws Exception when generation or compilation fails.
+     */
+    public void compileTo(Path target) throws Exception{
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        if (javac == null)
+            throw new Exception("No Java compiler available; run Basic on a JDK to compile.");
+
+        // write source to a scratch directory and compile it
+        Path work = Files.createTempDirectory("basic");
+        try {
+            Path sourceFile = work.resolve(className + ".java");
+            Files.writeString(sourceFile, generateSource());
+            boolean jar = target.toString().endsWith(".jar");
+            Path classes = jar ? work : target;
+            Files.createDirectories(classes);
+            ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+            int status = javac.run(null, null, diagnostics,
+                    "-nowarn", "-d", classes.toString(), sourceFile.toString());
+            if (status != 0)
+                throw new Exception("Compilation of generated class failed:\n"
+                        + diagnostics.toString(StandardCharsets.UTF_8).trim());
+            if (jar) writeJar(classes.resolve(className + ".class"), target);
+        } finally {
+            try (Stream<Path> paths = Files.walk(work)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * Helper fn that writes a runnable jar holding one class.
+     * @param classFile compiled class.
+     * @param jarFile jar to write.
+     * @throws IOException when writing fails.
+     */
+    private void writeJar(Path classFile, Path jarFile) throws IOException{
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, className);
+        if (jarFile.getParent() != null) Files.createDirectories(jarFile.getParent());
+        try (OutputStream out = Files.newOutputStream(jarFile);
+             JarOutputStream jar = new JarOutputStream(out, manifest)) {
+            jar.putNextEntry(new JarEntry(className + ".class"));
+            jar.write(Files.readAllBytes(classFile));
+            jar.closeEntry();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * Node that joins two strings with +. The parser makes one in place of an
+ * addition when either side is a string: a literal, a string function, a
+ * name ending in $, or another join.
+ */
+public class ConcatNode extends Node {
+
+    private final Node left;
+    private final Node right;
+
+    /**
+     * Constructor.
+     * @param left string that comes first.
+     * @param right string that follows.
+     */
+    public ConcatNode(Node left, Node right){
+        this.left = left;
+        this.right = right;
+    }
+
+    /**
+     * Get string that comes first.
+     * @return left operand.
+     */
+    public Node getLeft() {
+        return left;
+    }
+
+    /**
+     * Get string that follows.
+     * @return right operand.
+     */
+    public Node getRight() {
+        return right;
+    }
+
+    /**
+     * Get string representation of node.
+     * @return string representation of node.
+     */
+    @Override
+    public String toString() {
+        return "Concat: { left: \"" + left + "\", right: \"" + right + "\" }";
+    }
+}
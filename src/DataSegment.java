@@ -0,0 +1,377 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The items of every DATA statement in program order, stored as a tag
+ * array beside a parallel int array instead of one node per item. An int
+ * item holds its value, a float item its bits and a string item its index
+ * in the string pool. Readers keep their own cursor, an index into the
+ * segment, so READ and RESTORE copy nothing. Items can also be loaded in
+ * bulk from a memory-mapped CSV or binary file.
+ */
+public class DataSegment {
+
+    // item tags
+    public static final byte INT = 0;
+    public static final byte FLOAT = 1;
+    public static final byte STRING = 2;
+
+    // magic and version at the start of a binary data file
+    private static final int MAGIC = 0x42444154;
+    private static final int VERSION = 1;
+
+    private byte[] tags = new byte[64];
+    private int[] values = new int[64];
+    private String[] strings = new String[16];
+    // strings of the pool as the interpreter stores them, so READ copies nothing
+    private BasicString[] texts = new BasicString[16];
+    private int size = 0;
+    private int stringCount = 0;
+
+    /**
+     * Helper fn that appends an item, growing the arrays if needed.
+     * @param tag tag of item.
+     * @param value value, float bits or string index.
+     */
+    private void append(byte tag, int value){
+        if (size == tags.length){
+            tags = Arrays.copyOf(tags, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        tags[size] = tag;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * Appends an int item.
+     * @param value value of item.
+     */
+    public void addInt(int value){
+        append(INT, value);
+    }
+
+    /**
+     * Appends a float item.
+     * @param value value of item.
+     */
+    public void addFloat(float value){
+        append(FLOAT, Float.floatToRawIntBits(value));
+    }
+
+    /**
+     * Appends a string item.
+     * @param value value of item.
+     */
+    public void addString(String value){
+        if (stringCount == strings.length){
+            strings = Arrays.copyOf(strings, stringCount * 2);
+            texts = Arrays.copyOf(texts, stringCount * 2);
+        }
+        strings[stringCount] = value;
+        texts[stringCount] = BasicString.of(value);
+        append(STRING, stringCount++);
+    }
+
+    /**
+     * Appends a literal node from a DATA statement.
+     * @param node integer, float or string node.
+     * @throws Exception when node is not a literal.
+     */
+    public void add(Node node) throws Exception{
+        if (node instanceof IntegerNode) addInt(((IntegerNode) node).getInteger());
+        else if (node instanceof FloatNode) addFloat(((FloatNode) node).getFloat());
+        else if (node instanceof StringNode) addString(((StringNode) node).getString());
+        else throw new Exception("Datum '" + node + "' is not a literal.");
+    }
+
+    /**
+     * Appends every item of another segment.
+     * @param other segment to append.
+     */
+    public void addAll(DataSegment other){
+        for (int i = 0; i < other.size; i++){
+            if (other.tags[i] == STRING) addString(other.strings[other.values[i]]);
+            else append(other.tags[i], other.values[i]);
+        }
+    }
+
+    /**
+     * Get number of items.
+     * @return number of items.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get tag of an item.
+     * @param index index of item.
+     * @return tag of item, or -1 past the end.
+     */
+    public byte tagAt(int index) {
+        return index >= 0 && index < size ? tags[index] : -1;
+    }
+
+    /**
+     * Get value of an int item.
+     * @param index index of item.
+     * @return value of item.
+     */
+    public int intAt(int index) {
+        return values[index];
+    }
+
+    /**
+     * Get value of a float item.
+     * @param index index of item.
+     * @return value of item.
+     */
+    public float floatAt(int index) {
+        return Float.intBitsToFloat(values[index]);
+    }
+
+    /**
+     * Get value of a string item.
+     * @param index index of item.
+     * @return value of item.
+     */
+    public String stringAt(int index) {
+        return strings[values[index]];
+    }
+
+    /**
+     * Get value of a string item as the interpreter stores it.
+     * @param index index of item.
+     * @return value of item.
+     */
+    public BasicString textAt(int index) {
+        return texts[values[index]];
+    }
+
+    /**
+     * Helper fn that maps a whole file read-only.
+     * @param path file to map.
+     * @return mapped file.
+     * @throws IOException when file cannot be read or is too large to map.
+     */
+    private static MappedByteBuffer map(Path path) throws IOException{
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Data file '" + path + "' is too large to map.");
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Loads items from a file, as CSV if its name ends in .csv and
+     * otherwise as a binary data file.
+     * @param path file to load.
+     * @return segment of items in file order.
+     * @throws Exception when file cannot be read or is malformed.
+     */
+    public static DataSegment load(Path path) throws Exception{
+        if (path.getFileName().toString().toLowerCase().endsWith(".csv")) return loadCsv(path);
+        return loadBinary(path);
+    }
+
+    /**
+     * Loads items from a CSV file, left to right and top to bottom. Quoted
+     * fields are strings, with "" for a quote; other fields are numbers if
+     * they parse as one, typed the way DATA numbers are, and strings if not.
+     * Spaces around unquoted fields and blank lines are ignored.
+     * @param path file to load.
+     * @return segment of items in file order.
+     * @throws Exception when file cannot be read or a quote is not closed.
+     */
+    public static DataSegment loadCsv(Path path) throws Exception{
+        MappedByteBuffer buffer = map(path);
+        DataSegment segment = new DataSegment();
+        int end = buffer.limit();
+        int at = 0;
+        int line = 1;
+        while (at < end){
+            // skip blank lines
+            byte b = buffer.get(at);
+            if (b == '\n' || b == '\r'){
+                if (b == '\n') line++;
+                at++;
+                continue;
+            }
+            // read fields up to end of line
+            while (true){
+                while (at < end && (buffer.get(at) == ' ' || buffer.get(at) == '\t')) at++;
+                if (at < end && buffer.get(at) == '"'){
+                    // quoted string, kept as raw bytes until closed
+                    byte[] bytes = new byte[64];
+                    int length = 0;
+                    at++;
+                    while (true){
+                        if (at >= end) throw new Exception("Unclosed quote on line " + line + " of '" + path + "'.");
+                        b = buffer.get(at++);
+                        if (b == '"'){
+                            if (at < end && buffer.get(at) == '"') at++;
+                            else break;
+                        }
+                        else if (b == '\n') line++;
+                        if (length == bytes.length) bytes = Arrays.copyOf(bytes, length * 2);
+                        bytes[length++] = b;
+                    }
+                    segment.addString(new String(bytes, 0, length, StandardCharsets.UTF_8));
+                    while (at < end && (buffer.get(at) == ' ' || buffer.get(at) == '\t')) at++;
+                }
+                else {
+                    // unquoted field, trimmed
+                    int start = at;
+                    while (at < end && buffer.get(at) != ',' && buffer.get(at) != '\n' && buffer.get(at) != '\r') at++;
+                    int stop = at;
+                    while (stop > start && (buffer.get(stop - 1) == ' ' || buffer.get(stop - 1) == '\t')) stop--;
+                    addField(segment, buffer, start, stop);
+                }
+                if (at < end && buffer.get(at) == ',') at++;
+                else break;
+            }
+            // anything after a closing quote up to the end of line is ignored
+            while (at < end && buffer.get(at) != '\n') at++;
+        }
+        return segment;
+    }
+
+    /**
+     * Helper fn that appends an unquoted CSV field as a number or string.
+     * @param segment segment to append to.
+     * @param buffer mapped file.
+     * @param start offset of first byte of field.
+     * @param stop offset past last byte of field.
+     */
+    private static void addField(DataSegment segment, ByteBuffer buffer, int start, int stop){
+        // short unsigned or negative integers are converted in place; they are exact as floats too
+        int digitsFrom = start < stop && buffer.get(start) == '-' ? start + 1 : start;
+        int digits = stop - digitsFrom;
+        if (digits > 0 && digits <= 7){
+            int value = 0;
+            int at = digitsFrom;
+            while (at < stop && buffer.get(at) >= '0' && buffer.get(at) <= '9')
+                value = value * 10 + (buffer.get(at++) - '0');
+            if (at == stop){
+                segment.addInt(digitsFrom > start ? -value : value);
+                return;
+            }
+        }
+        byte[] bytes = new byte[stop - start];
+        buffer.get(start, bytes);
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        // anything else numeric follows the parser's rule for DATA numbers
+        boolean numeric = !text.isEmpty();
+        for (int i = 0; i < text.length() && numeric; i++){
+            char c = text.charAt(i);
+            numeric = (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '+' || c == 'e' || c == 'E';
+        }
+        if (numeric){
+            try {
+                float numFloat = Float.parseFloat(text);
+                if (numFloat == Math.round(numFloat)) segment.addInt(Math.round(numFloat));
+                else segment.addFloat(numFloat);
+                return;
+            } catch (NumberFormatException e){
+                // not a number after all
+            }
+        }
+        segment.addString(text);
+    }
+
+    /**
+     * Reads items written by write from a buffer, in bulk where possible.
+     * @param buffer buffer positioned at the items.
+     * @return segment of items.
+     * @throws Exception when items are malformed or cut short.
+     */
+    public static DataSegment read(ByteBuffer buffer) throws Exception{
+        try {
+            DataSegment segment = new DataSegment();
+            int size = buffer.getInt();
+            segment.tags = new byte[Math.max(size, 1)];
+            segment.values = new int[Math.max(size, 1)];
+            buffer.get(segment.tags, 0, size);
+            buffer.asIntBuffer().get(segment.values, 0, size);
+            buffer.position(buffer.position() + size * 4);
+            int stringCount = buffer.getInt();
+            segment.strings = new String[Math.max(stringCount, 1)];
+            segment.texts = new BasicString[Math.max(stringCount, 1)];
+            for (int i = 0; i < stringCount; i++){
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                segment.strings[i] = new String(bytes, StandardCharsets.UTF_8);
+                segment.texts[i] = BasicString.of(segment.strings[i]);
+            }
+            segment.size = size;
+            segment.stringCount = stringCount;
+            for (int i = 0; i < size; i++)
+                if (segment.tags[i] < INT || segment.tags[i] > STRING ||
+                        (segment.tags[i] == STRING && (segment.values[i] < 0 || segment.values[i] >= stringCount)))
+                    throw new Exception("Bad data item at " + i + ".");
+            return segment;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e){
+            throw new Exception("Data items are cut short.");
+        }
+    }
+
+    /**
+     * Writes the items: item count, tags, values, then the string pool as
+     * length-prefixed UTF-8.
+     * @param out stream to write to.
+     * @throws IOException when writing fails.
+     */
+    public void write(DataOutputStream out) throws IOException{
+        out.writeInt(size);
+        out.write(tags, 0, size);
+        for (int i = 0; i < size; i++) out.writeInt(values[i]);
+        out.writeInt(stringCount);
+        for (int i = 0; i < stringCount; i++){
+            byte[] bytes = strings[i].getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Loads items from a binary data file, as written by writeBinary.
+     * @param path file to load.
+     * @return segment of items in file order.
+     * @throws Exception when file cannot be read or is malformed.
+     */
+    public static DataSegment loadBinary(Path path) throws Exception{
+        MappedByteBuffer buffer = map(path);
+        if (buffer.limit() < 8 || buffer.getInt() != MAGIC) throw new Exception("'" + path + "' is not a data file.");
+        if (buffer.getInt() != VERSION) throw new Exception("Data file '" + path + "' has an unsupported version.");
+        try {
+            return read(buffer);
+        } catch (Exception e){
+            throw new Exception("Data file '" + path + "': " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the items to a binary data file: magic and version, then the
+     * items as written by write.
+     * @param path file to write.
+     * @throws IOException when file cannot be written.
+     */
+    public void writeBinary(Path path) throws IOException{
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))){
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            write(out);
+        }
+    }
+}
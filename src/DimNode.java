@@ -0,0 +1,34 @@
+import java.util.ArrayList;
+
+/**
+ * Node for the DIM statement, making zeroed arrays of the sizes given.
+ */
+public class DimNode extends StatementNode {
+
+    private final ArrayList<ArrayNode> arrays;
+
+    /**
+     * Constructor
+     * @param arrays arrays to make, each with the size of each dimension.
+     */
+    public DimNode(ArrayList<ArrayNode> arrays){
+        this.arrays = new ArrayList<>(arrays);
+    }
+
+    /**
+     * Get arrays to make.
+     * @return arrays with their sizes.
+     */
+    public ArrayList<ArrayNode> getArrays(){
+        return arrays;
+    }
+
+    /**
+     * Get string representation of nodes.
+     * @return string representation of nodes.
+     */
+    @Override
+    public String toString() {
+        return "Dim: " + arrays;
+    }
+}
@@ -0,0 +1,311 @@
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Scanner;
+
+/**
+ * State of one run of a program: variable stores, DATA cursor, GOSUB
+ * return stack, loops running, input and output, and the counters the run publishes.
+ * A context belongs to the thread running it; to run a shared Program on
+ * several threads at once, give each run a context of its own.
+ */
+public class ExecutionContext {
+
+    /**
+     * Loop running in a context: a FOR loop with its evaluated bounds and
+     * the index of its iteration, or a WHILE loop. Frames are reused, so
+     * entering a loop allocates nothing.
+     */
+    static final class Loop {
+
+        // FOR or WHILE statement, and depth of the return stack when it started
+        StatementNode node;
+        int returnBase;
+
+        // evaluated bounds and index of a FOR loop
+        double start;
+        double step;
+        long trips;
+        long index;
+
+        // JFR event of a FOR loop when recording it
+        ForLoopEvent event;
+    }
+
+    // program this context runs
+    final Program program;
+
+    // variable stores, indexed by slot; a slot may hold a value in more than one store
+    final int[] intStore;
+    final float[] floatStore;
+    final BasicString[] stringStore;
+    final boolean[] intSet;
+    final boolean[] floatSet;
+
+    // arrays made by DIM, indexed by slot
+    final BasicArray[] arrayStore;
+
+    // slots assigned in each store, kept only by a fork so a parallel loop merges what it assigned
+    BitSet intWritten;
+    BitSet floatWritten;
+    BitSet stringWritten;
+
+    // index of next DATA item to read
+    int dataCursor = 0;
+
+    // statements to return to, and JFR events of the calls when recording them
+    private StatementNode[] returns = new StatementNode[16];
+    private GoSubEvent[] calls = JfrEvents.ENABLED ? new GoSubEvent[16] : null;
+    int returnCount = 0;
+
+    // loops running, innermost last
+    private Loop[] loops = new Loop[8];
+    int loopCount = 0;
+
+    // where program output goes and input comes from
+    final OutputSink out;
+    private final Reader input;
+    private Scanner in;
+
+    // profiler timing each statement, or null when not profiling
+    Profiler profiler;
+
+    // counters of the run, published to metrics if registered
+    long executed = 0;
+    long inputNanos = 0;
+    InterpreterMetrics metrics;
+
+    // System.nanoTime the run must end by, checked at each checkpoint
+    private boolean timed = false;
+    private long deadline;
+
+    /**
+     * Constructor, printing to standard output and reading standard input.
+     * @param program program to run.
+     */
+    public ExecutionContext(Program program){
+        this(program, new StreamOutputSink(System.out, false, OutputSink.FlushPolicy.LINE), System.in);
+    }
+
+    /**
+     * Constructor.
+     * @param program program to run.
+     * @param out sink for program output; flushed, not closed, after running.
+     * @param input stream INPUT reads lines from.
+     */
+    public ExecutionContext(Program program, OutputSink out, InputStream input){
+        this(program, out, new InputStreamReader(input));
+    }
+
+    /**
+     * Constructor.
+     * @param program program to run.
+     * @param out sink for program output; flushed, not closed, after running.
+     * @param input reader INPUT reads lines from.
+     */
+    public ExecutionContext(Program program, OutputSink out, Reader input){
+        this.program = program;
+        this.out = out;
+        this.input = input;
+        int slots = program.getSlotCount();
+        intStore = new int[slots];
+        floatStore = new float[slots];
+        stringStore = new BasicString[slots];
+        intSet = new boolean[slots];
+        floatSet = new boolean[slots];
+        arrayStore = new BasicArray[slots];
+    }
+
+    /**
+     * Makes a context running part of a parallel loop: a copy of the
+     * variables with an output sink of its own, no input, no metrics or
+     * profiler, an empty return stack and the same timeout.
+     * @param out sink for output of the part.
+     * @return forked context.
+     */
+    ExecutionContext fork(OutputSink out){
+        ExecutionContext fork = new ExecutionContext(program, out, Reader.nullReader());
+        System.arraycopy(intStore, 0, fork.intStore, 0, intStore.length);
+        System.arraycopy(floatStore, 0, fork.floatStore, 0, floatStore.length);
+        System.arraycopy(stringStore, 0, fork.stringStore, 0, stringStore.length);
+        System.arraycopy(intSet, 0, fork.intSet, 0, intSet.length);
+        System.arraycopy(floatSet, 0, fork.floatSet, 0, floatSet.length);
+        // arrays are shared; a parallel loop may read them but not assign elements
+        System.arraycopy(arrayStore, 0, fork.arrayStore, 0, arrayStore.length);
+        fork.intWritten = new BitSet();
+        fork.floatWritten = new BitSet();
+        fork.stringWritten = new BitSet();
+        fork.dataCursor = dataCursor;
+        fork.timed = timed;
+        fork.deadline = deadline;
+        return fork;
+    }
+
+    /**
+     * Get scanner over the input, made on first use so INPUT statements
+     * share its buffer.
+     * @return input scanner.
+     */
+    Scanner scanner(){
+        if (in == null) in = new Scanner(input);
+        return in;
+    }
+
+    /**
+     * Pushes the statement a GOSUB returns to.
+     * @param next statement to return to.
+     * @param call JFR event of the call, or null.
+     */
+    void pushReturn(StatementNode next, GoSubEvent call){
+        if (returnCount == returns.length){
+            returns = Arrays.copyOf(returns, returnCount * 2);
+            if (calls != null) calls = Arrays.copyOf(calls, returnCount * 2);
+        }
+        returns[returnCount] = next;
+        if (calls != null) calls[returnCount] = call;
+        returnCount++;
+    }
+
+    /**
+     * Pops the statement to return to, committing the JFR event of its call.
+     * @return statement to return to.
+     */
+    StatementNode popReturn(){
+        StatementNode next = returns[--returnCount];
+        returns[returnCount] = null;
+        if (JfrEvents.ENABLED && calls[returnCount] != null){
+            calls[returnCount].commit();
+            calls[returnCount] = null;
+        }
+        return next;
+    }
+
+    /**
+     * Drops returns pushed above a depth, for calls that were never returned from.
+     * @param depth number of returns to keep.
+     */
+    void dropReturns(int depth){
+        while (returnCount > depth){
+            returns[--returnCount] = null;
+            if (calls != null) calls[returnCount] = null;
+        }
+    }
+
+    /**
+     * Enters a loop, taking a frame for it.
+     * @param node FOR or WHILE statement.
+     * @return frame of loop, with its index at 0.
+     */
+    Loop pushLoop(StatementNode node){
+        if (loopCount == loops.length) loops = Arrays.copyOf(loops, loopCount * 2);
+        if (loops[loopCount] == null) loops[loopCount] = new Loop();
+        Loop loop = loops[loopCount++];
+        loop.node = node;
+        loop.returnBase = returnCount;
+        loop.index = 0;
+        return loop;
+    }
+
+    /**
+     * Get frame of the innermost loop.
+     * @return frame of loop.
+     */
+    Loop topLoop(){
+        return loops[loopCount - 1];
+    }
+
+    /**
+     * Leaves the innermost loop, freeing its frame for the next loop entered.
+     */
+    void popLoop(){
+        Loop loop = loops[--loopCount];
+        loop.node = null;
+        loop.event = null;
+    }
+
+    /**
+     * Get sink program output goes to.
+     * @return output sink.
+     */
+    public OutputSink getOut() {
+        return out;
+    }
+
+    /**
+     * Sets the profiler to time statements with, or null to stop profiling.
+     * @param profiler profiler made for this context's program, or null.
+     */
+    public void setProfiler(Profiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Limits how long the run may take; a run still going after the
+     * timeout fails within a few thousand statements.
+     * @param timeoutMillis milliseconds from now the run must end by.
+     */
+    public void setTimeout(long timeoutMillis) {
+        timed = true;
+        deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+    }
+
+    /**
+     * Checks if the run has gone past its timeout.
+     * @return true if a timeout was set and has passed.
+     */
+    public boolean isTimedOut() {
+        return timed && System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * Registers an MBean with live metrics of this run, if not yet registered.
+     * @return metrics of this run.
+     * @throws Exception when registration fails.
+     */
+    public InterpreterMetrics registerMetrics() throws Exception{
+        if (metrics == null) metrics = new InterpreterMetrics();
+        return metrics;
+    }
+
+    /**
+     * Unregisters the metrics MBean of this run, if registered.
+     * @throws Exception when unregistration fails.
+     */
+    public void unregisterMetrics() throws Exception{
+        if (metrics == null) return;
+        metrics.unregister();
+        metrics = null;
+    }
+
+    /**
+     * Publishes the counters if metrics are registered, and fails the run
+     * if it has gone past its timeout; called every few thousand statements.
+     * @throws Exception when the run has timed out.
+     */
+    void checkpoint() throws Exception{
+        if (metrics != null) publish(true, false);
+        if (isTimedOut()) throw new Exception("Timed out after " + executed + " statements.");
+    }
+
+    /**
+     * Publishes the counters to the metrics MBean, if a publication is due or forced.
+     * @param running true while executing statements.
+     * @param force true to publish even if the last publication is recent.
+     */
+    void publish(boolean running, boolean force){
+        long now = System.nanoTime();
+        if (!force && !metrics.due(now)) return;
+        int ints = 0;
+        int floats = 0;
+        int strings = 0;
+        for (int slot = 0; slot < intSet.length; slot++){
+            if (intSet[slot]) ints++;
+            if (floatSet[slot]) floats++;
+            if (stringStore[slot] != null) strings++;
+        }
+        metrics.publish(now, executed, returnCount, ints, floats, strings,
+                Math.max(program.getData().size() - dataCursor, 0), out.getWritten(), inputNanos, running);
+    }
+}
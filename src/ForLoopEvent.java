@@ -0,0 +1,22 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event spanning a FOR loop run to completion.
+ */
+@Name("basic.ForLoop")
+@Label("FOR Loop")
+@Category("BASIC")
+@Description("FOR loop run to completion")
+@StackTrace(false)
+public class ForLoopEvent extends jdk.jfr.Event {
+
+    @Label("Variable")
+    public String variable;
+
+    @Label("Iterations")
+    public long iterations;
+}
@@ -1,33 +1,65 @@
 import java.util.ArrayList;
 
 /**
- * Node for the for loop.
+ * Node for the for loop. Its start, stop and step are expressions evaluated
+ * once when the loop starts; the number of iterations is counted from them
+ * then, and the variable of each iteration is computed from its index, so
+ * long loops neither drift nor lose iterations to float rounding. The
+ * loop runs while the variable is short of stop, in the direction from
+ * start to stop.
  */
 public class ForNode extends StatementNode implements NodeWithStatements {
 
     private final VariableNode var;
-    private final float start;
-    private final float stop;
-    private final float step;
+    private Node start;
+    private Node stop;
+    private Node step;
     private final StatementsNode statements;
     private final NextNode nextNode;
+    private final boolean parallel;
+
+    // plan for running iterations in parallel, set when linking
+    private ParallelLoop parallelPlan;
 
     /**
      * Constructor
      * @param var for variable name.
-     * @param start init var value.
-     * @param stop end var value.
-     * @param step increment amount.
+     * @param start expression of init var value.
+     * @param stop expression of end var value.
+     * @param step expression of increment amount.
      * @param statements statements to be executed.
      */
     public ForNode(
             VariableNode var,
-            float start,
-            float stop,
-            float step,
+            Node start,
+            Node stop,
+            Node step,
             StatementsNode statements,
             NextNode nextNode
     ){
+        this(var, start, stop, step, statements, nextNode, false);
+    }
+
+    /**
+     * Constructor
+     * @param var for variable name.
+     * @param start expression of init var value.
+     * @param stop expression of end var value.
+     * @param step expression of increment amount.
+     * @param statements statements to be executed.
+     * @param nextNode NEXT node ending the loop.
+     * @param parallel true for PARALLEL FOR.
+     */
+    public ForNode(
+            VariableNode var,
+            Node start,
+            Node stop,
+            Node step,
+            StatementsNode statements,
+            NextNode nextNode,
+            boolean parallel
+    ){
+        this.parallel = parallel;
         this.var = var;
         this.start = start;
         this.stop = stop;
@@ -45,29 +77,75 @@ public class ForNode extends StatementNode implements NodeWithStatements {
     }
 
     /**
-     * Get start value.
-     * @return start value.
+     * Get start expression.
+     * @return start expression.
      */
-    public float getStart() {
+    public Node getStart() {
         return start;
     }
 
     /**
-     * Get stop value.
-     * @return stop value.
+     * Get stop expression.
+     * @return stop expression.
      */
-    public float getStop() {
+    public Node getStop() {
         return stop;
     }
 
     /**
-     * Get step value.
-     * @return step value.
+     * Get step expression.
+     * @return step expression.
      */
-    public float getStep() {
+    public Node getStep() {
         return step;
     }
 
+    /**
+     * Set start, stop and step expressions, as when folding them.
+     * @param start start expression.
+     * @param stop stop expression.
+     * @param step step expression.
+     */
+    public void setBounds(Node start, Node stop, Node step) {
+        this.start = start;
+        this.stop = stop;
+        this.step = step;
+    }
+
+    /**
+     * Counts the iterations of a loop from its evaluated bounds.
+     * @param start start value.
+     * @param stop stop value.
+     * @param step step value.
+     * @return iterations, or Long.MAX_VALUE for a loop that never reaches stop.
+     */
+    public static long trips(double start, double stop, double step){
+        boolean isIncreasing = stop >= start;
+        if (!(isIncreasing ? start < stop : start > stop)) return 0;
+        if (isIncreasing ? !(step > 0) : !(step < 0)) return Long.MAX_VALUE;
+        double estimate = Math.ceil((stop - start) / step);
+        long trips = estimate < Long.MAX_VALUE ? (long) estimate : Long.MAX_VALUE;
+        // division rounds, so settle on the first index whose value is not short of stop
+        while (trips > 0 && !(isIncreasing ? start + (trips - 1) * step < stop : start + (trips - 1) * step > stop))
+            trips--;
+        while (trips < Long.MAX_VALUE && (isIncreasing ? start + trips * step < stop : start + trips * step > stop))
+            trips++;
+        return trips;
+    }
+
+    /**
+     * Computes the variable of an iteration from its index, the loop's long
+     * induction variable; for whole start and step below 2^53 this is exact,
+     * rounding to float only when stored.
+     * @param start start value.
+     * @param step step value.
+     * @param index index of iteration, from 0.
+     * @return value of variable.
+     */
+    public static float value(double start, double step, long index){
+        return (float) (start + index * step);
+    }
+
     /**
      * Get statement node.
      * @return statement node.
@@ -92,6 +170,30 @@ public class ForNode extends StatementNode implements NodeWithStatements {
         return nextNode;
     }
 
+    /**
+     * Check whether the loop was written PARALLEL FOR.
+     * @return true for PARALLEL FOR.
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Get plan for running iterations in parallel.
+     * @return plan, or null if iterations run one after another.
+     */
+    public ParallelLoop getParallelPlan() {
+        return parallelPlan;
+    }
+
+    /**
+     * Set plan for running iterations in parallel.
+     * @param parallelPlan plan, or null to run iterations one after another.
+     */
+    public void setParallelPlan(ParallelLoop parallelPlan) {
+        this.parallelPlan = parallelPlan;
+    }
+
     /**
      * Get string representation of nodes.
      * @return string representation of nodes.
@@ -105,6 +207,7 @@ public class ForNode extends StatementNode implements NodeWithStatements {
                 "\", step: \"" + step +
                 "\", statements: \"" + statements +
                 "\", next: \"" + nextNode +
+                "\", parallel: \"" + parallel +
                 "\" }";
     }
 }
@@ -45,6 +45,15 @@ public class FunctionNode extends StatementNode {
         return function;
     }
 
+    /**
+     * Check whether function returns a string.
+     * @return true for LEFT$, RIGHT$, MID$ and NUM$.
+     */
+    public boolean returnsString() {
+        return function == TokenType.FN_LEFT || function == TokenType.FN_RIGHT
+                || function == TokenType.FN_MID || function == TokenType.FN_NUM;
+    }
+
     /**
      * Get string representation of node.
      * @return string representation of node.
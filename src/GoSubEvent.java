@@ -0,0 +1,38 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event spanning a subroutine call, from GOSUB to its RETURN.
+ */
+@Name("basic.GoSub")
+@Label("GOSUB")
+@Category("BASIC")
+@Description("Subroutine call from GOSUB to RETURN")
+@StackTrace(false)
+public class GoSubEvent extends jdk.jfr.Event {
+
+    @Label("Label")
+    public String label;
+
+    @Label("Depth")
+    @Description("Calls not yet returned from, including this one")
+    public int depth;
+
+    /**
+     * Starts an event for a call, if a recording wants them.
+     * @param node GOSUB statement.
+     * @param depth calls not yet returned from, including this one.
+     * @return started event, or null when disabled.
+     */
+    static GoSubEvent enter(GoSubNode node, int depth){
+        GoSubEvent event = new GoSubEvent();
+        if (!event.isEnabled()) return null;
+        event.label = node.getLabel();
+        event.depth = depth;
+        event.begin();
+        return event;
+    }
+}
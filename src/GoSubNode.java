@@ -4,13 +4,17 @@
 public class GoSubNode extends StatementNode {
 
     private final String label;
+    private final int symbol;
+    private StatementNode target;
 
     /**
      * Constructor.
      * @param label to go to.
+     * @param symbol ID of label in symbol table.
      */
-    public GoSubNode(String label){
+    public GoSubNode(String label, int symbol){
         this.label = label;
+        this.symbol = symbol;
     }
 
     /**
@@ -21,6 +25,30 @@ public class GoSubNode extends StatementNode {
         return label;
     }
 
+    /**
+     * Getter for symbol ID of label.
+     * @return ID of label in symbol table.
+     */
+    public int getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * Getter for statement jumped to, resolved at link time.
+     * @return target statement.
+     */
+    public StatementNode getTarget() {
+        return target;
+    }
+
+    /**
+     * Setter for statement jumped to.
+     * @param target target statement.
+     */
+    public void setTarget(StatementNode target) {
+        this.target = target;
+    }
+
     /**
      * Make a string representation of the node.
      * @return string representation of the node.
@@ -5,6 +5,8 @@ public class IfNode extends StatementNode {
 
     private final BooleanOperationNode condition;
     private final VariableNode label;
+    private boolean alwaysTaken = false;
+    private StatementNode target;
 
     /**
      * Constructor.
@@ -32,6 +34,38 @@ public class IfNode extends StatementNode {
         return label;
     }
 
+    /**
+     * Check whether the condition was decided true at link time.
+     * @return true if jump is always taken.
+     */
+    public boolean isAlwaysTaken() {
+        return alwaysTaken;
+    }
+
+    /**
+     * Setter for whether the jump is always taken.
+     * @param alwaysTaken true if condition is always true.
+     */
+    public void setAlwaysTaken(boolean alwaysTaken) {
+        this.alwaysTaken = alwaysTaken;
+    }
+
+    /**
+     * Getter for statement jumped to, resolved at link time.
+     * @return target statement.
+     */
+    public StatementNode getTarget() {
+        return target;
+    }
+
+    /**
+     * Setter for statement jumped to.
+     * @param target target statement.
+     */
+    public void setTarget(StatementNode target) {
+        this.target = target;
+    }
+
     /**
      * Get string representation of node.
      * @return string representation of node.
@@ -0,0 +1,19 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event spanning a wait for a line of INPUT.
+ */
+@Name("basic.InputWait")
+@Label("INPUT Wait")
+@Category("BASIC")
+@Description("Wait for a line of input")
+@StackTrace(false)
+public class InputWaitEvent extends jdk.jfr.Event {
+
+    @Label("Variable")
+    public String variable;
+}
@@ -1,128 +1,249 @@
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Scanner;
-import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * This class is the interpreter for the AST.
+ * This class is the interpreter for the AST. It walks a linked program,
+ * keeping all state of a run in the execution context it is given, so
+ * one interpreter can run its program on many threads at once.
  */
 public class Interpreter {
 
-    // top node of AST
-    private final StatementsNode top;
+    // program to run, shared by every run
+    private final Program program;
 
-    // variable and label maps
-    private final HashMap<String, Integer> intMap = new HashMap<>();
-    private final HashMap<String, Float> floatMap = new HashMap<>();
-    private final HashMap<String, String> stringMap = new HashMap<>();
-    private final HashMap<String, StatementNode> labelMap = new HashMap<>();
-
-    // list for data nodes
-    private final ArrayList<Node> dataNodes = new ArrayList<>();
+    // statements between checkpoints publishing metrics and checking the timeout
+    private static final int CHECKPOINT_MASK = (1 << 12) - 1;
 
     /**
      * Constructor.
-     * @param top AST node at top of tree.
+     * @param program linked program.
      */
-    public Interpreter(StatementsNode top){
-        this.top = top;
+    public Interpreter(Program program){
+        this.program = program;
     }
 
     /**
-     * Helper fn to get node from front of queue.
-     * @return node from data nodes list.
+     * Helper fn that reads a numeric variable, preferring the int store.
+     * @param var variable to read.
+     * @return value of variable as float.
+     * @throws Exception when variable has no numeric value.
      */
-    private Node getData(){
-        if (dataNodes.isEmpty()) return null;
-        return this.dataNodes.remove(0);
+    private float loadNumber(ExecutionContext context, VariableNode var) throws Exception{
+        int slot = var.getSymbol();
+        if (context.intSet[slot]) return context.intStore[slot];
+        if (context.floatSet[slot]) return context.floatStore[slot];
+        throw new Exception("Variable '" + var.getName() + "' not found.");
     }
 
     /**
-     * Function that walks tree and handles labels.
-     * @param nodeWS top node of tree to walk.
+     * Helper fn that stores an int in a variable slot.
+     * @param slot slot of variable.
+     * @param value value to store.
      */
-    private void walkLabels(NodeWithStatements nodeWS){
-        // iterate over nodes
-        for (int i = 0; i < nodeWS.getStatements().size(); i++){
-            // get current node
-            StatementNode node = nodeWS.getStatements().get(i);
-            // if node is labeled statement
-            if (node instanceof LabeledStatementNode){
-                // add to labelMap
-                labelMap.put(
-                        ((LabeledStatementNode) node).getLabel(),
-                        ((LabeledStatementNode) node).getNode()
-                );
-                // replace node with child
-                nodeWS.getStatements().set(i, ((LabeledStatementNode) node).getNode());
-            }
-            // if node itself has statements, recur
-            if (node instanceof NodeWithStatements)
-                walkLabels((NodeWithStatements) node);
+    private void storeInt(ExecutionContext context, int slot, int value){
+        context.intStore[slot] = value;
+        context.intSet[slot] = true;
+        if (context.intWritten != null) context.intWritten.set(slot);
+    }
+
+    /**
+     * Helper fn that stores a float in a variable slot.
+     * @param slot slot of variable.
+     * @param value value to store.
+     */
+    private void storeFloat(ExecutionContext context, int slot, float value){
+        context.floatStore[slot] = value;
+        context.floatSet[slot] = true;
+        if (context.floatWritten != null) context.floatWritten.set(slot);
+    }
+
+    /**
+     * Helper fn that stores a string in a variable slot.
+     * @param slot slot of variable.
+     * @param value value to store.
+     */
+    private void storeString(ExecutionContext context, int slot, BasicString value){
+        context.stringStore[slot] = value;
+        if (context.stringWritten != null) context.stringWritten.set(slot);
+    }
+
+    /**
+     * Helper fn that gets the array a variable names.
+     * @param var variable naming array.
+     * @return array.
+     * @throws Exception when array was not made by DIM.
+     */
+    private BasicArray array(ExecutionContext context, VariableNode var) throws Exception{
+        BasicArray array = context.arrayStore[var.getSymbol()];
+        if (array == null) throw new Exception("Array '" + var.getName() + "' not given sizes by DIM.");
+        return array;
+    }
+
+    /**
+     * Helper fn that evaluates an array index or size, truncating it to an int.
+     * @param node expression of index.
+     * @return index.
+     * @throws Exception when index is not a number.
+     */
+    private int index(ExecutionContext context, Node node) throws Exception{
+        if (node instanceof IntegerNode) return ((IntegerNode) node).getInteger();
+        if (node instanceof VariableNode){
+            int slot = ((VariableNode) node).getSymbol();
+            if (context.intSet[slot]) return context.intStore[slot];
+            if (context.floatSet[slot]) return (int) context.floatStore[slot];
         }
+        return (int) genericOperand(context, node, "Array indices must be numbers.");
     }
 
     /**
-     * Function that walks tree and handles for statements.
-     * @param nodeWS top node of tree to walk.
+     * Helper fn that finds an element in the flat elements of its array.
+     * @param node element.
+     * @param array array of element.
+     * @return offset of element, row-major.
+     * @throws Exception when indices do not fit the array.
      */
-    private void walkFor(NodeWithStatements nodeWS){
-        // iterate over nodes
-        int nodeCount = nodeWS.getStatements().size();
-        for (int i = 0; i < nodeCount; i++){
-            // get current node
-            StatementNode node = nodeWS.getStatements().get(i);
-            // if node is FOR node
-            if (node instanceof ForNode && i < nodeCount-1){
-                // set next statement for this node
-                node.setNextStatement(nodeWS.getStatements().get(i+1));
-                // set next statement for this node's NEXT node
-                ((ForNode) node).getNextNode().setNextStatement(nodeWS.getStatements().get(i+1));
-            }
-            // if node itself has statements, recur
-            if (node instanceof NodeWithStatements)
-                walkFor((NodeWithStatements) node);
+    private int offset(ExecutionContext context, ArrayNode node, BasicArray array) throws Exception{
+        ArrayList<Node> indices = node.getIndices();
+        int[] dims = array.dims;
+        if (indices.size() != dims.length)
+            throw new Exception("Array '" + array.name + "' needs " + dims.length
+                    + (dims.length == 1 ? " index" : " indices") + ", not " + indices.size() + ".");
+        int offset = 0;
+        for (int d = 0; d < dims.length; d++){
+            int index = index(context, indices.get(d));
+            if (index < 0 || index >= dims[d])
+                throw new Exception("Index " + index + " outside 0 to " + (dims[d] - 1) + " of array '" + array.name + "'.");
+            offset = offset * dims[d] + index;
         }
+        return offset;
     }
 
     /**
-     * Function that walks tree and handles data.
-     * @param nodeWS top node of tree to walk.
+     * Helper fn that reads a numeric element.
+     * @param node element to read.
+     * @return value of element as float.
+     * @throws Exception when the array is missing, holds strings, or the indices do not fit.
      */
-    private void walkData(NodeWithStatements nodeWS){
-        // iterate over nodes
-        for (int i = 0; i < nodeWS.getStatements().size(); i++){
-            // get current node
-            StatementNode node = nodeWS.getStatements().get(i);
-            // if node is DATA node
-            if (node instanceof DataNode) {
-                dataNodes.addAll(((DataNode) node).getNodes());
-                nodeWS.getStatements().remove(i--);
-            }
-            // if node itself has statements, recur
-            if (node instanceof NodeWithStatements)
-                walkData((NodeWithStatements) node);
+    private float element(ExecutionContext context, ArrayNode node) throws Exception{
+        BasicArray array = array(context, node.getVar());
+        int offset = offset(context, node, array);
+        if (array.type == BasicArray.INT) return array.ints[offset];
+        if (array.type == BasicArray.FLOAT) return array.floats[offset];
+        throw new Exception("Array '" + array.name + "' holds strings, not numbers.");
+    }
+
+    /**
+     * Helper fn that evaluates a string expression.
+     * @param node expression of string.
+     * @param invalid message for a node that is not a string.
+     * @return string.
+     * @throws Exception when node has no string value.
+     */
+    private BasicString stringValue(ExecutionContext context, Node node, String invalid) throws Exception{
+        if (node instanceof StringNode) return ((StringNode) node).getValue();
+        if (node instanceof ConcatNode)
+            return stringValue(context, ((ConcatNode) node).getLeft(), "Only strings can be joined with +.")
+                    .concat(stringValue(context, ((ConcatNode) node).getRight(), "Only strings can be joined with +."));
+        if (node instanceof ArrayNode){
+            BasicArray array = array(context, ((ArrayNode) node).getVar());
+            int offset = offset(context, (ArrayNode) node, array);
+            if (array.type == BasicArray.STRING) return array.strings[offset];
+        }
+        else if (node instanceof VariableNode && context.stringStore[((VariableNode) node).getSymbol()] != null)
+            return context.stringStore[((VariableNode) node).getSymbol()];
+        else if (node instanceof FunctionNode){
+            TokenType function = ((FunctionNode) node).getFunction();
+            if (function == TokenType.FN_LEFT || function == TokenType.FN_RIGHT || function == TokenType.FN_MID)
+                return slice(context, (FunctionNode) node);
+            Node fnResult = function((FunctionNode) node);
+            if (fnResult instanceof StringNode) return ((StringNode) fnResult).getValue();
+        }
+        throw new Exception(invalid);
+    }
+
+    /**
+     * Helper fn that runs LEFT$, RIGHT$ or MID$ on any string expression,
+     * cutting a slice that shares the chars of the string.
+     * @param node function node.
+     * @return slice.
+     * @throws Exception when params are of the wrong number or type.
+     */
+    private BasicString slice(ExecutionContext context, FunctionNode node) throws Exception{
+        ArrayList<Node> params = node.getParams();
+        if (params.size() != (node.getFunction() == TokenType.FN_MID ? 3 : 2))
+            throw new Exception("Unexpected number of arguments to function.");
+        BasicString string = stringValue(context, params.get(0), "Unexpected number of arguments to function.");
+        int first = index(context, params.get(1));
+        switch (node.getFunction()){
+            case FN_LEFT:
+                return string.slice(0, first);
+            case FN_RIGHT:
+                return string.slice(first, string.length());
+            default:
+                return string.slice(first, index(context, params.get(2)));
+        }
+    }
+
+    /**
+     * Helper fn that assigns an element, converting the value to the type of the array.
+     * @param node element to assign.
+     * @param value expression of value.
+     * @throws Exception when the array is missing, the indices do not fit, or the value is of the wrong type.
+     */
+    private void storeElement(ExecutionContext context, ArrayNode node, Node value) throws Exception{
+        BasicArray array = array(context, node.getVar());
+        int offset = offset(context, node, array);
+        if (array.type == BasicArray.STRING)
+            array.strings[offset] = stringValue(context, value, "Array '" + array.name + "' holds strings.");
+        else if (array.type == BasicArray.INT)
+            array.ints[offset] = value instanceof IntegerNode ? ((IntegerNode) value).getInteger()
+                    : (int) genericOperand(context, value, "Array '" + array.name + "' holds numbers.");
+        else array.floats[offset] = genericOperand(context, value, "Array '" + array.name + "' holds numbers.");
+    }
+
+    /**
+     * Helper fn that runs a DIM statement, making zeroed arrays.
+     * @param node DIM statement.
+     * @throws Exception when a size is not a positive number.
+     */
+    private void dim(ExecutionContext context, DimNode node) throws Exception{
+        for (ArrayNode array : node.getArrays()){
+            int[] dims = new int[array.getIndices().size()];
+            for (int d = 0; d < dims.length; d++) dims[d] = index(context, array.getIndices().get(d));
+            context.arrayStore[array.getVar().getSymbol()] = new BasicArray(array.getVar().getName(), dims);
         }
     }
 
     /**
-     * Function that walks tree and sets next node for each node.
-     * @param nodeWS top node of tree to walk.
-     */
-    private void walkSetNext(NodeWithStatements nodeWS){
-        // iterate over nodes
-        int nodeCount = nodeWS.getStatements().size();
-        for (int i = 0; i < nodeCount; i++){
-            // get current node
-            StatementNode node = nodeWS.getStatements().get(i);
-            // set nextStatement for node
-            if (i < nodeCount - 1)
-                node.setNextStatement(nodeWS.getStatements().get(i+1));
-            else
-                node.setNextStatement(null);
-            // if node itself has statements, recur
-            if (node instanceof NodeWithStatements)
-                walkSetNext((NodeWithStatements) node);
+     * Helper fn that runs a MAT statement on whole arrays.
+     * @param node MAT statement.
+     * @throws Exception when an array is missing or the arrays do not fit the operation.
+     */
+    private void mat(ExecutionContext context, MatNode node) throws Exception{
+        BasicArray target = array(context, node.getTarget());
+        switch (node.getOperation()){
+            case COPY:
+                target.copy(array(context, node.getLeft()));
+                break;
+            case FILL:
+                if (target.type == BasicArray.STRING)
+                    target.fill(stringValue(context, node.getScalar(), "MAT fill of string array needs a string."));
+                else target.fill(genericOperand(context, node.getScalar(), "MAT fill of numeric array needs a number."));
+                break;
+            case ADD:
+            case SUBTRACT:
+                target.add(array(context, node.getLeft()), array(context, node.getRight()),
+                        node.getOperation() == MatNode.Operation.SUBTRACT);
+                break;
+            case SCALE:
+                target.scale(genericOperand(context, node.getScalar(), "MAT scale needs a number."),
+                        array(context, node.getLeft()));
+                break;
+            case MULTIPLY:
+                target.multiply(array(context, node.getLeft()), array(context, node.getRight()));
+                break;
         }
     }
 
@@ -132,7 +253,7 @@ public class Interpreter {
      * @return result of function as a node.
      * @throws Exception when invalid syntax.
      */
-    private Node function(FunctionNode node) throws Exception{
+    static Node function(FunctionNode node) throws Exception{
         switch (node.getFunction()){
             case FN_RANDOM:
                 return new IntegerNode((int)Math.floor(Math.random()*1000)+1);
@@ -143,9 +264,9 @@ public class Interpreter {
                                 node.getParams().get(1) instanceof IntegerNode))
                     throw new Exception("Unexpected number of arguments to function.");
                 // get params and return substring
-                String fnLeftString = ((StringNode) node.getParams().get(0)).getString();
+                BasicString fnLeftString = ((StringNode) node.getParams().get(0)).getValue();
                 Integer fnLeftInteger = ((IntegerNode) node.getParams().get(1)).getInteger();
-                return new StringNode(fnLeftString.substring(0, fnLeftInteger));
+                return new StringNode(fnLeftString.slice(0, fnLeftInteger));
             case FN_RIGHT:
                 // test params
                 if (node.getParams().size() != 2 ||
@@ -153,9 +274,9 @@ public class Interpreter {
                                 node.getParams().get(1) instanceof IntegerNode))
                     throw new Exception("Unexpected number of arguments to function.");
                 // get params and return substring
-                String fnRightString = ((StringNode) node.getParams().get(0)).getString();
+                BasicString fnRightString = ((StringNode) node.getParams().get(0)).getValue();
                 Integer fnRightInteger = ((IntegerNode) node.getParams().get(1)).getInteger();
-                return new StringNode(fnRightString.substring(fnRightInteger));
+                return new StringNode(fnRightString.slice(fnRightInteger, fnRightString.length()));
             case FN_MID:
                 // test params
                 if (node.getParams().size() != 3 ||
@@ -164,10 +285,10 @@ public class Interpreter {
                                 node.getParams().get(2) instanceof IntegerNode))
                     throw new Exception("Unexpected number of arguments to function.");
                 // get params and return substring
-                String fnMidString = ((StringNode) node.getParams().get(0)).getString();
+                BasicString fnMidString = ((StringNode) node.getParams().get(0)).getValue();
                 Integer fnMidInteger1 = ((IntegerNode) node.getParams().get(1)).getInteger();
                 Integer fnMidInteger2 = ((IntegerNode) node.getParams().get(2)).getInteger();
-                return new StringNode(fnMidString.substring(fnMidInteger1, fnMidInteger2));
+                return new StringNode(fnMidString.slice(fnMidInteger1, fnMidInteger2));
             case FN_NUM:
                 // test params
                 if (node.getParams().size() != 1 ||
@@ -197,51 +318,84 @@ public class Interpreter {
     }
 
     /**
-     * Evaluates an int equivalent.
-     * @param node node to evaluate.
-     * @return int equivalent.
+     * Evaluates an operand without type feedback.
+     * @param node operand to evaluate.
+     * @param invalid message for an operand that is not numeric.
+     * @return value of operand as float.
      * @throws Exception on invalid syntax.
      */
-    private IntegerNode evaluateIntMathOp(Node node) throws Exception{
-        // is this an integer
-        if (node instanceof IntegerNode) return (IntegerNode) node;
-        // is this a variable for an integer
-        else if (node instanceof VariableNode) {
-            String name = ((VariableNode) node).getName();
-            if (intMap.containsKey(name)) return new IntegerNode(intMap.get(name));
-            else throw new Exception("Variable '" + name + "' not found.");
+    private float genericOperand(ExecutionContext context, Node node, String invalid) throws Exception{
+        if (node instanceof IntegerNode) return (float) ((IntegerNode) node).getInteger();
+        else if (node instanceof FloatNode) return ((FloatNode) node).getFloat();
+        else if (node instanceof VariableNode) return loadNumber(context, (VariableNode) node);
+        else if (node instanceof ArrayNode) return element(context, (ArrayNode) node);
+        else if (node instanceof MathOpNode) return mathValue(context, (MathOpNode) node);
+        else if (node instanceof FunctionNode){
+            Node fnResult = function((FunctionNode) node);
+            if (fnResult instanceof IntegerNode) return ((IntegerNode) fnResult).getInteger();
+            else if (fnResult instanceof FloatNode) return ((FloatNode) fnResult).getFloat();
+            else throw new Exception("Function does not return numeric type.");
         }
-        // is this a math op that results in integer
-        else if (node instanceof MathOpNode){
-            Node mathOpResult = mathOp((MathOpNode) node);
-            if (mathOpResult instanceof IntegerNode)
-                return (IntegerNode) mathOpResult;
+        throw new Exception(invalid);
+    }
+
+    /**
+     * Picks the specialized variant for an operand from its shape and current type.
+     * @param node operand to specialize for.
+     * @return operand kind.
+     */
+    private byte specialize(ExecutionContext context, Node node){
+        if (node instanceof IntegerNode) return OperandKind.INT_CONSTANT;
+        if (node instanceof FloatNode) return OperandKind.FLOAT_CONSTANT;
+        if (node instanceof MathOpNode) return OperandKind.OPERATION;
+        if (node instanceof ArrayNode) return OperandKind.ELEMENT;
+        if (node instanceof VariableNode){
+            int slot = ((VariableNode) node).getSymbol();
+            if (context.intSet[slot]) return OperandKind.INT_VARIABLE;
+            if (context.floatSet[slot]) return OperandKind.FLOAT_VARIABLE;
         }
-        return null;
+        return OperandKind.GENERIC;
     }
 
     /**
-     * Evaluates a float equivalent.
-     * @param node node to evaluate.
-     * @return float equivalent.
+     * Evaluates one operand of a math or boolean operation through the
+     * site's specialized variant, specializing on first use and falling
+     * back to the generic variant for good when a type guard fails.
+     * @param node operand to evaluate.
+     * @param kinds operand kinds of the site.
+     * @param side index of operand in kinds.
+     * @param invalid message for an operand that is not numeric.
+     * @return value of operand as float.
      * @throws Exception on invalid syntax.
      */
-    private FloatNode evaluateFloatMathOp(Node node) throws Exception{
-        // is this a float
-        if (node instanceof FloatNode) return (FloatNode) node;
-        // is this a variable for a float
-        else if (node instanceof VariableNode) {
-            String name = ((VariableNode) node).getName();
-            if (floatMap.containsKey(name)) return new FloatNode(floatMap.get(name));
-            else throw new Exception("Variable '" + name + "' not found.");
-        }
-        // is this a math op that results in float
-        else if (node instanceof MathOpNode){
-            Node mathOpResult = mathOp((MathOpNode) node);
-            if (mathOpResult instanceof FloatNode)
-                return (FloatNode) mathOpResult;
+    private float operand(ExecutionContext context, Node node, byte[] kinds, int side, String invalid) throws Exception{
+        int slot;
+        switch (kinds[side]){
+            case OperandKind.INT_CONSTANT:
+                return ((IntegerNode) node).getInteger();
+            case OperandKind.FLOAT_CONSTANT:
+                return ((FloatNode) node).getFloat();
+            case OperandKind.INT_VARIABLE:
+                slot = ((VariableNode) node).getSymbol();
+                if (context.intSet[slot]) return context.intStore[slot];
+                break;
+            case OperandKind.FLOAT_VARIABLE:
+                slot = ((VariableNode) node).getSymbol();
+                if (context.floatSet[slot] && !context.intSet[slot]) return context.floatStore[slot];
+                break;
+            case OperandKind.OPERATION:
+                return mathValue(context, (MathOpNode) node);
+            case OperandKind.ELEMENT:
+                return element(context, (ArrayNode) node);
+            case OperandKind.UNINITIALIZED:
+                kinds[side] = specialize(context, node);
+                return operand(context, node, kinds, side, invalid);
+            default:
+                return genericOperand(context, node, invalid);
         }
-        return null;
+        // type guard failed
+        kinds[side] = OperandKind.GENERIC;
+        return genericOperand(context, node, invalid);
     }
 
     /**
@@ -250,66 +404,24 @@ public class Interpreter {
      * @return numeric type node.
      * @throws Exception on invalid syntax.
      */
-    private Node mathOp(MathOpNode node) throws Exception{
-
-        // define sides
-        float left;
-        float right;
-        float result;
+    private Node mathOp(ExecutionContext context, MathOpNode node) throws Exception{
+        float result = mathValue(context, node);
+        return node.isKeepInt() ? new IntegerNode((int) result) : new FloatNode(result);
+    }
 
-        // check if we're staying as int
-        boolean keepInt = (node.getLeft() instanceof IntegerNode &&
-                node.getRight() instanceof IntegerNode && (
-                        node.getOperation().equals(MathOpNode.Operation.ADD) ||
-                        node.getOperation().equals(MathOpNode.Operation.SUBTRACT)));
-
-        // check if left is number
-        if (node.getLeft() instanceof IntegerNode) left = (float) ((IntegerNode) node.getLeft()).getInteger();
-        else if (node.getLeft() instanceof FloatNode) left = ((FloatNode) node.getLeft()).getFloat();
-        // check if left is var
-        else if (node.getLeft() instanceof VariableNode) {
-            String name = ((VariableNode) node.getLeft()).getName();
-            if (intMap.containsKey(name)) left = intMap.get(name);
-            else if (floatMap.containsKey(name)) left = floatMap.get(name);
-            else throw new Exception("Variable '" + name + "' not found.");
-        }
-        // check if left is fn
-        else if (node.getLeft() instanceof FunctionNode){
-            Node fnResult = function((FunctionNode) node.getLeft());
-            if (fnResult instanceof IntegerNode) left = ((IntegerNode) fnResult).getInteger();
-            else if (fnResult instanceof FloatNode) left = ((FloatNode) fnResult).getFloat();
-            else throw new Exception("Function does not return numeric type.");
-        }
-        else {
-            Node opResult = mathOp((MathOpNode) node.getLeft());
-            if (opResult instanceof IntegerNode) left = (float) ((IntegerNode) opResult).getInteger();
-            else if (opResult instanceof FloatNode) left = ((FloatNode) opResult).getFloat();
-            else throw new Exception("Math operation has invalid syntax.");
-        }
+    /**
+     * Executes a math operation recursively without boxing its result.
+     * @param node math node to execute.
+     * @return result, truncated when the operation stays int.
+     * @throws Exception on invalid syntax.
+     */
+    private float mathValue(ExecutionContext context, MathOpNode node) throws Exception{
 
-        // check if right is number
-        if (node.getRight() instanceof IntegerNode) right = (float) ((IntegerNode) node.getRight()).getInteger();
-        else if (node.getRight() instanceof FloatNode) right = ((FloatNode) node.getRight()).getFloat();
-        // check if right is var
-        else if (node.getRight() instanceof VariableNode) {
-            String name = ((VariableNode) node.getRight()).getName();
-            if (intMap.containsKey(name)) right = intMap.get(name);
-            else if (floatMap.containsKey(name)) right = floatMap.get(name);
-            else throw new Exception("Variable '" + name + "' not found.");
-        }
-        // check if right is fn
-        else if (node.getRight() instanceof FunctionNode){
-            Node fnResult = function((FunctionNode) node.getRight());
-            if (fnResult instanceof IntegerNode) right = ((IntegerNode) fnResult).getInteger();
-            else if (fnResult instanceof FloatNode) right = ((FloatNode) fnResult).getFloat();
-            else throw new Exception("Function does not return numeric type.");
-        }
-        else {
-            Node opResult = mathOp((MathOpNode) node.getRight());
-            if (opResult instanceof IntegerNode) right = (float) ((IntegerNode) opResult).getInteger();
-            else if (opResult instanceof FloatNode) right = ((FloatNode) opResult).getFloat();
-            else throw new Exception("Math operation has invalid syntax.");
-        }
+        // evaluate sides
+        byte[] kinds = node.getOperandKinds();
+        float left = operand(context, node.getLeft(), kinds, 0, "Math operation has invalid syntax.");
+        float right = operand(context, node.getRight(), kinds, 1, "Math operation has invalid syntax.");
+        float result;
 
         // do operation
         switch (node.getOperation()){
@@ -330,7 +442,7 @@ public class Interpreter {
         }
 
         // return result
-        return keepInt ? new IntegerNode((int) result) : new FloatNode(result);
+        return node.isKeepInt() ? (int) result : result;
     }
 
     /**
@@ -339,48 +451,12 @@ public class Interpreter {
      * @return Boolean evaluated.
      * @throws Exception on invalid syntax.
      */
-    private boolean evaluateBoolean(BooleanOperationNode node) throws Exception {
-
-        // handle if sides are functions
-        if (node.getLeft() instanceof FunctionNode)
-            node.setLeft(function((FunctionNode) node.getLeft()));
-        if (node.getRight() instanceof FunctionNode)
-            node.setRight(function((FunctionNode) node.getRight()));
-
-        // handle if sides are math op
-        if (node.getLeft() instanceof MathOpNode)
-            node.setLeft(mathOp((MathOpNode) node.getLeft()));
-        if (node.getRight() instanceof MathOpNode)
-            node.setRight(mathOp((MathOpNode) node.getRight()));
-
-        // handle if sides are variable
-        if (node.getLeft() instanceof VariableNode){
-            String name = ((VariableNode) node.getLeft()).getName();
-            if (intMap.containsKey(name)) node.setLeft(new IntegerNode(intMap.get(name)));
-            else if (floatMap.containsKey(name)) node.setLeft(new FloatNode(floatMap.get(name)));
-            else throw new Exception("Variable '" + name + "' not found.");
-        }
-        if (node.getRight() instanceof VariableNode){
-            String name = ((VariableNode) node.getRight()).getName();
-            if (intMap.containsKey(name)) node.setRight(new IntegerNode(intMap.get(name)));
-            else if (floatMap.containsKey(name)) node.setRight(new FloatNode(floatMap.get(name)));
-            else throw new Exception("Variable '" + name + "' not found.");
-        }
+    private boolean evaluateBoolean(ExecutionContext context, BooleanOperationNode node) throws Exception {
 
-        // handle sides of type number
-        float left, right;
-        // start with left
-        if (node.getLeft() instanceof IntegerNode)
-            left = (float) ((IntegerNode) node.getLeft()).getInteger();
-        else if (node.getLeft() instanceof FloatNode)
-            left = ((FloatNode) node.getLeft()).getFloat();
-        else throw new Exception("Invalid boolean expression on left side.");
-        // then right
-        if (node.getRight() instanceof IntegerNode)
-            right = (float) ((IntegerNode) node.getRight()).getInteger();
-        else if (node.getRight() instanceof FloatNode)
-            right = ((FloatNode) node.getRight()).getFloat();
-        else throw new Exception("Invalid boolean expression on right side.");
+        // evaluate sides
+        byte[] kinds = node.getOperandKinds();
+        float left = operand(context, node.getLeft(), kinds, 0, "Invalid boolean expression on left side.");
+        float right = operand(context, node.getRight(), kinds, 1, "Invalid boolean expression on right side.");
 
         // handle operator and return result
         switch (node.getOperator()){
@@ -402,37 +478,50 @@ public class Interpreter {
     }
 
     /**
-     * Helper fn that prints a node.
+     * Helper fn that prints a node as one item of a print statement.
      * @param node to print.
      * @throws Exception when invalid syntax.
      */
-    private void printNode(Node node, String prepend) throws Exception {
-        // print thing to prepend
-        if (prepend != null)
-            System.out.print(prepend);
+    private void printNode(ExecutionContext context, Node node) throws Exception {
         // print according to node type
         if (node instanceof StringNode)
-            System.out.println(((StringNode) node).getString());
+            context.out.printItem(((StringNode) node).getValue());
         else if (node instanceof IntegerNode)
-            System.out.println(((IntegerNode) node).getInteger());
+            context.out.printItem(String.valueOf(((IntegerNode) node).getInteger()));
         else if (node instanceof FloatNode)
-            System.out.println(((FloatNode) node).getFloat());
+            context.out.printItem(String.valueOf(((FloatNode) node).getFloat()));
+        else if (node instanceof FunctionNode && ((FunctionNode) node).returnsString())
+            context.out.printItem(stringValue(context, node, "Function does not return string type."));
         else if (node instanceof FunctionNode)
-            printNode(function((FunctionNode) node), null);
+            printNode(context, function((FunctionNode) node));
+        else if (node instanceof ConcatNode)
+            context.out.printItem(stringValue(context, node, "Only strings can be joined with +."));
         else if (node instanceof MathOpNode)
-            printNode(mathOp((MathOpNode) node), null);
+            printNode(context, mathOp(context, (MathOpNode) node));
+        else if (node instanceof ArrayNode){
+            BasicArray array = array(context, ((ArrayNode) node).getVar());
+            int offset = offset(context, (ArrayNode) node, array);
+            if (array.type == BasicArray.INT) context.out.printItem(String.valueOf(array.ints[offset]));
+            else if (array.type == BasicArray.FLOAT) context.out.printItem(String.valueOf(array.floats[offset]));
+            else context.out.printItem(array.strings[offset]);
+        }
         else if (node instanceof VariableNode){
-            String key = ((VariableNode) node).getName();
-            if (intMap.containsKey(key))
-                System.out.println(intMap.get(key));
-            else if (floatMap.containsKey(key))
-                System.out.println(floatMap.get(key));
-            else if (stringMap.containsKey(key))
-                System.out.println(stringMap.get(key));
-            else
-                System.err.println("Variable '" + key + "' does not exist.");
+            int slot = ((VariableNode) node).getSymbol();
+            if (context.intSet[slot])
+                context.out.printItem(String.valueOf(context.intStore[slot]));
+            else if (context.floatSet[slot])
+                context.out.printItem(String.valueOf(context.floatStore[slot]));
+            else if (context.stringStore[slot] != null)
+                context.out.printItem(context.stringStore[slot]);
+            else {
+                if (!context.out.isRaw()) context.out.print("\t");
+                System.err.println("Variable '" + ((VariableNode) node).getName() + "' does not exist.");
+            }
+        }
+        else {
+            if (!context.out.isRaw()) context.out.print("\t");
+            context.out.print(node.toString());
         }
-        else System.out.print(node.toString());
     }
 
     /**
@@ -440,176 +529,438 @@ public class Interpreter {
      * @param node statement to be executed.
      * @throws Exception on invalid syntax.
      */
-    private void interpret(StatementNode node) throws Exception {
+    private void interpret(ExecutionContext context, StatementNode node) throws Exception {
 
         // check if node is read node
         if (node instanceof ReadNode){
             for (VariableNode readable : ((ReadNode) node).getNodes()){
-                // define name and data
-                Node data = getData();
-                String name = readable.getName();
-                // check for integer
-                if (data instanceof IntegerNode){
-                    if (!intMap.containsKey(name))
-                        intMap.put(name, ((IntegerNode) data).getInteger());
-                    intMap.replace(name, ((IntegerNode) data).getInteger());
-                }
-                // check for float
-                else if (data instanceof FloatNode){
-                    if (!floatMap.containsKey(name))
-                        floatMap.put(name, ((FloatNode) data).getFloat());
-                    floatMap.replace(name, ((FloatNode) data).getFloat());
+                int slot = readable.getSymbol();
+                // check type of next datum, advancing past it
+                DataSegment data = context.program.getData();
+                switch (data.tagAt(context.dataCursor)){
+                    case DataSegment.INT:
+                        storeInt(context, slot, data.intAt(context.dataCursor++));
+                        break;
+                    case DataSegment.FLOAT:
+                        storeFloat(context, slot, data.floatAt(context.dataCursor++));
+                        break;
+                    case DataSegment.STRING:
+                        storeString(context, slot, data.textAt(context.dataCursor++));
+                        break;
+                    default:
+                        throw new Exception("Node '" + readable.getName() + "' is of unsupported type.");
                 }
-                // check for string
-                else if (data instanceof StringNode){
-                    if (!stringMap.containsKey(name))
-                        stringMap.put(name, ((StringNode) data).getString());
-                    stringMap.replace(name, ((StringNode) data).getString());
-                }
-                else throw new Exception("Node '" + name + "' is of unsupported type.");
             }
         }
 
+        // check if node is restore node
+        else if (node instanceof RestoreNode)
+            context.dataCursor = ((RestoreNode) node).getPosition();
+
         // check if node is assignment node
         else if (node instanceof AssignmentNode){
             // get assignment values
             Node value = ((AssignmentNode) node).getValue();
-            String name = ((AssignmentNode) node).getVariable().getName();
-            // check type and add to appropriate map
-            if (value instanceof FloatNode){
-                if (floatMap.containsKey(name)) floatMap.replace(name, ((FloatNode) value).getFloat());
-                else floatMap.put(name, ((FloatNode) value).getFloat());
-            }
-            else if (value instanceof IntegerNode){
-                if (intMap.containsKey(name)) intMap.replace(name, ((IntegerNode) value).getInteger());
-                else intMap.put(name, ((IntegerNode) value).getInteger());
-            }
-            else if (value instanceof StringNode){
-                if (stringMap.containsKey(name)) stringMap.replace(name, ((StringNode) value).getString());
-                else stringMap.put(name, ((StringNode) value).getString());
-            }
+            int slot = ((AssignmentNode) node).getVariable().getSymbol();
+            // check type and add to appropriate store, or to the array of an element
+            if (((AssignmentNode) node).getElement() != null)
+                storeElement(context, ((AssignmentNode) node).getElement(), value);
+            else if (value instanceof FloatNode)
+                storeFloat(context, slot, ((FloatNode) value).getFloat());
+            else if (value instanceof IntegerNode)
+                storeInt(context, slot, ((IntegerNode) value).getInteger());
+            else if (value instanceof StringNode)
+                storeString(context, slot, ((StringNode) value).getValue());
+            else if (value instanceof ConcatNode
+                    || (value instanceof FunctionNode && ((FunctionNode) value).returnsString()))
+                storeString(context, slot, stringValue(context, value, "Only strings can be joined with +."));
             else if (value instanceof MathOpNode){
-                Node eval = mathOp((MathOpNode) value);
-                if (eval instanceof IntegerNode){
-                    if (intMap.containsKey(name)) intMap.replace(name, ((IntegerNode) eval).getInteger());
-                    else intMap.put(name, ((IntegerNode) eval).getInteger());
-                }
-                else if (eval instanceof FloatNode){
-                    if (floatMap.containsKey(name)) floatMap.replace(name, ((FloatNode) eval).getFloat());
-                    else floatMap.put(name, ((FloatNode) eval).getFloat());
-                }
+                Node eval = mathOp(context, (MathOpNode) value);
+                if (eval instanceof IntegerNode)
+                    storeInt(context, slot, ((IntegerNode) eval).getInteger());
+                else if (eval instanceof FloatNode)
+                    storeFloat(context, slot, ((FloatNode) eval).getFloat());
+            }
+            else if (value instanceof ArrayNode){
+                BasicArray array = array(context, ((ArrayNode) value).getVar());
+                int offset = offset(context, (ArrayNode) value, array);
+                if (array.type == BasicArray.INT) storeInt(context, slot, array.ints[offset]);
+                else if (array.type == BasicArray.FLOAT) storeFloat(context, slot, array.floats[offset]);
+                else storeString(context, slot, array.strings[offset]);
             }
         }
 
+        // check if node is dim or mat node
+        else if (node instanceof DimNode)
+            dim(context, (DimNode) node);
+        else if (node instanceof MatNode)
+            mat(context, (MatNode) node);
+
         // check if node is input node
         else if (node instanceof InputNode){
-            // if variables are preceded by string, print it
-            if (!((InputNode) node).getNodes().isEmpty() && ((InputNode) node).getNodes().get(0) instanceof StringNode)
-                System.out.println(((StringNode) ((InputNode) node).getNodes().remove(0)).getString());
-            // if node list is still not empty
-            if (!((InputNode) node).getNodes().isEmpty()) {
-                // instantiate scanner
-                Scanner in = new Scanner(System.in);
-                // iterate thru var nodes and get string for them
-                for (Node var : ((InputNode) node).getNodes()) {
-                    String varName = ((VariableNode) var).getName();
-                    System.out.print(varName + ": ");
-                    stringMap.put(varName, in.nextLine());
-                    System.out.print("\n");
+            // if variables are preceded by string, print it each time
+            ArrayList<Node> nodes = ((InputNode) node).getNodes();
+            int first = 0;
+            if (!nodes.isEmpty() && nodes.get(0) instanceof StringNode)
+                context.out.println(((StringNode) nodes.get(first++)).getString());
+            // iterate thru var nodes and get string for them, timing the wait
+            for (int i = first; i < nodes.size(); i++) {
+                VariableNode var = (VariableNode) nodes.get(i);
+                context.out.print(var.getName() + ": ");
+                context.out.flush();
+                if (context.metrics != null) context.publish(true, true);
+                InputWaitEvent wait = null;
+                if (JfrEvents.ENABLED){
+                    wait = new InputWaitEvent();
+                    wait.begin();
                 }
+                long waited = System.nanoTime();
+                storeString(context, var.getSymbol(), BasicString.of(context.scanner().nextLine()));
+                context.inputNanos += System.nanoTime() - waited;
+                if (JfrEvents.ENABLED && wait.shouldCommit()){
+                    wait.variable = var.getName();
+                    wait.commit();
+                }
+                context.out.print("\n");
             }
         }
 
         // check if node is print node
         else if (node instanceof PrintNode){
             // state that we're printing the node and iterate thru items
-            System.out.println("Printing:");
+            context.out.printHeader();
             for (Node printable : ((PrintNode) node).getNodes())
-                printNode(printable, "\t");
+                printNode(context, printable);
+            context.out.endStatement();
+        }
+
+    }
+
+    /**
+     * Helper fn that records a statement as slow if a recording wants it
+     * and it took longer than the threshold.
+     * @param event event begun before the statement ran.
+     * @param node statement.
+     */
+    private static void slowStatement(SlowStatementEvent event, StatementNode node){
+        if (event.shouldCommit()){
+            event.statement = Profiler.describe(node);
+            event.commit();
         }
+    }
+
+    /**
+     * Helper fn that evaluates a bound of a FOR loop, keeping ints exact.
+     * @param node expression of bound.
+     * @return value of bound.
+     * @throws Exception when bound is not a number.
+     */
+    private double bound(ExecutionContext context, Node node) throws Exception{
+        if (node instanceof IntegerNode) return ((IntegerNode) node).getInteger();
+        if (node instanceof VariableNode && context.intSet[((VariableNode) node).getSymbol()])
+            return context.intStore[((VariableNode) node).getSymbol()];
+        return genericOperand(context, node, "FOR loop bounds must be numbers.");
+    }
+
+    /**
+     * Helper fn that gets the first of a list of statements.
+     * @param statements statements.
+     * @return first statement, or null if there are none.
+     */
+    private static StatementNode first(StatementsNode statements){
+        return statements.getStatements().isEmpty() ? null : statements.getStatements().get(0);
+    }
 
+    /**
+     * Helper fn that finishes a FOR loop, leaving its variable unset.
+     * @param node FOR statement.
+     * @param iterations iterations run.
+     * @param event JFR event of the loop, or null.
+     */
+    private static void endFor(ExecutionContext context, ForNode node, long iterations, ForLoopEvent event){
+        if (context.profiler != null) context.profiler.exitLoop(node);
+        if (JfrEvents.ENABLED && event.shouldCommit()){
+            event.variable = node.getVar().getName();
+            event.iterations = iterations;
+            event.commit();
+        }
+        context.floatSet[node.getVar().getSymbol()] = false;
+        if (context.floatWritten != null) context.floatWritten.set(node.getVar().getSymbol());
     }
 
     /**
-     * Execute statements ina statements node.
+     * Execute statements ina statements node. Loops entered run in the same
+     * frame: reaching the end of a loop's statements is the back-edge that
+     * starts its next iteration or leaves it.
      * @param statementsNode to be executed.
      * @throws Exception on invalid syntax.
      */
-    private void executeStatements(StatementsNode statementsNode) throws Exception{
-        // make stack and pointer
-        Stack<StatementNode> stack = new Stack<>();
-        StatementNode current = statementsNode.getStatements().get(0);
+    private void executeStatements(ExecutionContext context, StatementsNode statementsNode) throws Exception{
+        // returns below this depth belong to enclosing statements, as do loops below this one
+        int base = context.returnCount;
+        int loopBase = context.loopCount;
+        // RETURN may not pop below the start of the innermost loop's iteration
+        int floor = base;
+        StatementNode current = first(statementsNode);
+        final Profiler profiler = context.profiler;
         // execute current node
-        while (current != null){
+        while (true){
+            if (current == null){
+                // end of these statements, or back-edge of the innermost loop
+                if (context.loopCount == loopBase) break;
+                ExecutionContext.Loop loop = context.topLoop();
+                StatementNode node = loop.node;
+                // calls never returned from end with the iteration that made them
+                context.dropReturns(loop.returnBase);
+                if (node instanceof ForNode){
+                    ForNode forNode = (ForNode) node;
+                    if (++loop.index < loop.trips){
+                        // bodies without statements still reach checkpoints
+                        if ((loop.index & CHECKPOINT_MASK) == 0) context.checkpoint();
+                        storeFloat(context, forNode.getVar().getSymbol(), ForNode.value(loop.start, loop.step, loop.index));
+                        current = first(forNode.getStatementsNode());
+                        continue;
+                    }
+                    // end the loop before its frame is freed, which drops its event
+                    endFor(context, forNode, loop.trips, loop.event);
+                    context.popLoop();
+                } else {
+                    // test a WHILE loop's condition again, counting it as a statement
+                    WhileNode whileNode = (WhileNode) node;
+                    if ((++context.executed & CHECKPOINT_MASK) == 0) context.checkpoint();
+                    if (evaluateBoolean(context, whileNode.getCondition())){
+                        current = first(whileNode.getStatementsNode());
+                        continue;
+                    }
+                    context.popLoop();
+                    if (profiler != null) profiler.exitLoop(whileNode);
+                }
+                floor = context.loopCount > loopBase ? context.topLoop().returnBase : base;
+                current = node.getNextStatement();
+                continue;
+            }
+            // count statements, publishing and checking the timeout now and then, and only time them when profiling
+            if ((++context.executed & CHECKPOINT_MASK) == 0) context.checkpoint();
+            long started = profiler != null ? System.nanoTime() : 0;
+            SlowStatementEvent slow = null;
+            if (JfrEvents.ENABLED){
+                slow = new SlowStatementEvent();
+                slow.begin();
+            }
             if (current instanceof IfNode){
                 // check truth value
-                boolean truthVal = evaluateBoolean(((IfNode) current).getCondition());
-                if (truthVal) {
-                    // get node to go to and set as current
-                    String label = ((IfNode) current).getLabel().getName();
-                    if (!labelMap.containsKey(label))
-                        throw new Exception("Label '" + label + "' not found.");
-                    // go to labelled node
-                    current = labelMap.get(label);
-                } else current = current.getNextStatement();
+                boolean truthVal = ((IfNode) current).isAlwaysTaken() ||
+                        evaluateBoolean(context, ((IfNode) current).getCondition());
+                if (profiler != null) profiler.statement(current, started);
+                if (JfrEvents.ENABLED) slowStatement(slow, current);
+                // go to labelled node if true
+                if (truthVal) current = ((IfNode) current).getTarget();
+                else current = current.getNextStatement();
             }
             else if (current instanceof ForNode){
-                // get for loop params
-                float start = ((ForNode) current).getStart();
-                float stop = ((ForNode) current).getStop();
-                float step = ((ForNode) current).getStep();
-                boolean isIncreasing = stop >= start;
-                String varName = ((ForNode) current).getVar().getName();
-                // make var in map for internal access
-                floatMap.put(varName, 0f);
-                // make for loop
-                for (float f = start; isIncreasing ? (f < stop) : (f > stop); f += step){
-                    // update internal var
-                    floatMap.replace(varName, f);
-                    executeStatements(((ForNode) current).getStatementsNode());
+                // evaluate bounds once and count iterations
+                ForNode forNode = (ForNode) current;
+                double start = bound(context, forNode.getStart());
+                double stop = bound(context, forNode.getStop());
+                double step = bound(context, forNode.getStep());
+                long trips = ForNode.trips(start, stop, step);
+                if (profiler != null) profiler.enterLoop(forNode, started);
+                ForLoopEvent event = null;
+                if (JfrEvents.ENABLED){
+                    event = new ForLoopEvent();
+                    event.begin();
+                }
+                // run iterations in parallel if planned and worthwhile, otherwise enter loop
+                if (trips > 0 && (profiler != null || !executeParallel(context, forNode, start, step, trips))){
+                    ExecutionContext.Loop loop = context.pushLoop(forNode);
+                    loop.start = start;
+                    loop.step = step;
+                    loop.trips = trips;
+                    loop.event = event;
+                    floor = context.returnCount;
+                    storeFloat(context, forNode.getVar().getSymbol(), ForNode.value(start, step, 0));
+                    current = first(forNode.getStatementsNode());
+                    continue;
+                }
+                endFor(context, forNode, trips, event);
+                current = current.getNextStatement();
+            }
+            else if (current instanceof WhileNode){
+                // enter loop if condition holds
+                WhileNode whileNode = (WhileNode) current;
+                if (evaluateBoolean(context, whileNode.getCondition())){
+                    if (profiler != null) profiler.enterLoop(whileNode, started);
+                    context.pushLoop(whileNode);
+                    floor = context.returnCount;
+                    current = first(whileNode.getStatementsNode());
+                    continue;
                 }
-                // clean up and continue
-                floatMap.remove(varName);
+                if (profiler != null) profiler.statement(current, started);
                 current = current.getNextStatement();
             }
             else if (current instanceof GoSubNode){
                 // set node to return to
-                stack.push(current.getNextStatement());
-                // get node to go to and set as current
-                String label = ((GoSubNode) current).getLabel();
-                if (!labelMap.containsKey(label))
-                    throw new Exception("Label '" + label + "' not found.");
-                current = labelMap.get(label);
+                if (profiler != null) profiler.enterSubroutine((GoSubNode) current, started);
+                GoSubEvent call = JfrEvents.ENABLED ? GoSubEvent.enter((GoSubNode) current, context.returnCount + 1) : null;
+                context.pushReturn(current.getNextStatement(), call);
+                // go to labelled node
+                current = ((GoSubNode) current).getTarget();
             }
             else if (current instanceof ReturnNode){
                 // ensure there is a node to goto
-                if (stack.size() == 0)
+                if (context.returnCount == floor)
                     throw new Exception("Invalid RETURN: No node exists to return to.");
+                if (profiler != null) profiler.exitSubroutine();
                 // goto that node
-                current = stack.pop();
+                current = context.popReturn();
             }
             else {
-                interpret(current);
+                interpret(context, current);
+                if (profiler != null) profiler.statement(current, started);
+                if (JfrEvents.ENABLED) slowStatement(slow, current);
                 current = current.getNextStatement();
             }
         }
+        // calls never returned from end with the statements that made them
+        context.dropReturns(base);
     }
 
     /**
-     * Starting point for interpreter to walk.
+     * Runs the iterations of a planned loop in chunks on the common pool,
+     * each in a forked context, then prints each chunk's output and merges
+     * its variables in iteration order. A chunk failing stops the chunks
+     * after it, and the run continues as if the loop had failed there.
+     * @param context context of the run.
+     * @param loop FOR loop.
+     * @param start evaluated start.
+     * @param step evaluated step.
+     * @param iterations iterations of the loop.
+     * @return true if the loop ran, or false if it should run sequentially.
+     * @throws Exception when an iteration fails.
      */
-    public void initialize() throws Exception{
+    private boolean executeParallel(ExecutionContext context, ForNode loop, double start, double step,
+                                    long iterations) throws Exception{
+        ParallelLoop plan = loop.getParallelPlan();
+        int workers = ForkJoinPool.getCommonPoolParallelism();
+        if (plan == null || workers < 2) return false;
+        // a loop that never ends is left to the timeout, and a short one is not worth splitting
+        int minimum = plan.isAuto() ? ParallelLoop.AUTO_MIN_ITERATIONS : ParallelLoop.MIN_ITERATIONS;
+        if (iterations == Long.MAX_VALUE || iterations < minimum) return false;
+        // a reduction with no number yet fails on its first iteration, so leave that to the loop
+        int[] reductions = plan.getReductions();
+        for (int slot : reductions)
+            if (!context.intSet[slot] && !context.floatSet[slot]) return false;
+        int chunks = (int) Math.min(iterations, workers * ParallelLoop.CHUNKS_PER_WORKER);
+        // a reduction holding an int reads the same value every iteration, so merge it like other variables
+        int[] written = plan.getWritten();
+        boolean[] products = plan.getProducts();
+        ArrayList<Integer> merged = new ArrayList<>();
+        for (int slot : written) merged.add(slot);
+        for (int slot : reductions) if (context.intSet[slot]) merged.add(slot);
+
+        // fork chunks, each summing or multiplying its reductions from the identity
+        int slot = loop.getVar().getSymbol();
+        ExecutionContext[] forks = new ExecutionContext[chunks];
+        ArrayList<ForkJoinTask<Exception>> tasks = new ArrayList<>(chunks);
+        AtomicInteger failed = new AtomicInteger(chunks);
+        for (int chunk = 0; chunk < chunks; chunk++){
+            ExecutionContext fork = context.fork(new MemoryOutputSink(context.out.isRaw()));
+            for (int i = 0; i < reductions.length; i++){
+                if (fork.intSet[reductions[i]]) continue;
+                fork.floatStore[reductions[i]] = products[i] ? 1 : 0;
+                fork.floatSet[reductions[i]] = true;
+            }
+            forks[chunk] = fork;
+            long first = chunkStart(iterations, chunk, chunks);
+            long last = chunkStart(iterations, chunk + 1, chunks);
+            int index = chunk;
+            tasks.add(ForkJoinPool.commonPool().submit(() -> {
+                try {
+                    for (long i = first; i < last && failed.get() > index; i++){
+                        storeFloat(fork, slot, ForNode.value(start, step, i));
+                        executeStatements(fork, loop.getStatementsNode());
+                    }
+                    return null;
+                } catch (Exception e){
+                    failed.accumulateAndGet(index, Math::min);
+                    return e;
+                }
+            }));
+        }
 
-        // validate size
-        if (top.getStatements().size() == 0) return;
+        // join chunks in order, printing their output and merging their variables
+        Exception error = null;
+        for (int chunk = 0; chunk < chunks; chunk++){
+            Exception thrown = tasks.get(chunk).join();
+            if (error != null) continue;
+            ExecutionContext fork = forks[chunk];
+            String output = ((MemoryOutputSink) fork.out).getOutput();
+            if (!output.isEmpty()){
+                context.out.print(output);
+                context.out.flush();
+            }
+            // each store of a variable comes from the last chunk that assigned it
+            for (int var : merged){
+                if (fork.intWritten.get(var)){
+                    context.intSet[var] = fork.intSet[var];
+                    context.intStore[var] = fork.intStore[var];
+                }
+                if (fork.floatWritten.get(var)){
+                    context.floatSet[var] = fork.floatSet[var];
+                    context.floatStore[var] = fork.floatStore[var];
+                }
+                if (fork.stringWritten.get(var)) context.stringStore[var] = fork.stringStore[var];
+            }
+            for (int i = 0; i < reductions.length; i++){
+                int var = reductions[i];
+                if (context.intSet[var]) continue;
+                if (products[i]) context.floatStore[var] *= fork.floatStore[var];
+                else context.floatStore[var] += fork.floatStore[var];
+            }
+            context.executed += fork.executed;
+            if (thrown != null) error = thrown;
+        }
+        if (error != null) throw error;
+        return true;
+    }
+
+    /**
+     * Helper fn that finds the first iteration of a chunk.
+     * @param iterations iterations of the loop.
+     * @param chunk index of chunk, or the count of chunks for the end of the last.
+     * @param chunks count of chunks.
+     * @return index of first iteration.
+     */
+    private static long chunkStart(long iterations, int chunk, int chunks){
+        return iterations / chunks * chunk + iterations % chunks * chunk / chunks;
+    }
 
-        // do edits to tree
-        walkLabels(top);
-        walkFor(top);
-        walkData(top);
-        walkSetNext(top);
+    /**
+     * Getter for program run by this interpreter.
+     * @return linked program.
+     */
+    public Program getProgram() {
+        return program;
+    }
+
+    /**
+     * Runs the program from the top in a context.
+     * @param context state of the run, made for this interpreter's program.
+     * @throws Exception on runtime error.
+     */
+    public void run(ExecutionContext context) throws Exception{
+
+        // validate context and size
+        if (context.program != program) throw new Exception("Context was made for another program.");
+        if (program.getTop().getStatements().size() == 0) return;
 
         // execute from top
-        executeStatements(top);
+        if (context.metrics != null) context.publish(true, true);
+        try {
+            executeStatements(context, program.getTop());
+        } finally {
+            if (context.metrics != null) context.publish(false, true);
+            context.out.flush();
+        }
     }
 }
@@ -0,0 +1,204 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.ObjectName;
+
+/**
+ * Live metrics of one interpreter, registered as an MBean. The interpreter
+ * counts on its own thread in plain fields and publishes a snapshot here
+ * at most every PUBLISH_INTERVAL, so counting costs nothing shared;
+ * readers see volatile copies that are at most that old while it runs.
+ */
+public class InterpreterMetrics implements InterpreterMetricsMBean {
+
+    // least time between publications, 100 ms
+    public static final long PUBLISH_INTERVAL = 100_000_000L;
+
+    // time over which statements per second is measured, 1 s
+    private static final long RATE_WINDOW = 1_000_000_000L;
+
+    private static final AtomicInteger ids = new AtomicInteger();
+
+    private final ObjectName name;
+
+    // last published values
+    private volatile long statementsExecuted;
+    private volatile double statementsPerSecond;
+    private volatile int goSubDepth;
+    private volatile int intVariables;
+    private volatile int floatVariables;
+    private volatile int stringVariables;
+    private volatile int dataRemaining;
+    private volatile long printCharsWritten;
+    private volatile long inputBlockedNanos;
+    private volatile boolean running;
+
+    // written only by the publishing thread
+    private long publishedAt = Long.MIN_VALUE;
+    private long windowStart;
+    private long windowStatements;
+
+    /**
+     * Constructor, registering with the platform MBean server under the
+     * next free basic:type=Interpreter,id=N name.
+     * @throws Exception when registration fails.
+     */
+    public InterpreterMetrics() throws Exception{
+        name = new ObjectName("basic:type=Interpreter,id=" + ids.incrementAndGet());
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+    }
+
+    /**
+     * Removes the MBean from the platform MBean server.
+     * @throws Exception when it is no longer registered.
+     */
+    public void unregister() throws Exception{
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    }
+
+    /**
+     * Get name the MBean is registered under.
+     * @return object name.
+     */
+    public ObjectName getName() {
+        return name;
+    }
+
+    /**
+     * Check whether a publication is due, to be called by the interpreter
+     * before gathering a snapshot.
+     * @param now current nanoTime.
+     * @return true if the last publication is at least PUBLISH_INTERVAL old.
+     */
+    boolean due(long now){
+        return publishedAt == Long.MIN_VALUE || now - publishedAt >= PUBLISH_INTERVAL;
+    }
+
+    /**
+     * Publishes a snapshot of the interpreter's counters.
+     * @param now current nanoTime.
+     * @param statements statements executed.
+     * @param depth GOSUB calls not yet returned from.
+     * @param ints variables holding an int.
+     * @param floats variables holding a float.
+     * @param strings variables holding a string.
+     * @param data DATA items not yet read.
+     * @param printed chars printed.
+     * @param inputNanos nanoseconds blocked on input.
+     * @param active true while executing statements.
+     */
+    void publish(long now, long statements, int depth, int ints, int floats, int strings,
+                 int data, long printed, long inputNanos, boolean active){
+        // the rate is over the window so far, which starts again once a second has passed
+        if (publishedAt == Long.MIN_VALUE){
+            windowStart = now;
+            windowStatements = statements;
+        } else if (now - windowStart >= PUBLISH_INTERVAL){
+            statementsPerSecond = (statements - windowStatements) * 1e9 / (now - windowStart);
+            if (now - windowStart >= RATE_WINDOW){
+                windowStart = now;
+                windowStatements = statements;
+            }
+        }
+        if (!active) statementsPerSecond = 0;
+        publishedAt = now;
+        statementsExecuted = statements;
+        goSubDepth = depth;
+        intVariables = ints;
+        floatVariables = floats;
+        stringVariables = strings;
+        dataRemaining = data;
+        printCharsWritten = printed;
+        inputBlockedNanos = inputNanos;
+        running = active;
+    }
+
+    /**
+     * Get number of statements executed.
+     * @return statements executed.
+     */
+    @Override
+    public long getStatementsExecuted() {
+        return statementsExecuted;
+    }
+
+    /**
+     * Get statements executed per second over the last second or so.
+     * @return statements per second.
+     */
+    @Override
+    public double getStatementsPerSecond() {
+        return statementsPerSecond;
+    }
+
+    /**
+     * Get number of GOSUB calls not yet returned from.
+     * @return depth of GOSUB stack.
+     */
+    @Override
+    public int getGoSubDepth() {
+        return goSubDepth;
+    }
+
+    /**
+     * Get number of variables holding an int.
+     * @return int variables.
+     */
+    @Override
+    public int getIntVariables() {
+        return intVariables;
+    }
+
+    /**
+     * Get number of variables holding a float.
+     * @return float variables.
+     */
+    @Override
+    public int getFloatVariables() {
+        return floatVariables;
+    }
+
+    /**
+     * Get number of variables holding a string.
+     * @return string variables.
+     */
+    @Override
+    public int getStringVariables() {
+        return stringVariables;
+    }
+
+    /**
+     * Get number of DATA items not yet read.
+     * @return data items remaining.
+     */
+    @Override
+    public int getDataRemaining() {
+        return dataRemaining;
+    }
+
+    /**
+     * Get number of chars printed.
+     * @return chars printed.
+     */
+    @Override
+    public long getPrintCharsWritten() {
+        return printCharsWritten;
+    }
+
+    /**
+     * Get milliseconds spent waiting for INPUT.
+     * @return milliseconds blocked on input.
+     */
+    @Override
+    public long getInputBlockedMillis() {
+        return inputBlockedNanos / 1_000_000;
+    }
+
+    /**
+     * Check whether the interpreter is executing statements.
+     * @return true while running.
+     */
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
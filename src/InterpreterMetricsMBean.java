@@ -0,0 +1,66 @@
+/**
+ * Management interface of an interpreter's live metrics, as shown by JMX
+ * clients. Values are as of the interpreter's last publication.
+ */
+public interface InterpreterMetricsMBean {
+
+    /**
+     * Get number of statements executed.
+     * @return statements executed.
+     */
+    long getStatementsExecuted();
+
+    /**
+     * Get statements executed per second over the last second or so.
+     * @return statements per second.
+     */
+    double getStatementsPerSecond();
+
+    /**
+     * Get number of GOSUB calls not yet returned from.
+     * @return depth of GOSUB stack.
+     */
+    int getGoSubDepth();
+
+    /**
+     * Get number of variables holding an int.
+     * @return int variables.
+     */
+    int getIntVariables();
+
+    /**
+     * Get number of variables holding a float.
+     * @return float variables.
+     */
+    int getFloatVariables();
+
+    /**
+     * Get number of variables holding a string.
+     * @return string variables.
+     */
+    int getStringVariables();
+
+    /**
+     * Get number of DATA items not yet read.
+     * @return data items remaining.
+     */
+    int getDataRemaining();
+
+    /**
+     * Get number of chars printed.
+     * @return chars printed.
+     */
+    long getPrintCharsWritten();
+
+    /**
+     * Get milliseconds spent waiting for INPUT.
+     * @return milliseconds blocked on input.
+     */
+    long getInputBlockedMillis();
+
+    /**
+     * Check whether the interpreter is executing statements.
+     * @return true while running.
+     */
+    boolean isRunning();
+}
@@ -0,0 +1,13 @@
+/**
+ * Switch for the interpreter's JFR events, read once at startup. Events
+ * are only made when the JVM runs with -Dbasic.jfr=true; otherwise no JFR
+ * class is loaded and the checks fold away, so a JVM that never records
+ * pays nothing. With the switch on, events are still only committed while
+ * a recording has them enabled.
+ */
+public final class JfrEvents {
+
+    public static final boolean ENABLED = Boolean.getBoolean("basic.jfr");
+
+    private JfrEvents(){}
+}
@@ -4,15 +4,18 @@
 public class LabeledStatementNode extends StatementNode{
 
     private final String label;
+    private final int symbol;
     private final StatementNode node;
 
     /**
      * Constructor.
      * @param label node's label.
+     * @param symbol ID of label in symbol table.
      * @param node StatementNode with the label.
      */
-    public LabeledStatementNode(String label, StatementNode node){
+    public LabeledStatementNode(String label, int symbol, StatementNode node){
         this.label = label;
+        this.symbol = symbol;
         this.node = node;
     }
 
@@ -24,6 +27,14 @@ public class LabeledStatementNode extends StatementNode{
         return label;
     }
 
+    /**
+     * Getter for symbol ID of label.
+     * @return ID of label in symbol table.
+     */
+    public int getSymbol() {
+        return symbol;
+    }
+
     /**
      * Getter for node.
      * @return node.
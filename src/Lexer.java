@@ -1,221 +1,412 @@
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.regex.Pattern;
+import java.util.Arrays;
 
 /**
- * Lexer class with function for lexing strings to tokens.
+ * Lexer class with function for lexing lines to tokens. The lexer is a
+ * state machine driven by a character class table; tokens are kept packed
+ * as type, offset and length into the source, and only become Token
+ * objects when asked for. Identifiers and labels are interned in a symbol
+ * table, and packed with their symbol ID in place of the offset.
  */
 public class Lexer {
 
-    // "state machine" member vars
-    StringBuilder numberState = new StringBuilder();
-    StringBuilder stringState = new StringBuilder();
-    StringBuilder wordState = new StringBuilder();
-    ArrayList<Token> tokens = new ArrayList<>();
-    Boolean takingString = false;
-
-    // static member vars
-    static final Pattern number = Pattern.compile("[0-9]");
-    static final Pattern letter = Pattern.compile("[a-zA-Z]");
-    static HashMap<String, TokenType> keywords = new HashMap<>();
+    // character classes
+    private static final byte OTHER = 0;
+    private static final byte DIGIT = 1;
+    private static final byte LETTER = 2;
+    private static final byte SPACE = 3;
+    private static final byte QUOTE = 4;
+    private static final byte SINGLE = 5;
+    private static final byte SUFFIX = 6;
+    private static final byte MINUS = 7;
+    private static final byte DOT = 8;
+    private static final byte GREATER = 9;
+    private static final byte LESS = 10;
+
+    // states
+    private static final int START = 0;
+    private static final int WORD = 1;
+    private static final int NUMBER = 2;
+
+    // class of each ascii char, and token type of single char tokens
+    private static final byte[] classes = new byte[128];
+    private static final TokenType[] singles = new TokenType[128];
     static {
-        // data io
-        keywords.put("PRINT", TokenType.PRINT);
-        keywords.put("INPUT", TokenType.INPUT);
-        keywords.put("READ", TokenType.READ);
-        keywords.put("DATA", TokenType.DATA);
-        // control
-        keywords.put("GOSUB", TokenType.GOSUB);
-        keywords.put("RETURN", TokenType.RETURN);
-        // loops
-        keywords.put("FOR", TokenType.FOR);
-        keywords.put("NEXT", TokenType.NEXT);
-        keywords.put("STEP", TokenType.STEP);
-        keywords.put("TO", TokenType.TO);
-        // conditionals
-        keywords.put("IF", TokenType.IF);
-        keywords.put("THEN", TokenType.THEN);
-        // functions
-        keywords.put("RANDOM", TokenType.FN_RANDOM);
-        keywords.put("LEFT$", TokenType.FN_LEFT);
-        keywords.put("RIGHT$", TokenType.FN_RIGHT);
-        keywords.put("MID$", TokenType.FN_MID);
-        keywords.put("NUM$", TokenType.FN_NUM);
-        keywords.put("VAL", TokenType.FN_VAL);
-        keywords.put("VAL%", TokenType.FN_VAL_F);
-    }
-
-    /**
-     * Helper function that tokenizes number state value and clears it.
-     */
-    private void pushNumber(){
-        if (numberState.length() > 0) {
-            tokens.add(new Token(TokenType.NUMBER, numberState.toString()));
-            numberState.setLength(0);
-        }
+        for (char c = '0'; c <= '9'; c++) classes[c] = DIGIT;
+        for (char c = 'a'; c <= 'z'; c++) classes[c] = LETTER;
+        for (char c = 'A'; c <= 'Z'; c++) classes[c] = LETTER;
+        classes[' '] = SPACE;
+        classes['"'] = QUOTE;
+        classes['$'] = SUFFIX;
+        classes['%'] = SUFFIX;
+        classes[':'] = SUFFIX;
+        classes['-'] = MINUS;
+        classes['.'] = DOT;
+        classes['>'] = GREATER;
+        classes['<'] = LESS;
+        single(',', TokenType.COMMA);
+        single('+', TokenType.ADD);
+        single('*', TokenType.MULTIPLY);
+        single('/', TokenType.DIVIDE);
+        single('=', TokenType.EQUALS);
+        single('(', TokenType.LPAREN);
+        single(')', TokenType.RPAREN);
+    }
+
+    // token types, and shared tokens for types without a value
+    private static final TokenType[] types = TokenType.values();
+    private static final Token[] plain = new Token[types.length];
+    static {
+        for (TokenType type : types) plain[type.ordinal()] = new Token(type);
+    }
+
+    // source, symbol table, and packed tokens, three ints each
+    private CharSequence source;
+    private SymbolTable symbols;
+    private int[] packed = new int[3 * 256];
+    private int count = 0;
+
+    /**
+     * Helper fn for static init that registers a single char token.
+     * @param c char.
+     * @param type type of token.
+     */
+    private static void single(char c, TokenType type){
+        classes[c] = SINGLE;
+        singles[c] = type;
+    }
+
+    /**
+     * Constructor for lexing lines of a source with {@link #lexLine}.
+     * @param source text to lex.
+     * @param symbols table to intern names in, shared by all lexers of a program.
+     */
+    public Lexer(CharSequence source, SymbolTable symbols){
+        this.source = source;
+        this.symbols = symbols;
     }
 
     /**
-     * Helper function that tokenizes current word and clears it.
+     * Constructor for lexing single lines with {@link #lex}, interning names
+     * in a table of its own.
      */
-    private void pushWord(){
-        if (wordState.length() > 0) {
-            final String word = wordState.toString();
-            if (keywords.containsKey(word))
-                tokens.add(new Token(keywords.get(word)));
-            else if (word.contains(":"))
-                tokens.add(new Token(TokenType.LABEL, word.substring(0, word.length()-1)));
-            else
-                tokens.add(new Token(TokenType.IDENTIFIER, word));
-            wordState.setLength(0);
+    public Lexer(){
+        this("", new SymbolTable());
+    }
+
+    /**
+     * Helper fn that checks the class of a char.
+     * @param c char.
+     * @param charClass class to check for.
+     * @return true if char is ascii and of the class.
+     */
+    private static boolean isClass(char c, byte charClass){
+        return c < 128 && classes[c] == charClass;
+    }
+
+    /**
+     * Helper fn that adds a packed token.
+     * @param type type of token.
+     * @param offset offset of value in source.
+     * @param length length of value.
+     */
+    private void emit(TokenType type, int offset, int length){
+        if (count * 3 == packed.length) packed = Arrays.copyOf(packed, packed.length * 2);
+        int at = count * 3;
+        packed[at] = type.ordinal();
+        packed[at + 1] = offset;
+        packed[at + 2] = length;
+        count++;
+    }
+
+    /**
+     * Helper fn that checks whether source holds a word at an offset.
+     * The first char is already known to match.
+     * @param offset offset of word in source.
+     * @param length length of word in source.
+     * @param word word to compare with.
+     * @return true if equal.
+     */
+    private boolean is(int offset, int length, String word){
+        if (length != word.length()) return false;
+        for (int i = 1; i < length; i++)
+            if (source.charAt(offset + i) != word.charAt(i)) return false;
+        return true;
+    }
+
+    /**
+     * Helper fn that finds the keyword a word spells, switching on its first char.
+     * @param offset offset of word in source.
+     * @param length length of word, including any suffix.
+     * @return type of keyword, or null if not a keyword.
+     */
+    private TokenType keyword(int offset, int length){
+        switch (source.charAt(offset)){
+            case 'D':
+                if (is(offset, length, "DATA")) return TokenType.DATA;
+                if (is(offset, length, "DIM")) return TokenType.DIM;
+                break;
+            case 'F':
+                if (is(offset, length, "FOR")) return TokenType.FOR;
+                break;
+            case 'G':
+                if (is(offset, length, "GOSUB")) return TokenType.GOSUB;
+                break;
+            case 'I':
+                if (is(offset, length, "IF")) return TokenType.IF;
+                if (is(offset, length, "INPUT")) return TokenType.INPUT;
+                break;
+            case 'L':
+                if (is(offset, length, "LEFT$")) return TokenType.FN_LEFT;
+                break;
+            case 'M':
+                if (is(offset, length, "MID$")) return TokenType.FN_MID;
+                if (is(offset, length, "MAT")) return TokenType.MAT;
+                break;
+            case 'N':
+                if (is(offset, length, "NEXT")) return TokenType.NEXT;
+                if (is(offset, length, "NUM$")) return TokenType.FN_NUM;
+                break;
+            case 'P':
+                if (is(offset, length, "PRINT")) return TokenType.PRINT;
+                if (is(offset, length, "PARALLEL")) return TokenType.PARALLEL;
+                break;
+            case 'R':
+                if (is(offset, length, "READ")) return TokenType.READ;
+                if (is(offset, length, "RETURN")) return TokenType.RETURN;
+                if (is(offset, length, "RESTORE")) return TokenType.RESTORE;
+                if (is(offset, length, "RANDOM")) return TokenType.FN_RANDOM;
+                if (is(offset, length, "RIGHT$")) return TokenType.FN_RIGHT;
+                break;
+            case 'S':
+                if (is(offset, length, "STEP")) return TokenType.STEP;
+                break;
+            case 'T':
+                if (is(offset, length, "TO")) return TokenType.TO;
+                if (is(offset, length, "THEN")) return TokenType.THEN;
+                break;
+            case 'V':
+                if (is(offset, length, "VAL")) return TokenType.FN_VAL;
+                if (is(offset, length, "VAL%")) return TokenType.FN_VAL_F;
+                break;
+            case 'W':
+                if (is(offset, length, "WHILE")) return TokenType.WHILE;
+                if (is(offset, length, "WEND")) return TokenType.WEND;
+                break;
         }
+        return null;
     }
 
     /**
-     * Helper function that pushes both word and number.
+     * Helper fn that emits a word as keyword, label or identifier.
+     * @param offset offset of word in source.
+     * @param end offset after word, including any suffix.
      */
-    private void pushBoth(){
-        pushWord();
-        pushNumber();
+    private void emitWord(int offset, int end){
+        TokenType keyword = keyword(offset, end - offset);
+        if (keyword != null)
+            emit(keyword, offset, end - offset);
+        else if (source.charAt(end - 1) == ':')
+            emit(TokenType.LABEL, symbols.intern(source, offset, end - offset - 1), end - offset - 1);
+        else
+            emit(TokenType.IDENTIFIER, symbols.intern(source, offset, end - offset), end - offset);
     }
 
     /**
-     * Helper function that tokenizes current string and clears it.
+     * Helper fn that emits the pending word or number.
+     * @param state current state.
+     * @param offset offset of pending token.
+     * @param end offset after pending token.
      */
-    private void pushString(){
-        final String string = stringState.toString();
-        tokens.add(new Token(TokenType.STRING, string));
-        stringState.setLength(0);
+    private void emitPending(int state, int offset, int end){
+        if (state == WORD) emitWord(offset, end);
+        else if (state == NUMBER) emit(TokenType.NUMBER, offset, end - offset);
     }
 
     /**
-     * Takes a string and lexes to a list of tokens defined in TokenType enum.
-     * @param string string to be lexed.
-     * @return list of tokens from string.
+     * Lexes one line of the source, followed by an EndOfLine token. On
+     * error the tokens of the line are dropped.
+     * @param start offset of line in source.
+     * @param end offset after line.
      * @throws Exception when lexing error.
      */
-    public ArrayList<Token> lex(String string) throws Exception{
-
-        // iterate through characters
-        for (int i = 0; i < string.length(); i++){
-            char c = string.charAt(i);
-            // check if we're dealing with a string
-            if (c == '"') {
-                if (takingString) pushString();
-                takingString = !takingString;
-            }
-            else if (takingString) stringState.append(c);
-            // if we are not dealing with a string
-            else switch (c){
-                case ' ':
-                    pushBoth();
-                    break;
-                case ',':
-                    pushBoth();
-                    tokens.add(new Token(TokenType.COMMA));
-                    break;
-                case '+':
-                    pushBoth();
-                    tokens.add(new Token(TokenType.ADD));
-                    break;
-                case '*':
-                    pushBoth();
-                    tokens.add(new Token(TokenType.MULTIPLY));
-                    break;
-                case '/':
-                    pushBoth();
-                    tokens.add(new Token(TokenType.DIVIDE));
-                    break;
-                case '=':
-                    pushBoth();
-                    tokens.add(new Token(TokenType.EQUALS));
-                    break;
-                case '(':
-                    pushBoth();
-                    tokens.add(new Token(TokenType.LPAREN));
-                    break;
-                case ')':
-                    pushBoth();
-                    tokens.add(new Token(TokenType.RPAREN));
-                    break;
-                case '$':
-                case '%':
-                case ':':
-                    if (wordState.length() > 0){
-                        wordState.append(c);
-                        pushWord();
-                    }
-                    else throw new Exception("Invalid input at \"" + c +"\"");
-                    break;
-                case '-':
-                    // are we taking a word
-                    if (wordState.length() > 0) pushWord();
-                    // is next char is number (this is negative sign)
-                    if (numberState.length() == 0
-                            && i < string.length() -1
-                            && number.matcher(Character.toString(string.charAt(i+1))).find())
-                        numberState.append("-");
-                    // otherwise this is a minus sign
-                    else {
-                        pushNumber();
-                        tokens.add(new Token(TokenType.SUBTRACT));
-                    }
-                    break;
-                case '.':
-                    // if we have number and last char of it isn't a dot
-                    if ((numberState.length() > 0)
-                            && (number.matcher(numberState.substring(numberState.length()-1)).find()))
-                        numberState.append(c);
-                    // otherwise input must be invalid
-                    else throw new Exception("Invalid input at \"" + c +"\"");
-                    break;
-                case '>':
-                    pushBoth();
-                    // is next char '='
-                    if (i < string.length() -1 && string.charAt(i+1) == '='){
-                        tokens.add(new Token(TokenType.GTE));
-                        i++;
-                    }
-                    else
-                        tokens.add(new Token(TokenType.GT));
-                    break;
-                case '<':
-                    pushBoth();
-                    // is next char '='
-                    if (i < string.length() -1 && string.charAt(i+1) == '='){
-                        tokens.add(new Token(TokenType.LTE));
-                        i++;
-                    }
-                    // is next char '>'
-                    else if (i < string.length() -1 && string.charAt(i+1) == '>'){
-                        tokens.add(new Token(TokenType.NOTEQUALS));
-                        i++;
-                    }
-                    else
-                        tokens.add(new Token(TokenType.LT));
-                    break;
-                default:
-                    // if char is a number, add it to number state
-                    if (number.matcher(Character.toString(c)).find()) {
-                        pushWord();
-                        numberState.append(c);
-                    }
-                    // if char is a letter, add it to word state
-                    else if (letter.matcher(Character.toString(c)).find()) {
-                        pushNumber();
-                        wordState.append(c);
-                    }
-                    // otherwise input is invalid
-                    else throw new Exception("Invalid input at \"" + c + "\"");
+    public void lexLine(int start, int end) throws Exception{
+        int lineCount = count;
+        int state = START;
+        int tokenStart = start;
+        try {
+            for (int i = start; i < end; i++){
+                char c = source.charAt(i);
+                switch (c < 128 ? classes[c] : OTHER){
+                    case DIGIT:
+                        if (state == WORD) emitWord(tokenStart, i);
+                        if (state != NUMBER){
+                            state = NUMBER;
+                            tokenStart = i;
+                        }
+                        // take the rest of the digits at once
+                        while (i + 1 < end && isClass(source.charAt(i + 1), DIGIT)) i++;
+                        break;
+                    case LETTER:
+                        if (state == NUMBER) emit(TokenType.NUMBER, tokenStart, i - tokenStart);
+                        if (state != WORD){
+                            state = WORD;
+                            tokenStart = i;
+                        }
+                        // take the rest of the letters at once
+                        while (i + 1 < end && isClass(source.charAt(i + 1), LETTER)) i++;
+                        break;
+                    case SPACE:
+                        emitPending(state, tokenStart, i);
+                        state = START;
+                        break;
+                    case QUOTE:
+                        emitPending(state, tokenStart, i);
+                        state = START;
+                        // inside a string only the closing quote matters
+                        int close = i + 1;
+                        while (close < end && source.charAt(close) != '"') close++;
+                        if (close == end) throw new Exception("Invalid input: string is unclosed");
+                        emit(TokenType.STRING, i + 1, close - i - 1);
+                        i = close;
+                        break;
+                    case SINGLE:
+                        emitPending(state, tokenStart, i);
+                        state = START;
+                        emit(singles[c], i, 1);
+                        break;
+                    case SUFFIX:
+                        // suffix ends a word, and is part of it
+                        if (state != WORD) throw new Exception("Invalid input at \"" + c + "\"");
+                        emitWord(tokenStart, i + 1);
+                        state = START;
+                        break;
+                    case MINUS:
+                        if (state == WORD) emitWord(tokenStart, i);
+                        // if not in a number and next char is a digit this is a negative sign
+                        if (state != NUMBER && i < end - 1 && isClass(source.charAt(i + 1), DIGIT)){
+                            state = NUMBER;
+                            tokenStart = i;
+                        }
+                        // otherwise this is a minus sign
+                        else {
+                            if (state == NUMBER) emit(TokenType.NUMBER, tokenStart, i - tokenStart);
+                            state = START;
+                            emit(TokenType.SUBTRACT, i, 1);
+                        }
+                        break;
+                    case DOT:
+                        // a dot must follow a digit of a number
+                        if (state != NUMBER || classes[source.charAt(i - 1)] != DIGIT)
+                            throw new Exception("Invalid input at \"" + c + "\"");
+                        break;
+                    case GREATER:
+                        emitPending(state, tokenStart, i);
+                        state = START;
+                        if (i < end - 1 && source.charAt(i + 1) == '='){
+                            emit(TokenType.GTE, i, 2);
+                            i++;
+                        }
+                        else emit(TokenType.GT, i, 1);
+                        break;
+                    case LESS:
+                        emitPending(state, tokenStart, i);
+                        state = START;
+                        if (i < end - 1 && source.charAt(i + 1) == '='){
+                            emit(TokenType.LTE, i, 2);
+                            i++;
+                        }
+                        else if (i < end - 1 && source.charAt(i + 1) == '>'){
+                            emit(TokenType.NOTEQUALS, i, 2);
+                            i++;
+                        }
+                        else emit(TokenType.LT, i, 1);
+                        break;
+                    default:
+                        throw new Exception("Invalid input at \"" + c + "\"");
+                }
             }
+        } catch (Exception e){
+            count = lineCount;
+            throw e;
         }
+        // send last token and add EndOfLine
+        emitPending(state, tokenStart, end);
+        emit(TokenType.EndOfLine, end, 0);
+    }
+
+    /**
+     * Get symbol table names are interned in.
+     * @return symbol table.
+     */
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * Moves lexed names to another symbol table, for when parts of a source
+     * are lexed with tables of their own and then merged.
+     * @param table table to move to.
+     * @param ids ID in new table of each ID in current table.
+     */
+    public void remap(SymbolTable table, int[] ids){
+        int identifier = TokenType.IDENTIFIER.ordinal();
+        int label = TokenType.LABEL.ordinal();
+        for (int at = 0; at < count * 3; at += 3)
+            if (packed[at] == identifier || packed[at] == label) packed[at + 1] = ids[packed[at + 1]];
+        symbols = table;
+    }
+
+    /**
+     * Get number of tokens lexed.
+     * @return number of tokens.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Get type of a lexed token.
+     * @param index index of token.
+     * @return type of token.
+     */
+    public TokenType typeAt(int index) {
+        return types[packed[index * 3]];
+    }
 
-        // throw error if string is open
-        if (takingString) throw new Exception("Invalid input: string is unclosed");
+    /**
+     * Makes a Token of a lexed token; tokens without a value are shared.
+     * @param index index of token.
+     * @return token.
+     */
+    public Token tokenAt(int index) {
+        TokenType type = types[packed[index * 3]];
+        switch (type){
+            case IDENTIFIER:
+            case LABEL:
+                int symbol = packed[index * 3 + 1];
+                return new Token(type, symbols.name(symbol), symbol);
+            case NUMBER:
+            case STRING:
+                int offset = packed[index * 3 + 1];
+                return new Token(type, source.subSequence(offset, offset + packed[index * 3 + 2]).toString());
+            default:
+                return plain[type.ordinal()];
+        }
+    }
 
-        // send last tokens, add EndOfLine and return list
-        pushBoth();
-        tokens.add(new Token(TokenType.EndOfLine));
+    /**
+     * Takes a line and lexes to a list of tokens defined in TokenType enum.
+     * @param string line to be lexed.
+     * @return list of tokens from line.
+     * @throws Exception when lexing error.
+     */
+    public ArrayList<Token> lex(CharSequence string) throws Exception{
+        source = string;
+        count = 0;
+        lexLine(0, string.length());
+        ArrayList<Token> tokens = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) tokens.add(tokenAt(i));
         return tokens;
     }
 
@@ -0,0 +1,103 @@
+/**
+ * Node for the MAT statement, operating on whole arrays at once.
+ */
+public class MatNode extends StatementNode {
+
+    public enum Operation {
+        // MAT C = A
+        COPY,
+        // MAT C = (k)
+        FILL,
+        // MAT C = A + B
+        ADD,
+        // MAT C = A - B
+        SUBTRACT,
+        // MAT C = (k) * A
+        SCALE,
+        // MAT C = A * B
+        MULTIPLY,
+    }
+
+    private final Operation operation;
+    private final VariableNode target;
+    private final VariableNode left;
+    private final VariableNode right;
+    private Node scalar;
+
+    /**
+     * Constructor.
+     * @param operation operation of statement.
+     * @param target array receiving the result.
+     * @param left first array operand, or null when filling.
+     * @param right second array operand, or null if there is none.
+     * @param scalar value filled or scaled by, or null if there is none.
+     */
+    public MatNode(Operation operation, VariableNode target, VariableNode left, VariableNode right, Node scalar){
+        this.operation = operation;
+        this.target = target;
+        this.left = left;
+        this.right = right;
+        this.scalar = scalar;
+    }
+
+    /**
+     * Get operation.
+     * @return operation.
+     */
+    public Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * Get array receiving the result.
+     * @return target array.
+     */
+    public VariableNode getTarget() {
+        return target;
+    }
+
+    /**
+     * Get first array operand.
+     * @return array, or null when filling.
+     */
+    public VariableNode getLeft() {
+        return left;
+    }
+
+    /**
+     * Get second array operand.
+     * @return array, or null unless adding, subtracting or multiplying.
+     */
+    public VariableNode getRight() {
+        return right;
+    }
+
+    /**
+     * Get value filled or scaled by.
+     * @return expression, or null unless filling or scaling.
+     */
+    public Node getScalar() {
+        return scalar;
+    }
+
+    /**
+     * Set value filled or scaled by, as when folding it.
+     * @param scalar expression.
+     */
+    public void setScalar(Node scalar) {
+        this.scalar = scalar;
+    }
+
+    /**
+     * Get string representation of the node.
+     * @return string representation of the node.
+     */
+    @Override
+    public String toString() {
+        return "Mat: { operation: \"" + operation
+                + "\", to: \"" + target
+                + "\", left: \"" + left
+                + "\", right: \"" + right
+                + "\", scalar: \"" + scalar + "\" }";
+    }
+}
@@ -23,6 +23,10 @@ public class MathOpNode extends Node {
     private final Operation operation;
     private final Node left;
     private final Node right;
+    private final boolean keepInt;
+
+    // specialized kind of each operand, filled in as the node executes
+    private final byte[] operandKinds = new byte[2];
 
     /**
      * Constructor.
@@ -34,6 +38,9 @@ public class MathOpNode extends Node {
         this.operation = operation;
         this.left = left;
         this.right = right;
+        // integer literals added or subtracted stay int
+        this.keepInt = left instanceof IntegerNode && right instanceof IntegerNode &&
+                (operation == Operation.ADD || operation == Operation.SUBTRACT);
     }
 
     /**
@@ -60,6 +67,22 @@ public class MathOpNode extends Node {
         return operation;
     }
 
+    /**
+     * Check whether the result of operation stays int.
+     * @return true if result is int.
+     */
+    public boolean isKeepInt() {
+        return keepInt;
+    }
+
+    /**
+     * Getter for specialized operand kinds, left then right.
+     * @return operand kinds.
+     */
+    public byte[] getOperandKinds() {
+        return operandKinds;
+    }
+
     /**
      * Make a string representation of the node.
      * @return string representation of the node.
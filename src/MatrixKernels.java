@@ -0,0 +1,117 @@
+import java.util.Arrays;
+
+/**
+ * Loops behind MAT statements over the flat element arrays of BasicArray.
+ * Each loop is a plain counted loop over primitive arrays with no calls or
+ * branches inside, the shape HotSpot's C2 compiler turns into SIMD code,
+ * so no incubator module is needed to build or run. Matrix multiply runs
+ * its inner loop along a row of the result, so that loop is vectorized
+ * too, and still sums the products for each element in order.
+ */
+public final class MatrixKernels {
+
+    private MatrixKernels(){}
+
+    /**
+     * Adds two arrays element by element.
+     * @param a first operand.
+     * @param b second operand.
+     * @param c result, as long as the operands; may be either of them.
+     */
+    public static void add(float[] a, float[] b, float[] c){
+        for (int i = 0; i < c.length; i++) c[i] = a[i] + b[i];
+    }
+
+    /**
+     * Adds two arrays element by element.
+     * @param a first operand.
+     * @param b second operand.
+     * @param c result, as long as the operands; may be either of them.
+     */
+    public static void add(int[] a, int[] b, int[] c){
+        for (int i = 0; i < c.length; i++) c[i] = a[i] + b[i];
+    }
+
+    /**
+     * Subtracts one array from another element by element.
+     * @param a first operand.
+     * @param b operand subtracted.
+     * @param c result, as long as the operands; may be either of them.
+     */
+    public static void subtract(float[] a, float[] b, float[] c){
+        for (int i = 0; i < c.length; i++) c[i] = a[i] - b[i];
+    }
+
+    /**
+     * Subtracts one array from another element by element.
+     * @param a first operand.
+     * @param b operand subtracted.
+     * @param c result, as long as the operands; may be either of them.
+     */
+    public static void subtract(int[] a, int[] b, int[] c){
+        for (int i = 0; i < c.length; i++) c[i] = a[i] - b[i];
+    }
+
+    /**
+     * Multiplies each element of an array by a number.
+     * @param k number to multiply by.
+     * @param a operand.
+     * @param c result, as long as the operand; may be it.
+     */
+    public static void scale(float k, float[] a, float[] c){
+        for (int i = 0; i < c.length; i++) c[i] = k * a[i];
+    }
+
+    /**
+     * Multiplies each element of an array by a number in float, as the
+     * interpreter does, truncating each product.
+     * @param k number to multiply by.
+     * @param a operand.
+     * @param c result, as long as the operand; may be it.
+     */
+    public static void scale(float k, int[] a, int[] c){
+        for (int i = 0; i < c.length; i++) c[i] = (int) (k * a[i]);
+    }
+
+    /**
+     * Multiplies an n by k matrix by a k by m matrix, both row-major.
+     * @param a n by k operand.
+     * @param b k by m operand.
+     * @param c n by m result; may be neither operand.
+     * @param n rows of a and c.
+     * @param k columns of a and rows of b.
+     * @param m columns of b and c.
+     */
+    public static void multiply(float[] a, float[] b, float[] c, int n, int k, int m){
+        Arrays.fill(c, 0, n * m, 0);
+        for (int i = 0; i < n; i++){
+            int row = i * m;
+            for (int p = 0; p < k; p++){
+                float aip = a[i * k + p];
+                int col = p * m;
+                for (int j = 0; j < m; j++) c[row + j] += aip * b[col + j];
+            }
+        }
+    }
+
+    /**
+     * Multiplies an n by k matrix by a k by m matrix, both row-major.
+     * @param a n by k operand.
+     * @param b k by m operand.
+     * @param c n by m result; may be neither operand.
+     * @param n rows of a and c.
+     * @param k columns of a and rows of b.
+     * @param m columns of b and c.
+     */
+    public static void multiply(int[] a, int[] b, int[] c, int n, int k, int m){
+        Arrays.fill(c, 0, n * m, 0);
+        for (int i = 0; i < n; i++){
+            int row = i * m;
+            for (int p = 0; p < k; p++){
+                int aip = a[i * k + p];
+                int col = p * m;
+                for (int j = 0; j < m; j++) c[row + j] += aip * b[col + j];
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Output sink that captures output in memory, for tests and embedding.
+ */
+public class MemoryOutputSink extends OutputSink {
+
+    private final StringBuilder output = new StringBuilder();
+
+    /**
+     * Constructor.
+     * @param raw true to print items without header and tabs.
+     */
+    public MemoryOutputSink(boolean raw){
+        super(raw, FlushPolicy.EXIT);
+    }
+
+    /**
+     * Appends text to captured output.
+     * @param text text to write.
+     */
+    @Override
+    protected void write(String text){
+        output.append(text);
+    }
+
+    /**
+     * Appends a string of the interpreter to captured output.
+     * @param text text to write.
+     */
+    @Override
+    protected void write(BasicString text){
+        output.append(text);
+    }
+
+    /**
+     * Does nothing; output is always available.
+     */
+    @Override
+    public void flush(){}
+
+    /**
+     * Get output captured so far.
+     * @return captured output.
+     */
+    public String getOutput() {
+        return output.toString();
+    }
+
+    /**
+     * Discards output captured so far.
+     */
+    public void reset() {
+        output.setLength(0);
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * Opcodes for the bytecode virtual machine. Each opcode is followed
+ * in the code array by the operands listed beside it.
+ */
+public final class Opcode {
+
+    // control
+    public static final int HALT = 0;           // -
+    public static final int JUMP = 1;           // target
+    public static final int GOSUB = 2;          // target
+    public static final int RETURN = 3;         // -
+
+    // numeric stack
+    public static final int PUSH = 4;           // float index
+    public static final int LOAD = 5;           // slot
+    public static final int CALL = 6;           // function index
+    public static final int ADD = 7;            // -
+    public static final int SUBTRACT = 8;       // -
+    public static final int MULTIPLY = 9;       // -
+    public static final int DIVIDE = 10;        // -
+    public static final int TRUNCATE = 11;      // -
+
+    // conditional jumps, popping right then left operand
+    public static final int IF_EQ = 12;         // target
+    public static final int IF_NE = 13;         // target
+    public static final int IF_GT = 14;         // target
+    public static final int IF_GE = 15;         // target
+    public static final int IF_LT = 16;         // target
+    public static final int IF_LE = 17;         // target
+
+    // variable stores
+    public static final int STORE_IMM = 18;     // slot, int value
+    public static final int STORE_INT = 19;     // slot
+    public static final int STORE_FLOAT = 20;   // slot
+    public static final int STORE_STRING = 21;  // slot, string index
+
+    // printing
+    public static final int PRINT_HEADER = 22;  // -
+    public static final int PRINT_IMM = 23;     // int value
+    public static final int PRINT_INT = 24;     // -
+    public static final int PRINT_FLOAT = 25;   // -
+    public static final int PRINT_STRING = 26;  // string index
+    public static final int PRINT_VAR = 27;     // slot
+    public static final int PRINT_CALL = 28;    // function index
+    public static final int PRINT_END = 29;     // -
+
+    // io
+    public static final int READ = 30;          // slot
+    public static final int PROMPT = 31;        // string index
+    public static final int INPUT = 32;         // slot
+    public static final int RESTORE = 33;       // data position
+
+    // loops
+    public static final int FOR = 34;           // loop, slot, exit target; pops start, stop and step
+    public static final int NEXT = 35;          // loop, slot, body target
+
+    private Opcode(){}
+}
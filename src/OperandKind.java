@@ -0,0 +1,18 @@
+/**
+ * Kinds an operand of a math or boolean operation can be specialized to.
+ * Each site records one kind per operand, starting uninitialized and
+ * moving to generic when a type guard fails.
+ */
+public final class OperandKind {
+
+    public static final byte UNINITIALIZED = 0;
+    public static final byte INT_CONSTANT = 1;
+    public static final byte FLOAT_CONSTANT = 2;
+    public static final byte INT_VARIABLE = 3;
+    public static final byte FLOAT_VARIABLE = 4;
+    public static final byte OPERATION = 5;
+    public static final byte GENERIC = 6;
+    public static final byte ELEMENT = 7;
+
+    private OperandKind(){}
+}
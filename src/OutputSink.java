@@ -0,0 +1,166 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination for program output. Subclasses decide where text goes;
+ * this class formats PRINT items and applies the flush policy.
+ */
+public abstract class OutputSink implements Closeable {
+
+    // when buffered output is pushed to its destination
+    public enum FlushPolicy {
+        LINE,
+        STATEMENT,
+        EXIT
+    }
+
+    private final boolean raw;
+    private final FlushPolicy policy;
+
+    // chars printed through this sink, counted by the thread printing
+    private long written = 0;
+
+    /**
+     * Constructor.
+     * @param raw true to print items without header and tabs.
+     * @param policy when to flush.
+     */
+    protected OutputSink(boolean raw, FlushPolicy policy){
+        this.raw = raw;
+        this.policy = policy;
+    }
+
+    /**
+     * Writes text to the destination.
+     * @param text text to write.
+     * @throws IOException when writing fails.
+     */
+    protected abstract void write(String text) throws IOException;
+
+    /**
+     * Writes a string of the interpreter to the destination; by default as
+     * a java string, which subclasses may avoid making.
+     * @param text text to write.
+     * @throws IOException when writing fails.
+     */
+    protected void write(BasicString text) throws IOException{
+        write(text.toString());
+    }
+
+    /**
+     * Helper fn that counts text and writes it to the destination.
+     * @param text text to write.
+     * @throws IOException when writing fails.
+     */
+    private void send(String text) throws IOException{
+        written += text.length();
+        write(text);
+    }
+
+    /**
+     * Helper fn that counts text and writes it to the destination.
+     * @param text text to write.
+     * @throws IOException when writing fails.
+     */
+    private void send(BasicString text) throws IOException{
+        written += text.length();
+        write(text);
+    }
+
+    /**
+     * Helper fn that ends a line, flushing if the policy is LINE.
+     * @throws IOException when writing fails.
+     */
+    private void newline() throws IOException{
+        send("\n");
+        if (policy == FlushPolicy.LINE) flush();
+    }
+
+    /**
+     * Pushes buffered text to the destination.
+     * @throws IOException when writing fails.
+     */
+    public abstract void flush() throws IOException;
+
+    /**
+     * Flushes and releases the destination.
+     * @throws IOException when writing fails.
+     */
+    @Override
+    public void close() throws IOException{
+        flush();
+    }
+
+    /**
+     * Check whether items are printed without header and tabs.
+     * @return true if raw.
+     */
+    public boolean isRaw() {
+        return raw;
+    }
+
+    /**
+     * Get number of chars printed through this sink; read it on the thread
+     * that prints.
+     * @return chars printed.
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * Prints text.
+     * @param text text to print.
+     * @throws IOException when writing fails.
+     */
+    public void print(String text) throws IOException{
+        send(text);
+    }
+
+    /**
+     * Prints text followed by a newline.
+     * @param text text to print.
+     * @throws IOException when writing fails.
+     */
+    public void println(String text) throws IOException{
+        send(text);
+        newline();
+    }
+
+    /**
+     * Prints the header that starts a PRINT statement, unless raw.
+     * @throws IOException when writing fails.
+     */
+    public void printHeader() throws IOException{
+        if (!raw) println("Printing:");
+    }
+
+    /**
+     * Prints one item of a PRINT statement on its own line, tabbed unless raw.
+     * @param text text of item.
+     * @throws IOException when writing fails.
+     */
+    public void printItem(String text) throws IOException{
+        if (!raw) send("\t");
+        println(text);
+    }
+
+    /**
+     * Prints one item of a PRINT statement on its own line, tabbed unless raw.
+     * @param text string of item.
+     * @throws IOException when writing fails.
+     */
+    public void printItem(BasicString text) throws IOException{
+        if (!raw) send("\t");
+        send(text);
+        newline();
+    }
+
+    /**
+     * Marks the end of a PRINT statement.
+     * @throws IOException when writing fails.
+     */
+    public void endStatement() throws IOException{
+        if (policy == FlushPolicy.STATEMENT) flush();
+    }
+}
@@ -0,0 +1,333 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Front end for large sources that lexes and parses on a fork-join pool.
+ * The memory-mapped file is split into chunks of whole lines, each lexed
+ * with a symbol table of its own; the chunks' names are then given global
+ * IDs in source order, so IDs match a sequential lex. Chunks are grouped
+ * so no FOR or WHILE loop spans two groups, the groups are parsed in parallel, and
+ * their statements are joined in source order. Up to where parsing stops
+ * the result is the same as parsing the file from one token pipeline.
+ */
+public class ParallelFrontEnd {
+
+    // files smaller than 1 MiB are left to the streaming pipeline
+    public static final long PARALLEL_THRESHOLD = 1 << 20;
+
+    // smallest chunk worth a task of its own, 64 KiB
+    public static final int MIN_CHUNK = 1 << 16;
+
+    private final MappedByteBuffer source;
+    private final CharSequence text;
+    private final ForkJoinPool pool;
+    private final int minChunk;
+    private final SymbolTable symbols = new SymbolTable();
+    private Chunk[] chunks;
+    private long lexNanos = 0;
+
+    /**
+     * Line range of the source with its tokens, lexing errors and names.
+     */
+    private static final class Chunk {
+
+        final int start;
+        final int end;
+        final SymbolTable symbols = new SymbolTable();
+        final ArrayList<Lexer> batches = new ArrayList<>();
+        final ArrayList<String> errors = new ArrayList<>();
+        // FOR tokens minus NEXT tokens, global ID of each local ID
+        int depth = 0;
+        int tokens = 0;
+        int[] ids;
+
+        /**
+         * Constructor.
+         * @param start offset of first line.
+         * @param end offset after last line and its terminator.
+         */
+        Chunk(int start, int end){
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Statements of a group of chunks, and whether parsing reached its end.
+     */
+    private static final class Parsed {
+
+        final StatementsNode node;
+        final boolean complete;
+
+        /**
+         * Constructor.
+         * @param node statements parsed.
+         * @param complete true if every token was parsed.
+         */
+        Parsed(StatementsNode node, boolean complete){
+            this.node = node;
+            this.complete = complete;
+        }
+    }
+
+    /**
+     * Constructor, mapping the file.
+     * @param path source file.
+     * @param pool pool to lex and parse on.
+     * @param minChunk smallest chunk in bytes.
+     * @throws IOException when file cannot be read or is too large to map.
+     */
+    public ParallelFrontEnd(Path path, ForkJoinPool pool, int minChunk) throws IOException{
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Source file too large to map.");
+            source = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        this.text = new TokenPipeline.AsciiLine(source, 0, source.limit());
+        this.pool = pool;
+        this.minChunk = Math.max(minChunk, 1);
+    }
+
+    /**
+     * Checks whether a file is large enough, and the machine wide enough,
+     * for lexing and parsing in parallel to pay off.
+     * @param path source file.
+     * @return true if the parallel front end should be used.
+     * @throws IOException when file cannot be read.
+     */
+    public static boolean worthwhile(Path path) throws IOException{
+        return Files.size(path) >= PARALLEL_THRESHOLD && Runtime.getRuntime().availableProcessors() > 1;
+    }
+
+    /**
+     * Helper fn that splits the source into chunks of whole lines, a few per worker.
+     * @return chunks in source order.
+     */
+    private Chunk[] split(){
+        int limit = source.limit();
+        int count = (int) Math.max(1, Math.min(pool.getParallelism() * 4L, limit / minChunk));
+        ArrayList<Chunk> split = new ArrayList<>(count);
+        int start = 0;
+        for (int k = 1; k <= count && start < limit; k++){
+            // cut at the end of the line holding the target offset
+            int end = k == count ? limit : (int) Math.max(start, (long) limit * k / count);
+            byte b;
+            while (end < limit && (b = source.get(end)) != '\n' && b != '\r') end++;
+            if (end < limit && source.get(end) == '\r') end++;
+            if (end < limit && source.get(end) == '\n') end++;
+            split.add(new Chunk(start, end));
+            start = end;
+        }
+        return split.toArray(new Chunk[0]);
+    }
+
+    /**
+     * Helper fn that lexes a chunk line by line into packed batches, as the
+     * token pipeline does, then counts its FOR and NEXT tokens.
+     * @param chunk chunk to lex.
+     */
+    private void lexChunk(Chunk chunk){
+        Lexer batch = new Lexer(text, chunk.symbols);
+        int start = chunk.start;
+        while (start < chunk.end){
+            // find end of line, accepting \n, \r and \r\n, and note bytes beyond ascii
+            int end = start;
+            boolean ascii = true;
+            byte b;
+            while (end < chunk.end && (b = source.get(end)) != '\n' && b != '\r'){
+                if (b < 0) ascii = false;
+                end++;
+            }
+            // lex line, keeping errors to report in source order
+            try {
+                if (ascii) batch.lexLine(start, end);
+                else {
+                    // decode line as UTF-8 and keep it as a batch of its own
+                    if (batch.size() > 0){
+                        chunk.batches.add(batch);
+                        batch = new Lexer(text, chunk.symbols);
+                    }
+                    byte[] bytes = new byte[end - start];
+                    source.get(start, bytes);
+                    String line = new String(bytes, StandardCharsets.UTF_8);
+                    Lexer decoded = new Lexer(line, chunk.symbols);
+                    decoded.lexLine(0, line.length());
+                    chunk.batches.add(decoded);
+                }
+            } catch (Exception e){
+                chunk.errors.add(e.getMessage());
+            }
+            if (batch.size() >= TokenPipeline.BATCH_SIZE){
+                chunk.batches.add(batch);
+                batch = new Lexer(text, chunk.symbols);
+            }
+            // skip line terminator
+            if (end < chunk.end && source.get(end) == '\r') end++;
+            if (end < chunk.end && source.get(end) == '\n') end++;
+            start = end;
+        }
+        if (batch.size() > 0) chunk.batches.add(batch);
+
+        // a FOR or WHILE opens a loop and each loop takes exactly one NEXT or WEND
+        for (Lexer lexed : chunk.batches){
+            for (int i = 0; i < lexed.size(); i++){
+                TokenType type = lexed.typeAt(i);
+                if (type == TokenType.FOR || type == TokenType.WHILE) chunk.depth++;
+                else if (type == TokenType.NEXT || type == TokenType.WEND) chunk.depth--;
+            }
+            chunk.tokens += lexed.size();
+        }
+    }
+
+    /**
+     * Helper fn that waits for a task, unwrapping the exception it failed with.
+     * @param task task to wait for.
+     * @param <T> result of task.
+     * @return result of task.
+     * @throws Exception when task failed.
+     */
+    private static <T> T await(ForkJoinTask<T> task) throws Exception{
+        try {
+            return task.get();
+        } catch (ExecutionException e){
+            // the pool wraps checked exceptions, and may rethrow a copy wrapping the original
+            Throwable cause = e.getCause();
+            while (cause instanceof RuntimeException && cause.getCause() instanceof Exception) cause = cause.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw e;
+        }
+    }
+
+    /**
+     * Helper fn that lexes every chunk in parallel, once, then reports
+     * errors and gives names their global IDs in source order before
+     * moving each chunk's tokens over to them in parallel.
+     * @throws Exception when lexing failed.
+     */
+    private void lex() throws Exception{
+        if (chunks != null) return;
+        long started = System.nanoTime();
+        Chunk[] split = split();
+        ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>(split.length);
+        for (Chunk chunk : split) tasks.add(pool.submit(() -> lexChunk(chunk)));
+        for (ForkJoinTask<?> task : tasks) await(task);
+        for (Chunk chunk : split){
+            for (String error : chunk.errors) System.out.println("Error: " + error);
+            chunk.ids = new int[chunk.symbols.size()];
+            for (int id = 0; id < chunk.ids.length; id++)
+                chunk.ids[id] = symbols.intern(chunk.symbols.name(id));
+        }
+        tasks.clear();
+        for (Chunk chunk : split)
+            tasks.add(pool.submit(() -> {
+                for (Lexer batch : chunk.batches) batch.remap(symbols, chunk.ids);
+            }));
+        for (ForkJoinTask<?> task : tasks) await(task);
+        chunks = split;
+        lexNanos = System.nanoTime() - started;
+    }
+
+    /**
+     * Helper fn that parses a group of chunks from one token stream.
+     * @param from index of first chunk.
+     * @param to index after last chunk.
+     * @return statements parsed.
+     * @throws Exception on syntax error.
+     */
+    private Parsed parseGroup(int from, int to) throws Exception{
+        ArrayList<Lexer> batches = new ArrayList<>();
+        for (int i = from; i < to; i++) batches.addAll(chunks[i].batches);
+        Iterator<Lexer> remaining = batches.iterator();
+        Parser parser = new Parser(() -> remaining.hasNext() ? remaining.next() : null);
+        StatementsNode node = parser.parse();
+        return new Parsed(node, !parser.hasTokens());
+    }
+
+    /**
+     * Check whether there is anything to parse, lexing the source if not yet done.
+     * @return true if a token is available.
+     * @throws Exception when lexing failed.
+     */
+    public boolean hasTokens() throws Exception{
+        lex();
+        for (Chunk chunk : chunks)
+            if (chunk.tokens > 0) return true;
+        return false;
+    }
+
+    /**
+     * Lexes and parses the source.
+     * @return statements of the whole source.
+     * @throws Exception when there is a syntax error.
+     */
+    public StatementsNode parse() throws Exception{
+        lex();
+
+        // group chunks, closing a group where no FOR loop is open
+        ArrayList<ForkJoinTask<Parsed>> tasks = new ArrayList<>();
+        int depth = 0;
+        int from = 0;
+        for (int i = 0; i < chunks.length; i++){
+            depth += chunks[i].depth;
+            if (depth <= 0 || i == chunks.length - 1){
+                int groupFrom = from;
+                int groupTo = i + 1;
+                tasks.add(pool.submit(() -> parseGroup(groupFrom, groupTo)));
+                from = i + 1;
+            }
+        }
+
+        // join groups in source order, stopping where the parse stopped
+        StatementsNode top = new StatementsNode();
+        try {
+            for (ForkJoinTask<Parsed> task : tasks){
+                Parsed parsed = await(task);
+                top.getStatements().addAll(parsed.node.getStatements());
+                if (!parsed.complete) break;
+            }
+        } finally {
+            for (ForkJoinTask<Parsed> task : tasks) task.cancel(false);
+        }
+        return top;
+    }
+
+    /**
+     * Get messages of lexing errors, lexing the source if not yet done.
+     * @return error messages in source order.
+     * @throws Exception when lexing failed.
+     */
+    public List<String> getErrors() throws Exception{
+        lex();
+        ArrayList<String> errors = new ArrayList<>();
+        for (Chunk chunk : chunks) errors.addAll(chunk.errors);
+        return errors;
+    }
+
+    /**
+     * Get time lexing took, including giving names their global IDs.
+     * @return nanoseconds lexing took, or 0 if not yet lexed.
+     */
+    public long getLexNanos() {
+        return lexNanos;
+    }
+
+    /**
+     * Get symbol table identifiers and labels are interned in.
+     * @return symbol table.
+     */
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+}
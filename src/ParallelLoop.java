@@ -0,0 +1,481 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * Plan for running the iterations of a FOR loop in chunks on a fork-join
+ * pool, made when linking for loops whose iterations cannot see each
+ * other's effects. The statements an iteration can reach, including
+ * subroutines it calls, are checked so that:
+ * - none is READ, INPUT or RESTORE, and no IF jumps out of its own list;
+ * - the loop variable is never assigned, and every other variable is
+ *   assigned values of one type;
+ * - each variable assigned by the loop is assigned on every path before
+ *   it is read in the same iteration, or is a reduction: a variable only
+ *   ever used as s = s + e, s = e + s, s = s - e, or with * instead of +.
+ * Each chunk runs on a copy of the variables with an output buffer of its
+ * own; buffers are printed in iteration order and each variable assigned
+ * takes the value of the last iteration to assign it, so a run matches a
+ * sequential one except that reductions are summed per chunk, which can
+ * round floats differently.
+ */
+public final class ParallelLoop {
+
+    // plain FOR loops are planned too when -Dbasic.autoParallel=true
+    public static final boolean AUTO = Boolean.getBoolean("basic.autoParallel");
+
+    // fewest iterations worth splitting, for PARALLEL FOR and for loops found automatically
+    static final int MIN_ITERATIONS = 2;
+    static final int AUTO_MIN_ITERATIONS = 1024;
+
+    // chunks per worker of the pool, so iterations of uneven cost balance
+    static final int CHUNKS_PER_WORKER = 4;
+
+    // types a variable can be assigned
+    private static final byte INT = 1;
+    private static final byte FLOAT = 2;
+    private static final byte STRING = 3;
+
+    private final boolean auto;
+    private final int[] written;
+    private final int[] reductions;
+    private final boolean[] products;
+
+    /**
+     * Edge of the flow of statements an iteration can take.
+     */
+    private static final class Edge {
+
+        final StatementNode to;
+        // slot assigned along the edge and slot left unset by it, or -1
+        final int assigns;
+        final int clears;
+
+        /**
+         * Constructor.
+         * @param to statement run next.
+         * @param assigns slot assigned along the edge, or -1.
+         * @param clears slot left unset along the edge, or -1.
+         */
+        Edge(StatementNode to, int assigns, int clears){
+            this.to = to;
+            this.assigns = assigns;
+            this.clears = clears;
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param auto true if found by auto-detection rather than marked PARALLEL.
+     * @param written slots assigned by iterations, other than reductions.
+     * @param reductions slots of reductions.
+     * @param products true for each reduction that multiplies rather than adds.
+     */
+    private ParallelLoop(boolean auto, int[] written, int[] reductions, boolean[] products){
+        this.auto = auto;
+        this.written = written;
+        this.reductions = reductions;
+        this.products = products;
+    }
+
+    /**
+     * Check whether the loop was found by auto-detection rather than marked PARALLEL.
+     * @return true if found automatically.
+     */
+    public boolean isAuto() {
+        return auto;
+    }
+
+    /**
+     * Get slots assigned by iterations other than reductions, which take
+     * the value of the last iteration to assign them.
+     * @return slots written.
+     */
+    int[] getWritten() {
+        return written;
+    }
+
+    /**
+     * Get slots of reductions, combined across chunks in iteration order.
+     * @return slots of reductions.
+     */
+    int[] getReductions() {
+        return reductions;
+    }
+
+    /**
+     * Get whether each reduction multiplies rather than adds.
+     * @return true for each product.
+     */
+    boolean[] getProducts() {
+        return products;
+    }
+
+    /**
+     * Plans a loop, checking its iterations are independent.
+     * @param loop linked FOR loop.
+     * @param owners statement list holding each statement of the tree.
+     * @return plan of loop.
+     * @throws Exception saying why the iterations may depend on each other.
+     */
+    static ParallelLoop plan(ForNode loop, IdentityHashMap<StatementNode, NodeWithStatements> owners) throws Exception{
+        if (loop.getStatements().isEmpty()) throw new Exception("its body is empty");
+        StatementNode entry = loop.getStatements().get(0);
+
+        // find every statement an iteration can reach, and where RETURN can go
+        IdentityHashMap<StatementNode, Integer> region = new IdentityHashMap<>();
+        ArrayList<StatementNode> statements = new ArrayList<>();
+        ArrayList<GoSubNode> calls = new ArrayList<>();
+        ArrayDeque<StatementNode> pending = new ArrayDeque<>();
+        pending.add(entry);
+        region.put(entry, 0);
+        statements.add(entry);
+        while (!pending.isEmpty()){
+            StatementNode node = pending.poll();
+            if (node == loop) throw new Exception("a subroutine it calls runs the loop itself");
+            if (node instanceof ReadNode || node instanceof InputNode || node instanceof RestoreNode)
+                throw new Exception("it can reach READ, INPUT or RESTORE");
+            // arrays are shared by every chunk, so they may be read but not changed
+            if (node instanceof DimNode || node instanceof MatNode)
+                throw new Exception("it can reach DIM or MAT");
+            if (node instanceof AssignmentNode && ((AssignmentNode) node).getElement() != null)
+                throw new Exception("it assigns an element of array '" + ((AssignmentNode) node).getVariable().getName() + "'");
+            if (node instanceof IfNode && owners.get(((IfNode) node).getTarget()) != owners.get(node))
+                throw new Exception("an IF it can reach jumps out of its own statements");
+            if (node instanceof GoSubNode){
+                if (!(owners.get(((GoSubNode) node).getTarget()) instanceof StatementsNode))
+                    throw new Exception("a GOSUB it can reach calls into the body of a loop");
+                calls.add((GoSubNode) node);
+            }
+            // RETURN goes back to every call, so what follows a call is reachable too
+            ArrayList<StatementNode> reached = reachable(node, loop, owners);
+            if (node instanceof GoSubNode)
+                for (Edge edge : fallThrough(node, node.getNextStatement(), loop, owners)) reached.add(edge.to);
+            for (StatementNode next : reached){
+                if (!region.containsKey(next)){
+                    region.put(next, statements.size());
+                    statements.add(next);
+                    pending.add(next);
+                }
+            }
+        }
+        // type each variable assigned, and find reductions
+        int loopSlot = loop.getVar().getSymbol();
+        HashMap<Integer, Byte> types = new HashMap<>();
+        HashMap<Integer, MathOpNode.Operation> reductionOps = new HashMap<>();
+        BitSet notReductions = new BitSet();
+        BitSet reads = new BitSet();
+        for (StatementNode node : statements){
+            int slot = -1;
+            byte type = 0;
+            if (node instanceof AssignmentNode){
+                Node value = ((AssignmentNode) node).getValue();
+                slot = ((AssignmentNode) node).getVariable().getSymbol();
+                if (value instanceof IntegerNode) type = INT;
+                else if (value instanceof FloatNode) type = FLOAT;
+                else if (value instanceof StringNode || value instanceof ConcatNode) type = STRING;
+                else if (value instanceof FunctionNode && ((FunctionNode) value).returnsString()) type = STRING;
+                else if (value instanceof MathOpNode) type = ((MathOpNode) value).isKeepInt() ? INT : FLOAT;
+                else if (value instanceof ArrayNode){
+                    byte element = ((ArrayNode) value).getType();
+                    type = element == BasicArray.INT ? INT : element == BasicArray.FLOAT ? FLOAT : STRING;
+                }
+                // other values are not assigned
+                else slot = -1;
+                MathOpNode.Operation op = reduction((AssignmentNode) node);
+                if (op != null){
+                    MathOpNode.Operation previous = reductionOps.putIfAbsent(slot, op);
+                    if (previous != null && previous != op) notReductions.set(slot);
+                    variables(operand((MathOpNode) value, slot), reads);
+                }
+                else {
+                    if (slot >= 0) notReductions.set(slot);
+                    variables(value, reads);
+                }
+            }
+            else if (node instanceof ForNode){
+                slot = ((ForNode) node).getVar().getSymbol();
+                type = FLOAT;
+                notReductions.set(slot);
+                reads(node, reads);
+            }
+            else reads(node, reads);
+            if (slot < 0) continue;
+            if (slot == loopSlot) throw new Exception("it assigns its loop variable");
+            Byte previous = types.putIfAbsent(slot, type);
+            if (previous != null && previous != type)
+                throw new Exception("it assigns '" + name(node) + "' values of more than one type");
+        }
+        // reductions must be assigned only as reductions and never read otherwise
+        notReductions.or(reads);
+        for (Integer slot : reductionOps.keySet())
+            if (!notReductions.get(slot)) types.remove(slot);
+
+        // find the variables assigned on every path to each statement in an iteration
+        BitSet[] assigned = new BitSet[statements.size()];
+        BitSet start = new BitSet();
+        start.set(loopSlot);
+        assigned[0] = start;
+        ArrayDeque<StatementNode> changed = new ArrayDeque<>();
+        changed.add(entry);
+        while (!changed.isEmpty()){
+            StatementNode node = changed.poll();
+            BitSet before = assigned[region.get(node)];
+            BitSet after = (BitSet) before.clone();
+            if (node instanceof AssignmentNode && types.containsKey(((AssignmentNode) node).getVariable().getSymbol()))
+                after.set(((AssignmentNode) node).getVariable().getSymbol());
+            ArrayList<Edge> edges = edges(node, loop, owners);
+            if (node instanceof ReturnNode)
+                for (GoSubNode call : calls) edges.addAll(fallThrough(call, call.getNextStatement(), loop, owners));
+            for (Edge edge : edges){
+                BitSet out = (BitSet) after.clone();
+                if (edge.assigns >= 0) out.set(edge.assigns);
+                if (edge.clears >= 0) out.clear(edge.clears);
+                int index = region.get(edge.to);
+                if (index == 0) continue;
+                if (assigned[index] == null) assigned[index] = out;
+                else {
+                    BitSet meet = (BitSet) assigned[index].clone();
+                    meet.and(out);
+                    if (meet.equals(assigned[index])) continue;
+                    assigned[index] = meet;
+                }
+                changed.add(edge.to);
+            }
+        }
+
+        // every variable read must be unassigned by the loop or already assigned in the iteration
+        for (StatementNode node : statements){
+            BitSet used = new BitSet();
+            if (node instanceof AssignmentNode){
+                int slot = ((AssignmentNode) node).getVariable().getSymbol();
+                // a reduction's own variable is left out; the rest of its value must be independent
+                if (reductionOps.containsKey(slot) && !types.containsKey(slot))
+                    variables(operand((MathOpNode) ((AssignmentNode) node).getValue(), slot), used);
+                else variables(((AssignmentNode) node).getValue(), used);
+            }
+            else reads(node, used);
+            BitSet before = assigned[region.get(node)];
+            for (int slot = used.nextSetBit(0); slot >= 0; slot = used.nextSetBit(slot + 1)){
+                if (types.containsKey(slot) && (before == null || !before.get(slot)))
+                    throw new Exception("it can read '" + slotName(statements, slot)
+                            + "' before assigning it in the same iteration");
+            }
+        }
+
+        // plan the merge of written variables and the combination of reductions
+        int[] written = new int[types.size()];
+        int count = 0;
+        for (Integer slot : types.keySet()) written[count++] = slot;
+        ArrayList<Integer> reduced = new ArrayList<>();
+        for (Integer slot : reductionOps.keySet()) if (!types.containsKey(slot)) reduced.add(slot);
+        int[] reductions = new int[reduced.size()];
+        boolean[] products = new boolean[reduced.size()];
+        for (int i = 0; i < reductions.length; i++){
+            reductions[i] = reduced.get(i);
+            products[i] = reductionOps.get(reductions[i]) == MathOpNode.Operation.MULTIPLY;
+        }
+        return new ParallelLoop(!loop.isParallel(), written, reductions, products);
+    }
+
+    /**
+     * Helper fn that recognizes an assignment of a reduction.
+     * @param node assignment.
+     * @return ADD or MULTIPLY for s = s + e, s = e + s, s = s - e, s = s * e
+     * or s = e * s where e does not read s, otherwise null.
+     */
+    private static MathOpNode.Operation reduction(AssignmentNode node){
+        if (!(node.getValue() instanceof MathOpNode)) return null;
+        MathOpNode value = (MathOpNode) node.getValue();
+        int slot = node.getVariable().getSymbol();
+        Node operand = operand(value, slot);
+        if (operand == null) return null;
+        BitSet other = new BitSet();
+        variables(operand, other);
+        if (other.get(slot)) return null;
+        switch (value.getOperation()){
+            case ADD:
+                return MathOpNode.Operation.ADD;
+            case SUBTRACT:
+                return operand == value.getRight() ? MathOpNode.Operation.ADD : null;
+            case MULTIPLY:
+                return MathOpNode.Operation.MULTIPLY;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Helper fn that gets the side of an operation other than a variable.
+     * @param value operation.
+     * @param slot slot of variable.
+     * @return other side, or null unless exactly one side is the variable.
+     */
+    private static Node operand(MathOpNode value, int slot){
+        boolean left = value.getLeft() instanceof VariableNode && ((VariableNode) value.getLeft()).getSymbol() == slot;
+        boolean right = value.getRight() instanceof VariableNode && ((VariableNode) value.getRight()).getSymbol() == slot;
+        if (left == right) return null;
+        return left ? value.getRight() : value.getLeft();
+    }
+
+    /**
+     * Helper fn that collects the slots of variables an expression reads.
+     * @param node expression.
+     * @param slots set to add slots to.
+     */
+    private static void variables(Node node, BitSet slots){
+        if (node instanceof VariableNode) slots.set(((VariableNode) node).getSymbol());
+        // the array itself is never assigned in a loop, only its indices can depend on one
+        else if (node instanceof ArrayNode)
+            for (Node index : ((ArrayNode) node).getIndices()) variables(index, slots);
+        else if (node instanceof MathOpNode){
+            variables(((MathOpNode) node).getLeft(), slots);
+            variables(((MathOpNode) node).getRight(), slots);
+        }
+        else if (node instanceof ConcatNode){
+            variables(((ConcatNode) node).getLeft(), slots);
+            variables(((ConcatNode) node).getRight(), slots);
+        }
+        else if (node instanceof BooleanOperationNode){
+            variables(((BooleanOperationNode) node).getLeft(), slots);
+            variables(((BooleanOperationNode) node).getRight(), slots);
+        }
+        else if (node instanceof FunctionNode)
+            for (Node param : ((FunctionNode) node).getParams()) variables(param, slots);
+    }
+
+    /**
+     * Helper fn that collects the slots of variables a statement other than
+     * an assignment reads.
+     * @param node statement.
+     * @param slots set to add slots to.
+     * @throws Exception when the statement cannot be checked.
+     */
+    private static void reads(StatementNode node, BitSet slots) throws Exception{
+        if (node instanceof PrintNode)
+            for (Node item : ((PrintNode) node).getNodes()) variables(item, slots);
+        else if (node instanceof IfNode) variables(((IfNode) node).getCondition(), slots);
+        else if (node instanceof WhileNode) variables(((WhileNode) node).getCondition(), slots);
+        else if (node instanceof ForNode){
+            variables(((ForNode) node).getStart(), slots);
+            variables(((ForNode) node).getStop(), slots);
+            variables(((ForNode) node).getStep(), slots);
+        }
+        else if (!(node instanceof GoSubNode || node instanceof ReturnNode))
+            throw new Exception("it can reach a statement that cannot be checked");
+    }
+
+    /**
+     * Helper fn that gets the statements that can run after a statement.
+     * @param node statement.
+     * @param loop loop being planned.
+     * @param owners statement list holding each statement.
+     * @return statements that can follow.
+     * @throws Exception when a statement can run off the end of a list other than a loop body.
+     */
+    private static ArrayList<StatementNode> reachable(StatementNode node, ForNode loop,
+                                                      IdentityHashMap<StatementNode, NodeWithStatements> owners) throws Exception{
+        ArrayList<StatementNode> next = new ArrayList<>();
+        for (Edge edge : edges(node, loop, owners)) next.add(edge.to);
+        return next;
+    }
+
+    /**
+     * Helper fn that gets the edges from a statement to those that can run
+     * after it; RETURN's edges depend on the calls and are added by the caller.
+     * @param node statement.
+     * @param loop loop being planned.
+     * @param owners statement list holding each statement.
+     * @return edges from statement.
+     * @throws Exception when a statement can run off the end of a list other than a loop body.
+     */
+    private static ArrayList<Edge> edges(StatementNode node, ForNode loop,
+                                         IdentityHashMap<StatementNode, NodeWithStatements> owners) throws Exception{
+        ArrayList<Edge> edges = new ArrayList<>();
+        if (node instanceof IfNode){
+            edges.add(new Edge(((IfNode) node).getTarget(), -1, -1));
+            if (!((IfNode) node).isAlwaysTaken()) edges.addAll(fallThrough(node, node.getNextStatement(), loop, owners));
+        }
+        else if (node instanceof GoSubNode)
+            edges.add(new Edge(((GoSubNode) node).getTarget(), -1, -1));
+        else if (node instanceof ForNode){
+            // enter the body with the variable set, or skip it and leave the variable unset
+            ForNode inner = (ForNode) node;
+            int slot = inner.getVar().getSymbol();
+            if (!inner.getStatements().isEmpty()) edges.add(new Edge(inner.getStatements().get(0), slot, -1));
+            for (Edge edge : fallThrough(node, node.getNextStatement(), loop, owners))
+                edges.add(new Edge(edge.to, edge.assigns, slot));
+        }
+        else if (node instanceof WhileNode){
+            // enter the body or skip it, testing again after each pass
+            if (!((WhileNode) node).getStatements().isEmpty())
+                edges.add(new Edge(((WhileNode) node).getStatements().get(0), -1, -1));
+            edges.addAll(fallThrough(node, node.getNextStatement(), loop, owners));
+        }
+        else if (!(node instanceof ReturnNode))
+            edges.addAll(fallThrough(node, node.getNextStatement(), loop, owners));
+        return edges;
+    }
+
+    /**
+     * Helper fn that gets the edges to the statement after one, which at
+     * the end of a nested loop's body is the loop's next iteration or exit,
+     * and at the end of a WHILE body is its test.
+     * @param node statement.
+     * @param next statement after it, or null at the end of its list.
+     * @param loop loop being planned.
+     * @param owners statement list holding each statement.
+     * @return edges to what runs next; none at the end of an iteration.
+     * @throws Exception when a statement can run off the end of a list other than a loop body.
+     */
+    private static ArrayList<Edge> fallThrough(StatementNode node, StatementNode next, ForNode loop,
+                                               IdentityHashMap<StatementNode, NodeWithStatements> owners) throws Exception{
+        ArrayList<Edge> edges = new ArrayList<>();
+        if (next != null){
+            edges.add(new Edge(next, -1, -1));
+            return edges;
+        }
+        NodeWithStatements owner = owners.get(node);
+        if (owner == loop) return edges;
+        if (owner instanceof WhileNode){
+            edges.add(new Edge((WhileNode) owner, -1, -1));
+            return edges;
+        }
+        if (!(owner instanceof ForNode))
+            throw new Exception("a subroutine it calls can run off the end of the program without RETURN");
+        ForNode inner = (ForNode) owner;
+        int slot = inner.getVar().getSymbol();
+        edges.add(new Edge(inner.getStatements().get(0), slot, -1));
+        for (Edge edge : fallThrough(inner, inner.getNextStatement(), loop, owners))
+            edges.add(new Edge(edge.to, edge.assigns, slot));
+        return edges;
+    }
+
+    /**
+     * Helper fn that names the variable a statement assigns.
+     * @param node assignment or FOR loop.
+     * @return variable name.
+     */
+    private static String name(StatementNode node){
+        return node instanceof ForNode ? ((ForNode) node).getVar().getName()
+                : ((AssignmentNode) node).getVariable().getName();
+    }
+
+    /**
+     * Helper fn that finds the name of a slot among the statements checked.
+     * @param statements statements checked.
+     * @param slot slot of variable.
+     * @return variable name, or the slot number if not found.
+     */
+    private static String slotName(ArrayList<StatementNode> statements, int slot){
+        for (StatementNode node : statements){
+            if (node instanceof AssignmentNode && ((AssignmentNode) node).getVariable().getSymbol() == slot)
+                return ((AssignmentNode) node).getVariable().getName();
+            if (node instanceof ForNode && ((ForNode) node).getVar().getSymbol() == slot)
+                return ((ForNode) node).getVar().getName();
+        }
+        return "#" + slot;
+    }
+}
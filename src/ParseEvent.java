@@ -0,0 +1,20 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event spanning one parse, including time spent waiting for tokens.
+ */
+@Name("basic.Parse")
+@Label("Parse")
+@Category("BASIC")
+@Description("Parsing of tokens into statements")
+@StackTrace(false)
+public class ParseEvent extends jdk.jfr.Event {
+
+    @Label("Statements")
+    @Description("Top level statements parsed")
+    public int statements;
+}
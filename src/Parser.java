@@ -1,18 +1,26 @@
 import java.util.ArrayList;
 
 /**
- * Parser that parses an ArrayList of Tokens.
+ * Parser that parses a stream of Tokens.
  */
 public class Parser {
 
-    ArrayList<Token> tokens;
+    TokenStream tokens;
 
     /**
      * Constructor.
      * @param tokens list of tokens to parse.
      */
     public Parser(ArrayList<Token> tokens){
-        this.tokens = tokens;
+        this.tokens = new TokenStream(tokens);
+    }
+
+    /**
+     * Constructor that parses tokens as the source produces them.
+     * @param source source of token batches to parse, such as a pipeline.
+     */
+    public Parser(TokenSource source){
+        this.tokens = new TokenStream(source);
     }
 
     /**
@@ -20,19 +28,19 @@ public class Parser {
      * and returns it if found.
      * @param type type of token to look for.
      * @return Token if matching, otherwise null.
+     * @throws Exception when lexing failed.
      */
-    private Token matchAndRemove(TokenType type){
-        if (tokens.size() > 0 && tokens.get(0).getTokenType().equals(type))
-            return tokens.remove(0);
-        return null;
+    private Token matchAndRemove(TokenType type) throws Exception{
+        return tokens.match(type);
     }
 
     /**
-     * Helper fn that puts a token back in the queue.
-     * @param token to be put back.
+     * Check whether there is anything to parse.
+     * @return true if a token is available.
+     * @throws Exception when lexing failed.
      */
-    private void pushFront(Token token){
-        tokens.add(0, token);
+    public boolean hasTokens() throws Exception{
+        return tokens.hasNext();
     }
 
     /**
@@ -50,7 +58,7 @@ public class Parser {
         // if value is not null
         while (token != null){
             // add node and check for comma
-            nodes.add(new VariableNode(token.getValue()));
+            nodes.add(new VariableNode(token.getValue(), token.getSymbol()));
             if (matchAndRemove(TokenType.COMMA) != null ) {
                 // update node, if no variable exists then throw
                 token = matchAndRemove(TokenType.IDENTIFIER);
@@ -122,7 +130,7 @@ public class Parser {
             if (token.getTokenType() == TokenType.STRING)
                 nodes.add(new StringNode(token.getValue()));
             else
-                nodes.add(new VariableNode(token.getValue()));
+                nodes.add(new VariableNode(token.getValue(), token.getSymbol()));
             // check for comma
             if (matchAndRemove(TokenType.COMMA) != null ) {
                 // update node, if no input exists then throw
@@ -144,13 +152,8 @@ public class Parser {
     private ArrayList<Node> printList() throws Exception{
         // make list to return
         ArrayList<Node> nodes = new ArrayList<>();
-        // get expression
+        // get expression, which may be a string
         Node node = expression();
-        // or, get string
-        if (node == null) {
-            Token token = matchAndRemove(TokenType.STRING);
-            if (token != null) node = new StringNode(token.getValue());
-        }
         // if value is not null
         while (node != null){
             // add node and check for comma
@@ -158,10 +161,6 @@ public class Parser {
             if (matchAndRemove(TokenType.COMMA) != null ) {
                 // update node, if no expression exists then throw
                 node = expression();
-                if (node == null) {
-                    Token token = matchAndRemove(TokenType.STRING);
-                    if (token != null) node = new StringNode(token.getValue());
-                }
                 if (node == null)
                     throw new Exception("Comma not followed by valid expression.");
             } else break;
@@ -195,15 +194,19 @@ public class Parser {
         // match identifier for variable
         Token id = matchAndRemove(TokenType.IDENTIFIER);
         if (id != null) {
+            VariableNode var = new VariableNode(id.getValue(), id.getSymbol());
+            // match indices of an array element
+            ArrayNode element = matchAndRemove(TokenType.LPAREN) != null ? new ArrayNode(var, indices()) : null;
             // match equals sign
             Token eq = matchAndRemove(TokenType.EQUALS);
             if (eq != null) {
-                // match expression
+                // match expression, which may be a string
                 Node exp = expression();
                 if (exp != null)
-                    return new AssignmentNode(new VariableNode(id.getValue()), exp);
+                    return element != null ? new AssignmentNode(element, exp) : new AssignmentNode(var, exp);
                 else throw new Exception("Expression not found in assignment.");
             }
+            if (element != null) throw new Exception("Expected equals after array element.");
         }
         // failed to parse assignment node
         return null;
@@ -221,53 +224,72 @@ public class Parser {
         Token id = matchAndRemove(TokenType.IDENTIFIER);
         if (id == null) throw new Exception("GOSUB not followed by identifier.");
         // make node
-        return new GoSubNode(id.getValue());
+        return new GoSubNode(id.getValue(), id.getSymbol());
     }
 
     /**
      * Check for return statement.
      * @return node for statement or null.
+     * @throws Exception when lexing failed.
      */
-    private ReturnNode returnStatement(){
+    private ReturnNode returnStatement() throws Exception{
         Token ret = matchAndRemove(TokenType.RETURN);
         return ret == null ? null : new ReturnNode();
     }
 
+    /**
+     * Check for restore statement, with an optional label.
+     * @return node for statement or null.
+     * @throws Exception when lexing failed.
+     */
+    private RestoreNode restoreStatement() throws Exception{
+        // get restore
+        if (matchAndRemove(TokenType.RESTORE) == null) return null;
+        // get label if any
+        Token id = matchAndRemove(TokenType.IDENTIFIER);
+        return id == null ? new RestoreNode() : new RestoreNode(id.getValue(), id.getSymbol());
+    }
+
     /**
      * Helper fn that gets appropriate next statement.
-     * @param var variable of loop to be closed.
+     * @param var variable token of loop to be closed.
      * @return node of next statement.
      * @throws Exception when invalid syntax.
      */
-    private NextNode getNext(String var) throws Exception{
-        // get next token
+    private NextNode getNext(Token var) throws Exception{
+        // get next token, marking where it was
+        tokens.mark();
         Token next = matchAndRemove(TokenType.NEXT);
         if (next != null){
             // get variable
             Token id = matchAndRemove(TokenType.IDENTIFIER);
             if (id != null){
-                // check if variable is correct
-                if (id.getValue().equals(var))
-                    return new NextNode(new VariableNode(var));
-                else {
-                    pushFront(id);
-                    pushFront(next);
-                    return null;
+                // check if variable is correct, otherwise leave NEXT for an outer loop
+                if (id.getSymbol() == var.getSymbol()){
+                    tokens.unmark();
+                    return new NextNode(new VariableNode(var.getValue(), var.getSymbol()));
                 }
+                tokens.reset();
+                return null;
             }
             else throw new Exception("Expected variable after NEXT statement.");
         }
+        tokens.unmark();
         return null;
     }
 
     /**
-     * Checks for for loop statement.
+     * Checks for for loop statement, which PARALLEL may precede.
      * @return for loop node.
      * @throws Exception when invalid syntax.
      */
     private ForNode forLoopStatement() throws Exception{
-        // get for token
-        if (matchAndRemove(TokenType.FOR) == null) return null;
+        // get parallel and for tokens
+        boolean parallel = matchAndRemove(TokenType.PARALLEL) != null;
+        if (matchAndRemove(TokenType.FOR) == null){
+            if (parallel) throw new Exception("Expected FOR after PARALLEL.");
+            return null;
+        }
         // get variable name
         Token var = matchAndRemove(TokenType.IDENTIFIER);
         if (var == null)
@@ -275,44 +297,25 @@ public class Parser {
         // get equals sign
         if (matchAndRemove(TokenType.EQUALS) == null)
             throw new Exception("FOR variable not followed by equals.");
-        // get start value
-        Token startToken = matchAndRemove(TokenType.NUMBER);
-        float start;
-        if (startToken == null)
+        // get start, stop and step expressions, evaluated once when the loop starts
+        Node start = expression();
+        if (start == null)
             throw new Exception("FOR loop not given start value.");
-        try {
-            start = Float.parseFloat(startToken.getValue());
-        } catch (Exception e){
-            throw new Exception("FOR loop start value must be a number.");
-        }
         // get "to"
         if (matchAndRemove(TokenType.TO) == null)
             throw new Exception("FOR loop init has invalid syntax.");
-        // get stop value
-        Token stopToken = matchAndRemove(TokenType.NUMBER);
-        float stop;
-        if (stopToken == null)
+        Node stop = expression();
+        if (stop == null)
             throw new Exception("FOR loop not given stop value.");
-        try {
-            stop = Float.parseFloat(stopToken.getValue());
-        } catch (Exception e){
-            throw new Exception("FOR loop stop value must be a number.");
-        }
-        // get step
-        float step = 1;
+        Node step = new IntegerNode(1);
         if (matchAndRemove(TokenType.STEP) != null) {
-            // attempt to parse step value from number
-            try {
-                Token stepNumber = matchAndRemove(TokenType.NUMBER);
-                if (stepNumber != null) step = Float.parseFloat(stepNumber.getValue());
-                else throw new Exception("FOR loop step value must be a number.");
-            } catch (Exception e) {
-                throw new Exception("FOR loop step value must be a number.");
-            }
+            step = expression();
+            if (step == null)
+                throw new Exception("FOR loop not given step value.");
         }
         // get statements
         StatementsNode statements = statements();
-        NextNode nextNode = getNext(var.getValue());
+        NextNode nextNode = getNext(var);
         if (nextNode == null)
             throw new Exception("Expected NEXT after FOR.");
         // return for node
@@ -322,10 +325,90 @@ public class Parser {
                 stop,
                 step,
                 statements,
-                nextNode
+                nextNode,
+                parallel
         );
     }
 
+    /**
+     * Checks for while loop statement.
+     * @return while loop node or null.
+     * @throws Exception when invalid syntax.
+     */
+    private WhileNode whileStatement() throws Exception{
+        // get while token
+        if (matchAndRemove(TokenType.WHILE) == null) return null;
+        // get condition and statements
+        BooleanOperationNode condition = booleanExpression();
+        StatementsNode statements = statements();
+        if (matchAndRemove(TokenType.WEND) == null)
+            throw new Exception("Expected WEND after WHILE.");
+        return new WhileNode(condition, statements);
+    }
+
+    /**
+     * Checks for dim statement, making one or more arrays.
+     * @return dim node or null.
+     * @throws Exception when invalid syntax.
+     */
+    private DimNode dimStatement() throws Exception{
+        // get dim token
+        if (matchAndRemove(TokenType.DIM) == null) return null;
+        // get each array with its sizes
+        ArrayList<ArrayNode> arrays = new ArrayList<>();
+        do {
+            Token id = matchAndRemove(TokenType.IDENTIFIER);
+            if (id == null) throw new Exception("Expected array after DIM.");
+            if (matchAndRemove(TokenType.LPAREN) == null)
+                throw new Exception("Expected sizes in parentheses after DIM " + id.getValue() + ".");
+            arrays.add(new ArrayNode(new VariableNode(id.getValue(), id.getSymbol()), indices()));
+        } while (matchAndRemove(TokenType.COMMA) != null);
+        return new DimNode(arrays);
+    }
+
+    /**
+     * Helper fn that gets an array named in a MAT statement.
+     * @return variable naming array.
+     * @throws Exception when no array is named.
+     */
+    private VariableNode matArray() throws Exception{
+        Token id = matchAndRemove(TokenType.IDENTIFIER);
+        if (id == null) throw new Exception("Expected array in MAT statement.");
+        return new VariableNode(id.getValue(), id.getSymbol());
+    }
+
+    /**
+     * Checks for mat statement: MAT C = A, MAT C = (k), MAT C = A + B,
+     * MAT C = A - B, MAT C = (k) * A or MAT C = A * B.
+     * @return mat node or null.
+     * @throws Exception when invalid syntax.
+     */
+    private MatNode matStatement() throws Exception{
+        // get mat token, target and equals sign
+        if (matchAndRemove(TokenType.MAT) == null) return null;
+        VariableNode target = matArray();
+        if (matchAndRemove(TokenType.EQUALS) == null)
+            throw new Exception("Expected equals after MAT " + target.getName() + ".");
+        // a number in parentheses fills, or scales the array it multiplies
+        if (matchAndRemove(TokenType.LPAREN) != null){
+            Node scalar = expression();
+            if (scalar == null) throw new Exception("Expected value in parentheses in MAT statement.");
+            if (matchAndRemove(TokenType.RPAREN) == null)
+                throw new Exception("No closing parenthesis to match open one.");
+            if (matchAndRemove(TokenType.MULTIPLY) == null)
+                return new MatNode(MatNode.Operation.FILL, target, null, null, scalar);
+            return new MatNode(MatNode.Operation.SCALE, target, matArray(), null, scalar);
+        }
+        // otherwise an array, and maybe an operator and another array
+        VariableNode left = matArray();
+        MatNode.Operation operation;
+        if (matchAndRemove(TokenType.ADD) != null) operation = MatNode.Operation.ADD;
+        else if (matchAndRemove(TokenType.SUBTRACT) != null) operation = MatNode.Operation.SUBTRACT;
+        else if (matchAndRemove(TokenType.MULTIPLY) != null) operation = MatNode.Operation.MULTIPLY;
+        else return new MatNode(MatNode.Operation.COPY, target, left, null, null);
+        return new MatNode(operation, target, left, matArray(), null);
+    }
+
     /**
      * Checks for if statement;
      * @return node for statement or null.
@@ -344,7 +427,7 @@ public class Parser {
         Token id = matchAndRemove(TokenType.IDENTIFIER);
         if (id == null) throw new Exception("Expected label after IF.");
         // make node
-        return new IfNode(booleanOp, new VariableNode(id.getValue()));
+        return new IfNode(booleanOp, new VariableNode(id.getValue(), id.getSymbol()));
     }
 
     /**
@@ -361,8 +444,12 @@ public class Parser {
         if (statement == null) statement = inputStatement();
         if (statement == null) statement = ifStatement();
         if (statement == null) statement = forLoopStatement();
+        if (statement == null) statement = whileStatement();
+        if (statement == null) statement = dimStatement();
+        if (statement == null) statement = matStatement();
         if (statement == null) statement = goSubStatement();
         if (statement == null) statement = returnStatement();
+        if (statement == null) statement = restoreStatement();
         // return statement
         return statement;
     }
@@ -387,7 +474,7 @@ public class Parser {
             if (node == null) break;
             // check if label exists
             if (label == null) statementsNode.addNode(node);
-            else statementsNode.addNode(new LabeledStatementNode(label.getValue(), node));
+            else statementsNode.addNode(new LabeledStatementNode(label.getValue(), label.getSymbol(), node));
         }
         // return node of list
         return statementsNode;
@@ -458,16 +545,14 @@ public class Parser {
             throw new Exception("Expected paren after function invocation.");
         // make param list
         ArrayList<Node> params = new ArrayList<>();
-        Node param = string();
-        if (param == null) param = expression();
+        Node param = expression();
         // loop to get params
         while (param != null){
             params.add(param);
             Token comma = matchAndRemove(TokenType.COMMA);
             // check for comma
             if (comma != null){
-                param = string();
-                if (param == null) param = expression();
+                param = expression();
                 // check for new param
                 if (param == null)
                     throw new Exception("Expected param after comma in fn invocation.");
@@ -480,15 +565,48 @@ public class Parser {
         return new FunctionNode(params, token.getTokenType());
     }
 
+    /**
+     * Helper fn that parses the indices of an array element, or the sizes
+     * of an array, after the opening parenthesis.
+     * @return expression of each index.
+     * @throws Exception when an index is missing or not closed.
+     */
+    private ArrayList<Node> indices() throws Exception{
+        ArrayList<Node> indices = new ArrayList<>();
+        do {
+            Node index = expression();
+            if (index == null) throw new Exception("Expected array index.");
+            indices.add(index);
+        } while (matchAndRemove(TokenType.COMMA) != null);
+        if (matchAndRemove(TokenType.RPAREN) == null)
+            throw new Exception("No closing parenthesis after array indices.");
+        return indices;
+    }
+
     /**
      * Helper fn that parses a string.
      * @return string parsed or null.
+     * @throws Exception when lexing failed.
      */
-    private StringNode string() {
+    private StringNode string() throws Exception{
         Token str = matchAndRemove(TokenType.STRING);
         return str == null ? null : new StringNode(str.getValue());
     }
 
+    /**
+     * Helper fn that checks whether an expression is a string, from its
+     * form alone: a literal, a string function, a variable or array named
+     * with a $ suffix, or a join.
+     * @param node expression.
+     * @return true if node is a string.
+     */
+    private static boolean isString(Node node){
+        if (node instanceof StringNode || node instanceof ConcatNode) return true;
+        if (node instanceof FunctionNode) return ((FunctionNode) node).returnsString();
+        if (node instanceof ArrayNode) return ((ArrayNode) node).getType() == BasicArray.STRING;
+        return node instanceof VariableNode && ((VariableNode) node).getName().endsWith("$");
+    }
+
     /**
      * Helper fn that parses an expression.
      * @return Node of expression.
@@ -506,30 +624,28 @@ public class Parser {
                 if (op == null) op = matchAndRemove(TokenType.SUBTRACT);
                 // if no operator
                 if (op == null) {
-                    // check for potential negative number as minus operation
-                    Token potentialMinus = matchAndRemove(TokenType.NUMBER);
-                    if (potentialMinus != null){
-                        // found attached minus
-                        if (((Character) potentialMinus.getValue().charAt(0)).equals('-')){
-                            op = new Token(TokenType.SUBTRACT);
-                            pushFront(new Token(TokenType.NUMBER, potentialMinus.getValue().substring(1)));
-                        }
-                        // did not find
-                        else pushFront(potentialMinus);
-                    }
-                    else return term;
+                    // check for negative number that is really a minus operation
+                    Token potentialMinus = tokens.check(0, TokenType.NUMBER) ? tokens.peek(0) : null;
+                    if (potentialMinus == null || potentialMinus.getValue().charAt(0) != '-')
+                        return term;
+                    // read it as minus followed by positive number
+                    op = new Token(TokenType.SUBTRACT);
+                    tokens.replace(new Token(TokenType.NUMBER, potentialMinus.getValue().substring(1)));
                 }
                 // if there is one, get the following term
                 if (op != null) {
                     Node term2 = term();
-                    if (term2 != null)
+                    // adding a string to anything joins them
+                    if (term2 != null && op.getTokenType() == TokenType.ADD && (isString(term) || isString(term2)))
+                        term = new ConcatNode(term, term2);
+                    else if (term2 != null)
                         term = new MathOpNode(MathOpNode.tokenOpMap.get(op.getTokenType()), term, term2);
                     // if no following term, there is an error
                     else throw new Exception("Expected valid term after operation.");
                 }
             }
         }
-        else return functionInvocation();
+        else return null;
     }
 
     /**
@@ -585,11 +701,21 @@ public class Parser {
                     if (rparen != null) return expression;
                     else throw new Exception("No closing parenthesis to match open one.");
                 }
-                // otherwise we found no factor
-                return null;
-            } else return new VariableNode(token.getValue());
+                // otherwise check for string or function
+                Node string = string();
+                return string != null ? string : functionInvocation();
+            }
+            // an identifier followed by parentheses is an array element
+            VariableNode var = new VariableNode(token.getValue(), token.getSymbol());
+            if (matchAndRemove(TokenType.LPAREN) != null) return new ArrayNode(var, indices());
+            return var;
+        }
+        // we found a number, parse it, keeping whole numbers exact where they fit an int
+        if (token.getValue().indexOf('.') < 0) {
+            try {
+                return new IntegerNode(Integer.parseInt(token.getValue()));
+            } catch (NumberFormatException ignored) {}
         }
-        // we found a number, parse it
         float numFloat = Float.parseFloat(token.getValue());
         // check if it is an int
         if (numFloat == Math.round(numFloat)) return new
@@ -603,6 +729,14 @@ public class Parser {
      * @throws Exception when there is a syntax error.
      */
     public StatementsNode parse() throws Exception{
-        return statements();
+        if (!JfrEvents.ENABLED) return statements();
+        ParseEvent event = new ParseEvent();
+        event.begin();
+        StatementsNode node = statements();
+        if (event.shouldCommit()){
+            event.statements = node.getStatements().size();
+            event.commit();
+        }
+        return node;
     }
 }
@@ -0,0 +1,372 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+
+/**
+ * Statement-level profiler for the tree interpreter. It counts the times
+ * each statement runs and the nanoseconds spent in it, inclusive of loop
+ * bodies and subroutines it calls and exclusive of them, and sums the
+ * statements following each label and the calls of each GOSUB target.
+ * FOR and WHILE loops and subroutines are frames of a call stack, so time can also
+ * be written as collapsed stacks for flame graphs. The interpreter only
+ * calls into a profiler when one is set.
+ */
+public class Profiler {
+
+    // name of the outermost frame
+    private static final String MAIN = "main";
+
+    // longest statement description kept
+    private static final int DESCRIPTION_LENGTH = 60;
+
+    /**
+     * Counts and times of a statement, label or subroutine.
+     */
+    private static final class Site {
+
+        final String name;
+        final String label;
+        // false when an enclosing loop follows the same label, so its time is already counted
+        final boolean regionRoot;
+        long count = 0;
+        long inclusive = 0;
+        long exclusive = 0;
+
+        /**
+         * Constructor.
+         * @param name description.
+         * @param label label of region holding the site, or null.
+         * @param regionRoot true if time counts toward its label's inclusive time.
+         */
+        Site(String name, String label, boolean regionRoot){
+            this.name = name;
+            this.label = label;
+            this.regionRoot = regionRoot;
+        }
+    }
+
+    /**
+     * A collapsed stack, made once and reused each time the same frames are entered.
+     */
+    private static final class Context {
+
+        final String path;
+        final IdentityHashMap<Object, Context> children = new IdentityHashMap<>();
+        // nanoseconds spent in the frame itself, outside its statements
+        long self = 0;
+
+        /**
+         * Constructor.
+         * @param path frames of stack, outermost first.
+         */
+        Context(String path){
+            this.path = path;
+        }
+    }
+
+    /**
+     * A FOR or WHILE loop or subroutine being run.
+     */
+    private static final class Frame {
+
+        final Site site;
+        final Site caller;
+        final Context context;
+        final long started;
+        // nanoseconds spent in statements run directly in this frame
+        long children = 0;
+
+        /**
+         * Constructor.
+         * @param site loop statement or subroutine.
+         * @param caller GOSUB statement of a subroutine, or null.
+         * @param context collapsed stack up to and including this frame.
+         * @param started nanoTime frame was entered.
+         */
+        Frame(Site site, Site caller, Context context, long started){
+            this.site = site;
+            this.caller = caller;
+            this.context = context;
+            this.started = started;
+        }
+    }
+
+    private final IdentityHashMap<StatementNode, Site> statements = new IdentityHashMap<>();
+    private final ArrayList<Site> ordered = new ArrayList<>();
+    private final LinkedHashMap<String, Site> subroutines = new LinkedHashMap<>();
+    private final ArrayList<Context> stacks = new ArrayList<>();
+    private final ArrayList<Frame> frames = new ArrayList<>();
+    private final IdentityHashMap<StatementNode, String> labels = new IdentityHashMap<>();
+    private int numbered = 0;
+
+    /**
+     * Constructor, numbering the statements of the program.
+     * @param program linked program to profile; set this profiler on the context running it.
+     */
+    public Profiler(Program program){
+        StatementNode[] labelTargets = program.getLabelTargets();
+        String[] labelNames = new String[labelTargets.length];
+        walkNames(program.getTop(), labelNames);
+        for (int symbol = 0; symbol < labelTargets.length; symbol++)
+            if (labelTargets[symbol] != null)
+                labels.put(labelTargets[symbol], labelNames[symbol] != null ? labelNames[symbol] : "label " + symbol);
+        walkNumbers(program.getTop(), null, false, null);
+        frames.add(new Frame(new Site(MAIN, null, false), null, context(null, MAIN, MAIN), System.nanoTime()));
+    }
+
+    /**
+     * Function that walks tree and records the name of each label jumped to.
+     * @param nodeWS top node of tree to walk.
+     * @param names label names indexed by symbol ID.
+     */
+    private static void walkNames(NodeWithStatements nodeWS, String[] names){
+        for (StatementNode node : nodeWS.getStatements()){
+            if (node instanceof IfNode)
+                nameLabel(names, ((IfNode) node).getLabel().getSymbol(), ((IfNode) node).getLabel().getName());
+            else if (node instanceof GoSubNode)
+                nameLabel(names, ((GoSubNode) node).getSymbol(), ((GoSubNode) node).getLabel());
+            else if (node instanceof RestoreNode && ((RestoreNode) node).getLabel() != null)
+                nameLabel(names, ((RestoreNode) node).getSymbol(), ((RestoreNode) node).getLabel());
+            if (node instanceof NodeWithStatements) walkNames((NodeWithStatements) node, names);
+        }
+    }
+
+    /**
+     * Helper fn that records the name of a label.
+     * @param names label names indexed by symbol ID.
+     * @param symbol ID of label.
+     * @param name name of label.
+     */
+    private static void nameLabel(String[] names, int symbol, String name){
+        if (symbol >= 0 && symbol < names.length) names[symbol] = name;
+    }
+
+    /**
+     * Function that walks tree in program order, numbering each statement
+     * and noting the last label before it.
+     * @param nodeWS top node of tree to walk.
+     * @param label label of statements so far, or null before the first label.
+     * @param inLoop true if walking the body of a FOR or WHILE loop.
+     * @param loopLabel label of the enclosing loop.
+     * @return label of statements after the ones walked.
+     */
+    private String walkNumbers(NodeWithStatements nodeWS, String label, boolean inLoop, String loopLabel){
+        for (StatementNode node : nodeWS.getStatements()){
+            if (labels.containsKey(node)) label = labels.get(node);
+            add(node, new Site("#" + numbered++ + " " + describe(node), label,
+                    !inLoop || !Objects.equals(loopLabel, label)));
+            if (node instanceof NodeWithStatements) label = walkNumbers((NodeWithStatements) node, label, true, label);
+        }
+        return label;
+    }
+
+    /**
+     * Helper fn that adds the site of a statement.
+     * @param node statement.
+     * @param site site of statement.
+     */
+    private void add(StatementNode node, Site site){
+        statements.put(node, site);
+        ordered.add(site);
+    }
+
+    /**
+     * Helper fn that makes a short one-line description of a statement.
+     * @param node statement.
+     * @return description without separators of collapsed stacks.
+     */
+    static String describe(StatementNode node){
+        String text = node instanceof ForNode ? "For: \"" + ((ForNode) node).getVar().getName() + "\""
+                : node instanceof WhileNode ? "While: " + ((WhileNode) node).getCondition()
+                : String.valueOf(node);
+        text = text.replace(';', ',').replace('\n', ' ').replace('\r', ' ');
+        return text.length() > DESCRIPTION_LENGTH ? text.substring(0, DESCRIPTION_LENGTH - 3) + "..." : text;
+    }
+
+    /**
+     * Helper fn that gets the site of a statement, adding one for a statement
+     * not in the tree when numbered.
+     * @param node statement.
+     * @return site of statement.
+     */
+    private Site site(StatementNode node){
+        Site site = statements.get(node);
+        if (site == null){
+            site = new Site("#? " + describe(node), null, true);
+            add(node, site);
+        }
+        return site;
+    }
+
+    /**
+
+    /**
+     * Helper fn that gets the collapsed stack of a frame or statement within
+     * another, making it the first time.
+     * @param parent enclosing stack, or null for the outermost.
+     * @param key site or statement of the new frame.
+     * @param name name of the new frame.
+     * @return collapsed stack.
+     */
+    private Context context(Context parent, Object key, String name){
+        Context context = parent != null ? parent.children.get(key) : null;
+        if (context == null){
+            context = new Context(parent != null ? parent.path + ";" + name : name);
+            if (parent != null) parent.children.put(key, context);
+            stacks.add(context);
+        }
+        return context;
+    }
+
+    /**
+     * Records a statement that has finished running.
+     * @param node statement.
+     * @param started nanoTime before statement ran.
+     */
+    public void statement(StatementNode node, long started){
+        long elapsed = System.nanoTime() - started;
+        Frame frame = frames.get(frames.size() - 1);
+        Site site = site(node);
+        site.count++;
+        site.inclusive += elapsed;
+        site.exclusive += elapsed;
+        frame.children += elapsed;
+        context(frame.context, node, site.name).self += elapsed;
+    }
+
+    /**
+     * Enters a FOR or WHILE loop, making it the current frame.
+     * @param node FOR or WHILE statement.
+     * @param started nanoTime before loop began.
+     */
+    public void enterLoop(StatementNode node, long started){
+        Frame frame = frames.get(frames.size() - 1);
+        Site site = site(node);
+        frames.add(new Frame(site, null, context(frame.context, site, site.name), started));
+    }
+
+    /**
+     * Leaves a FOR or WHILE loop, ending subroutines entered in its body
+     * that never returned, as the interpreter drops them too.
+     * @param node FOR or WHILE statement.
+     */
+    public void exitLoop(StatementNode node){
+        Site site = site(node);
+        while (frames.size() > 1){
+            Frame frame = frames.get(frames.size() - 1);
+            if (frame.site == site && frame.caller == null){
+                long elapsed = System.nanoTime() - frame.started;
+                frames.remove(frames.size() - 1);
+                site.count++;
+                site.inclusive += elapsed;
+                site.exclusive += elapsed - frame.children;
+                frame.context.self += elapsed - frame.children;
+                frames.get(frames.size() - 1).children += elapsed;
+                return;
+            }
+            exitSubroutine();
+        }
+    }
+
+    /**
+     * Enters a subroutine, making it the current frame.
+     * @param node GOSUB statement.
+     * @param started nanoTime before GOSUB ran.
+     */
+    public void enterSubroutine(GoSubNode node, long started){
+        Frame frame = frames.get(frames.size() - 1);
+        Site subroutine = subroutines.computeIfAbsent(node.getLabel(), name -> new Site(name, null, false));
+        subroutine.count++;
+        site(node).count++;
+        frames.add(new Frame(subroutine, site(node), context(frame.context, subroutine, subroutine.name), started));
+    }
+
+    /**
+     * Leaves the current subroutine on RETURN; the GOSUB that called it is
+     * charged the whole call.
+     */
+    public void exitSubroutine(){
+        Frame frame = frames.get(frames.size() - 1);
+        if (frame.caller == null) return;
+        long elapsed = System.nanoTime() - frame.started;
+        frames.remove(frames.size() - 1);
+        frame.site.inclusive += elapsed;
+        frame.site.exclusive += elapsed - frame.children;
+        frame.context.self += elapsed - frame.children;
+        // the GOSUB runs in its caller's frame
+        Frame caller = frames.get(frames.size() - 1);
+        frame.caller.inclusive += elapsed;
+        caller.children += elapsed;
+    }
+
+    /**
+     * Helper fn that formats nanoseconds as milliseconds.
+     * @param nanos nanoseconds.
+     * @return milliseconds with three decimals.
+     */
+    private static String millis(long nanos){
+        return String.format("%12.3f", nanos / 1e6);
+    }
+
+    /**
+     * Helper fn that writes a table of sites, most exclusive time first.
+     * @param out writer.
+     * @param title heading of table.
+     * @param sites sites to list.
+     * @throws IOException when writing fails.
+     */
+    private static void table(BufferedWriter out, String title, ArrayList<Site> sites) throws IOException{
+        sites.sort(Comparator.comparingLong((Site site) -> site.exclusive).reversed());
+        out.write(title + "\n");
+        out.write(String.format("%12s %12s %12s  %s%n", "excl ms", "incl ms", "count", "name"));
+        for (Site site : sites)
+            out.write(millis(site.exclusive) + " " + millis(site.inclusive) + " "
+                    + String.format("%12d", site.count) + "  " + site.name + "\n");
+        out.write("\n");
+    }
+
+    /**
+     * Writes a hot-spot report of statements, labels and subroutines, each
+     * sorted by exclusive time. Statements before the first label are
+     * counted under "(start)".
+     * @param file file to write.
+     * @throws IOException when file cannot be written.
+     */
+    public void writeReport(Path file) throws IOException{
+        ArrayList<Site> executed = new ArrayList<>();
+        LinkedHashMap<String, Site> labels = new LinkedHashMap<>();
+        for (Site site : ordered){
+            if (site.count == 0) continue;
+            executed.add(site);
+            String name = site.label != null ? site.label : "(start)";
+            Site label = labels.computeIfAbsent(name, key -> new Site(key, key, false));
+            label.count += site.count;
+            label.exclusive += site.exclusive;
+            if (site.regionRoot) label.inclusive += site.inclusive;
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(file)){
+            table(out, "Statements", executed);
+            table(out, "Labels", new ArrayList<>(labels.values()));
+            table(out, "Subroutines", new ArrayList<>(subroutines.values()));
+        }
+    }
+
+    /**
+     * Writes time per stack as collapsed stacks, one "frame;frame;statement
+     * nanoseconds" line per stack, for flame graph tools.
+     * @param file file to write.
+     * @throws IOException when file cannot be written.
+     */
+    public void writeStacks(Path file) throws IOException{
+        try (BufferedWriter out = Files.newBufferedWriter(file)){
+            for (Context stack : stacks)
+                if (stack.self > 0) out.write(stack.path + " " + stack.self + "\n");
+        }
+    }
+}
@@ -0,0 +1,607 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * A parsed program linked for execution: labels resolved, constants
+ * folded, DATA moved into a segment and each variable given a slot.
+ * Linking is the last time the tree changes, so one program can be run by
+ * any number of interpreters at once, each run keeping its state in an
+ * ExecutionContext of its own. The only writes while running are the
+ * operand kinds math and boolean sites record as type feedback; every kind
+ * a site can record is valid for it, so runs on other threads can only
+ * cost each other a guard failure. Linking also plans which FOR loops
+ * run their iterations in parallel; see ParallelLoop.
+ */
+public final class Program {
+
+    // top node of AST
+    private final StatementsNode top;
+
+    // labeled statements and variable names, indexed by symbol ID
+    private StatementNode[] labelTargets = new StatementNode[16];
+    private String[] slotNames = new String[16];
+    private int slots = 0;
+
+    // items of all DATA statements
+    private final DataSegment data;
+
+    // why loops written PARALLEL FOR run sequentially
+    private final ArrayList<String> warnings;
+
+    /**
+     * Constructor, linking a parsed tree; the tree belongs to the program afterwards.
+     * @param top AST node at top of tree.
+     * @throws Exception when a jump names a label that does not exist.
+     */
+    private Program(StatementsNode top) throws Exception{
+        this.top = top;
+        this.data = new DataSegment();
+        this.warnings = new ArrayList<>();
+
+        // do edits to tree
+        walkLabels(top);
+        IdentityHashMap<StatementNode, Integer> labels = new IdentityHashMap<>();
+        for (int symbol = 0; symbol < labelTargets.length; symbol++)
+            if (labelTargets[symbol] != null) labels.put(labelTargets[symbol], symbol);
+        walkFold(top, labels);
+        LinkedHashSet<String> missing = new LinkedHashSet<>();
+        walkTargets(top, missing);
+        if (!missing.isEmpty())
+            throw new Exception((missing.size() == 1 ? "Label " : "Labels ")
+                    + "'" + String.join("', '", missing) + "' not found.");
+        walkFor(top);
+        IdentityHashMap<StatementNode, Integer> positions = new IdentityHashMap<>();
+        ArrayList<RestoreNode> restores = new ArrayList<>();
+        walkData(top, labels, positions, restores);
+        for (RestoreNode restore : restores)
+            if (restore.getTarget() != null) restore.setPosition(positions.get(restore.getTarget()));
+        walkSetNext(top);
+        walkVariables(top);
+        plan();
+    }
+
+    /**
+     * Constructor for a tree that is already linked, such as one loaded from
+     * a program image; jumps must already be bound and next statements set.
+     * @param top AST node at top of linked tree.
+     * @param labelTargets labeled statements indexed by symbol ID.
+     * @param slotNames variable names indexed by slot.
+     * @param data data segment.
+     */
+    public Program(StatementsNode top, StatementNode[] labelTargets, String[] slotNames, DataSegment data){
+        this.top = top;
+        this.data = data;
+        this.labelTargets = labelTargets;
+        this.slotNames = slotNames;
+        this.slots = slotNames.length;
+        this.warnings = new ArrayList<>();
+        plan();
+    }
+
+    /**
+     * Constructor for a program sharing a linked tree and its plans.
+     * @param linked linked program.
+     * @param data data segment.
+     */
+    private Program(Program linked, DataSegment data){
+        this.top = linked.top;
+        this.data = data;
+        this.labelTargets = linked.labelTargets;
+        this.slotNames = linked.slotNames;
+        this.slots = linked.slots;
+        this.warnings = linked.warnings;
+    }
+
+    /**
+     * Links a parsed tree into a program.
+     * @param top AST node at top of tree; it must not be linked again or changed.
+     * @return linked program.
+     * @throws Exception when a jump names a label that does not exist.
+     */
+    public static Program link(StatementsNode top) throws Exception{
+        return new Program(top);
+    }
+
+    /**
+     * Function that walks tree and handles labels.
+     * @param nodeWS top node of tree to walk.
+     */
+    private void walkLabels(NodeWithStatements nodeWS){
+        // iterate over nodes
+        for (int i = 0; i < nodeWS.getStatements().size(); i++){
+            // get current node
+            StatementNode node = nodeWS.getStatements().get(i);
+            // if node is labeled statement
+            if (node instanceof LabeledStatementNode){
+                // add to label targets
+                setLabelTarget(((LabeledStatementNode) node).getSymbol(), ((LabeledStatementNode) node).getNode());
+                // replace node with child
+                nodeWS.getStatements().set(i, ((LabeledStatementNode) node).getNode());
+            }
+            // if node itself has statements, recur
+            if (node instanceof NodeWithStatements)
+                walkLabels((NodeWithStatements) node);
+        }
+    }
+
+    /**
+     * Helper fn that folds an expression made only of literals.
+     * @param node expression to fold.
+     * @param numeric true if only numeric results may replace the node.
+     * @return literal node, or node with folded children.
+     */
+    private Node fold(Node node, boolean numeric){
+        if (node instanceof MathOpNode){
+            MathOpNode op = (MathOpNode) node;
+            Node left = fold(op.getLeft(), true);
+            Node right = fold(op.getRight(), true);
+            // both sides literal, evaluate with the original node's int rules
+            if ((left instanceof IntegerNode || left instanceof FloatNode) &&
+                    (right instanceof IntegerNode || right instanceof FloatNode)){
+                float l = left instanceof IntegerNode ?
+                        (float) ((IntegerNode) left).getInteger() : ((FloatNode) left).getFloat();
+                float r = right instanceof IntegerNode ?
+                        (float) ((IntegerNode) right).getInteger() : ((FloatNode) right).getFloat();
+                float result;
+                switch (op.getOperation()){
+                    case ADD:
+                        result = l + r;
+                        break;
+                    case SUBTRACT:
+                        result = l - r;
+                        break;
+                    case MULTIPLY:
+                        result = l * r;
+                        break;
+                    case DIVIDE:
+                        result = l / r;
+                        break;
+                    default:
+                        return node;
+                }
+                return op.isKeepInt() ? new IntegerNode((int) result) : new FloatNode(result);
+            }
+            // otherwise rebuild around folded children
+            if (left != op.getLeft() || right != op.getRight())
+                return new MathOpNode(op.getOperation(), left, right);
+        }
+        else if (node instanceof ArrayNode){
+            // fold indices in place, keeping the element
+            ArrayList<Node> indices = ((ArrayNode) node).getIndices();
+            for (int i = 0; i < indices.size(); i++) indices.set(i, fold(indices.get(i), true));
+        }
+        else if (node instanceof ConcatNode){
+            ConcatNode concat = (ConcatNode) node;
+            Node left = fold(concat.getLeft(), false);
+            Node right = fold(concat.getRight(), false);
+            // both sides literal strings, join them now
+            if (!numeric && left instanceof StringNode && right instanceof StringNode)
+                return new StringNode(((StringNode) left).getValue().concat(((StringNode) right).getValue()));
+            if (left != concat.getLeft() || right != concat.getRight())
+                return new ConcatNode(left, right);
+        }
+        else if (node instanceof FunctionNode && ((FunctionNode) node).getFunction() != TokenType.FN_RANDOM){
+            // fold params in place, as the function takes strings too
+            ArrayList<Node> params = ((FunctionNode) node).getParams();
+            for (int i = 0; i < params.size(); i++) params.set(i, fold(params.get(i), false));
+            // pure builtins of literals; failures are left to be raised at run time
+            try {
+                Node result = Interpreter.function((FunctionNode) node);
+                if (result instanceof IntegerNode || result instanceof FloatNode ||
+                        (!numeric && result instanceof StringNode))
+                    return result;
+            } catch (Exception ignored){}
+        }
+        return node;
+    }
+
+    /**
+     * Function that walks tree, folds constant expressions and decides
+     * IF statements that compare literals.
+     * @param nodeWS top node of tree to walk.
+     * @param labels label of each statement that is jumped to.
+     */
+    private void walkFold(NodeWithStatements nodeWS, IdentityHashMap<StatementNode, Integer> labels){
+        // iterate over nodes
+        for (int i = 0; i < nodeWS.getStatements().size(); i++){
+            // get current node
+            StatementNode node = nodeWS.getStatements().get(i);
+            // fold assigned value; numeric function values are not assigned to variables, so leave them be
+            if (node instanceof AssignmentNode){
+                ArrayNode element = ((AssignmentNode) node).getElement();
+                if (element != null) fold(element, true);
+                Node value = ((AssignmentNode) node).getValue();
+                Node folded = value instanceof FunctionNode && element == null && !((FunctionNode) value).returnsString()
+                        ? value : fold(value, false);
+                if (folded != value){
+                    StatementNode replacement = element != null ? new AssignmentNode(element, folded)
+                            : new AssignmentNode(((AssignmentNode) node).getVariable(), folded);
+                    nodeWS.getStatements().set(i, replacement);
+                    // keep jumps and RESTORE positions of this statement pointing at it
+                    if (labels.containsKey(node)){
+                        int symbol = labels.remove(node);
+                        labels.put(replacement, symbol);
+                        setLabelTarget(symbol, replacement);
+                    }
+                }
+            }
+            // fold printed items
+            else if (node instanceof PrintNode){
+                ArrayList<Node> nodes = ((PrintNode) node).getNodes();
+                for (int j = 0; j < nodes.size(); j++)
+                    nodes.set(j, fold(nodes.get(j), false));
+            }
+            // fold condition, then decide it if both sides are literal
+            else if (node instanceof IfNode){
+                BooleanOperationNode condition = ((IfNode) node).getCondition();
+                condition.setLeft(fold(condition.getLeft(), true));
+                condition.setRight(fold(condition.getRight(), true));
+                Node left = condition.getLeft();
+                Node right = condition.getRight();
+                if ((left instanceof IntegerNode || left instanceof FloatNode) &&
+                        (right instanceof IntegerNode || right instanceof FloatNode)){
+                    float l = left instanceof IntegerNode ?
+                            (float) ((IntegerNode) left).getInteger() : ((FloatNode) left).getFloat();
+                    float r = right instanceof IntegerNode ?
+                            (float) ((IntegerNode) right).getInteger() : ((FloatNode) right).getFloat();
+                    boolean taken;
+                    switch (condition.getOperator()){
+                        case GT:
+                            taken = l > r;
+                            break;
+                        case GTE:
+                            taken = l >= r;
+                            break;
+                        case LT:
+                            taken = l < r;
+                            break;
+                        case LTE:
+                            taken = l <= r;
+                            break;
+                        case EQUALS:
+                            taken = l == r;
+                            break;
+                        default:
+                            taken = l != r;
+                    }
+                    // a jump that is never taken can go unless it is jumped to
+                    if (taken) ((IfNode) node).setAlwaysTaken(true);
+                    else if (!labels.containsKey(node)) nodeWS.getStatements().remove(i--);
+                }
+            }
+            // fold bounds of FOR loops and conditions of WHILE loops
+            else if (node instanceof ForNode){
+                ForNode loop = (ForNode) node;
+                loop.setBounds(fold(loop.getStart(), true), fold(loop.getStop(), true), fold(loop.getStep(), true));
+            }
+            else if (node instanceof WhileNode){
+                BooleanOperationNode condition = ((WhileNode) node).getCondition();
+                condition.setLeft(fold(condition.getLeft(), true));
+                condition.setRight(fold(condition.getRight(), true));
+            }
+            // fold sizes of arrays and values of MAT statements
+            else if (node instanceof DimNode){
+                for (ArrayNode array : ((DimNode) node).getArrays()) fold(array, true);
+            }
+            else if (node instanceof MatNode && ((MatNode) node).getScalar() != null)
+                ((MatNode) node).setScalar(fold(((MatNode) node).getScalar(), false));
+            // if node itself has statements, recur
+            if (node instanceof NodeWithStatements)
+                walkFold((NodeWithStatements) node, labels);
+        }
+    }
+
+    /**
+     * Function that walks tree and binds jumps to their target statements.
+     * @param nodeWS top node of tree to walk.
+     * @param missing labels that could not be found.
+     */
+    private void walkTargets(NodeWithStatements nodeWS, LinkedHashSet<String> missing){
+        // iterate over nodes
+        for (StatementNode node : nodeWS.getStatements()){
+            // if node is IF node
+            if (node instanceof IfNode){
+                VariableNode label = ((IfNode) node).getLabel();
+                ((IfNode) node).setTarget(getLabelTarget(label.getSymbol()));
+                if (((IfNode) node).getTarget() == null) missing.add(label.getName());
+            }
+            // if node is GOSUB node
+            else if (node instanceof GoSubNode){
+                GoSubNode goSub = (GoSubNode) node;
+                goSub.setTarget(getLabelTarget(goSub.getSymbol()));
+                if (goSub.getTarget() == null) missing.add(goSub.getLabel());
+            }
+            // if node is RESTORE node with a label
+            else if (node instanceof RestoreNode && ((RestoreNode) node).getLabel() != null){
+                RestoreNode restore = (RestoreNode) node;
+                restore.setTarget(getLabelTarget(restore.getSymbol()));
+                if (restore.getTarget() == null) missing.add(restore.getLabel());
+            }
+            // if node itself has statements, recur
+            if (node instanceof NodeWithStatements)
+                walkTargets((NodeWithStatements) node, missing);
+        }
+    }
+
+    /**
+     * Function that walks tree and handles for statements.
+     * @param nodeWS top node of tree to walk.
+     */
+    private void walkFor(NodeWithStatements nodeWS){
+        // iterate over nodes
+        int nodeCount = nodeWS.getStatements().size();
+        for (int i = 0; i < nodeCount; i++){
+            // get current node
+            StatementNode node = nodeWS.getStatements().get(i);
+            // if node is FOR node
+            if (node instanceof ForNode && i < nodeCount-1){
+                // set next statement for this node
+                node.setNextStatement(nodeWS.getStatements().get(i+1));
+                // set next statement for this node's NEXT node
+                ((ForNode) node).getNextNode().setNextStatement(nodeWS.getStatements().get(i+1));
+            }
+            // if node itself has statements, recur
+            if (node instanceof NodeWithStatements)
+                walkFor((NodeWithStatements) node);
+        }
+    }
+
+    /**
+     * Function that walks tree, moves data into the data segment and
+     * records the data position of each labeled statement.
+     * @param nodeWS top node of tree to walk.
+     * @param labels labeled statements.
+     * @param positions data position of each labeled statement walked.
+     * @param restores RESTORE nodes walked.
+     * @throws Exception when a datum is not a literal.
+     */
+    private void walkData(NodeWithStatements nodeWS, IdentityHashMap<StatementNode, Integer> labels,
+                          IdentityHashMap<StatementNode, Integer> positions, ArrayList<RestoreNode> restores) throws Exception{
+        // iterate over nodes
+        boolean hasData = false;
+        for (StatementNode node : nodeWS.getStatements()){
+            // a label restores to the first datum at or after it
+            if (labels.containsKey(node)) positions.put(node, data.size());
+            // if node is DATA node
+            if (node instanceof DataNode) {
+                for (Node datum : ((DataNode) node).getNodes()) data.add(datum);
+                hasData = true;
+            }
+            else if (node instanceof RestoreNode)
+                restores.add((RestoreNode) node);
+            // if node itself has statements, recur
+            if (node instanceof NodeWithStatements)
+                walkData((NodeWithStatements) node, labels, positions, restores);
+        }
+        // drop DATA nodes in one pass
+        if (hasData) nodeWS.getStatements().removeIf(node -> node instanceof DataNode);
+    }
+
+    /**
+     * Function that walks tree and sets next node for each node.
+     * @param nodeWS top node of tree to walk.
+     */
+    private void walkSetNext(NodeWithStatements nodeWS){
+        // iterate over nodes
+        int nodeCount = nodeWS.getStatements().size();
+        for (int i = 0; i < nodeCount; i++){
+            // get current node
+            StatementNode node = nodeWS.getStatements().get(i);
+            // set nextStatement for node
+            if (i < nodeCount - 1)
+                node.setNextStatement(nodeWS.getStatements().get(i+1));
+            else
+                node.setNextStatement(null);
+            // if node itself has statements, recur
+            if (node instanceof NodeWithStatements)
+                walkSetNext((NodeWithStatements) node);
+        }
+    }
+
+    /**
+     * Function that walks tree and records the name stored in each slot.
+     * A variable's slot is its symbol ID.
+     * @param node top node of tree to walk.
+     * @throws Exception when a variable has no symbol ID.
+     */
+    private void walkVariables(Node node) throws Exception{
+        if (node instanceof VariableNode){
+            VariableNode var = (VariableNode) node;
+            int slot = var.getSymbol();
+            if (slot < 0) throw new Exception("Variable '" + var.getName() + "' has no symbol ID.");
+            if (slot >= slotNames.length) slotNames = Arrays.copyOf(slotNames, Math.max(slotNames.length * 2, slot + 1));
+            slotNames[slot] = var.getName();
+            slots = Math.max(slots, slot + 1);
+        }
+        else if (node instanceof NodeWithStatements){
+            for (StatementNode statement : ((NodeWithStatements) node).getStatements())
+                walkVariables(statement);
+            if (node instanceof ForNode){
+                walkVariables(((ForNode) node).getVar());
+                walkVariables(((ForNode) node).getStart());
+                walkVariables(((ForNode) node).getStop());
+                walkVariables(((ForNode) node).getStep());
+            }
+            else if (node instanceof WhileNode)
+                walkVariables(((WhileNode) node).getCondition());
+        }
+        else if (node instanceof AssignmentNode){
+            walkVariables(((AssignmentNode) node).getVariable());
+            if (((AssignmentNode) node).getElement() != null) walkVariables(((AssignmentNode) node).getElement());
+            walkVariables(((AssignmentNode) node).getValue());
+        }
+        else if (node instanceof ArrayNode){
+            walkVariables(((ArrayNode) node).getVar());
+            for (Node child : ((ArrayNode) node).getIndices()) walkVariables(child);
+        }
+        else if (node instanceof DimNode)
+            for (Node child : ((DimNode) node).getArrays()) walkVariables(child);
+        else if (node instanceof MatNode){
+            MatNode mat = (MatNode) node;
+            walkVariables(mat.getTarget());
+            if (mat.getLeft() != null) walkVariables(mat.getLeft());
+            if (mat.getRight() != null) walkVariables(mat.getRight());
+            if (mat.getScalar() != null) walkVariables(mat.getScalar());
+        }
+        else if (node instanceof PrintNode)
+            for (Node child : ((PrintNode) node).getNodes()) walkVariables(child);
+        else if (node instanceof InputNode)
+            for (Node child : ((InputNode) node).getNodes()) walkVariables(child);
+        else if (node instanceof ReadNode)
+            for (Node child : ((ReadNode) node).getNodes()) walkVariables(child);
+        else if (node instanceof FunctionNode)
+            for (Node child : ((FunctionNode) node).getParams()) walkVariables(child);
+        else if (node instanceof IfNode)
+            walkVariables(((IfNode) node).getCondition());
+        else if (node instanceof NextNode)
+            walkVariables(((NextNode) node).getVar());
+        else if (node instanceof MathOpNode){
+            walkVariables(((MathOpNode) node).getLeft());
+            walkVariables(((MathOpNode) node).getRight());
+        }
+        else if (node instanceof ConcatNode){
+            walkVariables(((ConcatNode) node).getLeft());
+            walkVariables(((ConcatNode) node).getRight());
+        }
+        else if (node instanceof BooleanOperationNode){
+            walkVariables(((BooleanOperationNode) node).getLeft());
+            walkVariables(((BooleanOperationNode) node).getRight());
+        }
+    }
+
+    /**
+     * Helper fn that plans the parallel loops of the linked tree.
+     */
+    private void plan(){
+        IdentityHashMap<StatementNode, NodeWithStatements> owners = new IdentityHashMap<>();
+        walkOwners(top, owners);
+        walkParallel(top, owners);
+    }
+
+    /**
+     * Function that walks tree and records the statement list holding each statement.
+     * @param nodeWS top node of tree to walk.
+     * @param owners statement list holding each statement walked.
+     */
+    private void walkOwners(NodeWithStatements nodeWS, IdentityHashMap<StatementNode, NodeWithStatements> owners){
+        for (StatementNode node : nodeWS.getStatements()){
+            owners.put(node, nodeWS);
+            // if node itself has statements, recur
+            if (node instanceof NodeWithStatements)
+                walkOwners((NodeWithStatements) node, owners);
+        }
+    }
+
+    /**
+     * Function that walks tree and plans FOR loops written PARALLEL FOR, or
+     * every FOR loop when ParallelLoop.AUTO is set, whose iterations are
+     * independent. Loops within a parallel loop run sequentially in its
+     * iterations, so they are not planned.
+     * @param nodeWS top node of tree to walk.
+     * @param owners statement list holding each statement.
+     */
+    private void walkParallel(NodeWithStatements nodeWS, IdentityHashMap<StatementNode, NodeWithStatements> owners){
+        // iterate over nodes
+        for (StatementNode node : nodeWS.getStatements()){
+            if (node instanceof ForNode && (((ForNode) node).isParallel() || ParallelLoop.AUTO)){
+                ForNode loop = (ForNode) node;
+                try {
+                    loop.setParallelPlan(ParallelLoop.plan(loop, owners));
+                    continue;
+                } catch (Exception e){
+                    if (loop.isParallel())
+                        warnings.add("PARALLEL FOR " + loop.getVar().getName() + " runs sequentially: " + e.getMessage() + ".");
+                }
+            }
+            // if node itself has statements, recur
+            if (node instanceof NodeWithStatements)
+                walkParallel((NodeWithStatements) node, owners);
+        }
+    }
+
+    /**
+     * Helper fn that records the statement a label names.
+     * @param symbol ID of label.
+     * @param target labeled statement.
+     */
+    private void setLabelTarget(int symbol, StatementNode target){
+        if (symbol >= labelTargets.length)
+            labelTargets = Arrays.copyOf(labelTargets, Math.max(labelTargets.length * 2, symbol + 1));
+        labelTargets[symbol] = target;
+    }
+
+    /**
+     * Makes a program that reads more items once its own data runs out,
+     * sharing this program's tree.
+     * @param extra items to read after the program's own.
+     * @return program with both segments' items.
+     */
+    public Program withData(DataSegment extra){
+        DataSegment combined = new DataSegment();
+        combined.addAll(data);
+        combined.addAll(extra);
+        return new Program(this, combined);
+    }
+
+    /**
+     * Getter for top node of AST.
+     * @return top node of AST.
+     */
+    public StatementsNode getTop() {
+        return top;
+    }
+
+    /**
+     * Get statement a label names.
+     * @param symbol ID of label.
+     * @return labeled statement, or null if no statement has the label.
+     */
+    public StatementNode getLabelTarget(int symbol) {
+        return symbol >= 0 && symbol < labelTargets.length ? labelTargets[symbol] : null;
+    }
+
+    /**
+     * Get labeled statements indexed by symbol ID;
+     * symbol IDs that name no label have no statement.
+     * @return labeled statements by symbol ID.
+     */
+    public StatementNode[] getLabelTargets() {
+        return Arrays.copyOf(labelTargets, labelTargets.length);
+    }
+
+    /**
+     * Getter for data segment; it is shared by every run, so read it only.
+     * @return data segment.
+     */
+    public DataSegment getData() {
+        return data;
+    }
+
+    /**
+     * Get variable names indexed by their storage slot; symbol IDs that
+     * name no variable have no name.
+     * @return variable names by slot.
+     */
+    public String[] getSlotNames() {
+        return Arrays.copyOf(slotNames, slots);
+    }
+
+    /**
+     * Get why loops written PARALLEL FOR run sequentially, one message per loop.
+     * @return warnings from linking.
+     */
+    public List<String> getWarnings() {
+        return List.copyOf(warnings);
+    }
+
+    /**
+     * Get number of variable slots a run needs.
+     * @return number of slots.
+     */
+    public int getSlotCount() {
+        return slots;
+    }
+}
@@ -0,0 +1,669 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * A linked program stored in compact binary form, so a source that has
+ * not changed skips lexing, parsing and linking. The image holds the
+ * linked tree with jumps as statement indices, the resolved label table,
+ * variable names, the DATA segment and any lexing errors to report again.
+ * Images are cached in a directory under the SHA-256 of the source, so an
+ * edited source simply misses, and each image records the format it was
+ * written in, so images from another version of the language miss too.
+ */
+public class ProgramImage {
+
+    // magic at the start of an image, and format version; bump the version when linking or the format changes
+    private static final int MAGIC = 0x42494D47;
+    private static final int VERSION = 5;
+
+    // format also depends on the token types functions are stored by
+    private static final int FINGERPRINT = VERSION * 31 + Arrays.toString(TokenType.values()).hashCode();
+
+    // statement index of a label whose statement left the tree, such as a labelled DATA statement
+    private static final int DETACHED = -2;
+
+    // node kinds
+    private static final byte ASSIGNMENT = 1;
+    private static final byte PRINT = 2;
+    private static final byte READ = 3;
+    private static final byte INPUT = 4;
+    private static final byte IF = 5;
+    private static final byte FOR = 6;
+    private static final byte GOSUB = 7;
+    private static final byte RETURN = 8;
+    private static final byte RESTORE = 9;
+    private static final byte INTEGER = 10;
+    private static final byte FLOAT = 11;
+    private static final byte STRING = 12;
+    private static final byte VARIABLE = 13;
+    private static final byte MATH = 14;
+    private static final byte FUNCTION = 15;
+    private static final byte BOOLEAN = 16;
+    private static final byte WHILE = 17;
+    private static final byte ARRAY = 18;
+    private static final byte DIM = 19;
+    private static final byte MAT = 20;
+    private static final byte CONCAT = 21;
+
+    private final StatementsNode top;
+    private final StatementNode[] labelTargets;
+    private final String[] slotNames;
+    private final DataSegment data;
+    private final List<String> errors;
+
+    /**
+     * Constructor.
+     * @param top top of linked tree.
+     * @param labelTargets labeled statements indexed by symbol ID.
+     * @param slotNames variable names indexed by slot.
+     * @param data data segment.
+     * @param errors messages of lexing errors.
+     */
+    private ProgramImage(StatementsNode top, StatementNode[] labelTargets, String[] slotNames,
+                         DataSegment data, List<String> errors){
+        this.top = top;
+        this.labelTargets = labelTargets;
+        this.slotNames = slotNames;
+        this.data = data;
+        this.errors = errors;
+    }
+
+    /**
+     * Hashes a source file.
+     * @param source source file.
+     * @return SHA-256 of the file's bytes.
+     * @throws IOException when file cannot be read.
+     */
+    public static byte[] hash(Path source) throws IOException{
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)){
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+            while (channel.read(buffer) >= 0){
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e){
+            throw new IOException("SHA-256 is not available.", e);
+        }
+    }
+
+    /**
+     * Gets the file in a cache directory that holds the image of a source.
+     * @param cacheDir cache directory.
+     * @param hash hash of source.
+     * @return image file.
+     */
+    public static Path cacheFile(Path cacheDir, byte[] hash){
+        StringBuilder name = new StringBuilder();
+        for (byte b : hash) name.append(String.format("%02x", b));
+        return cacheDir.resolve(name.append(".img").toString());
+    }
+
+    /**
+     * Writes the image of a linked program, replacing the file atomically
+     * so a concurrent reader sees either the old image or the new one.
+     * @param file image file.
+     * @param hash hash of source.
+     * @param linked linked program.
+     * @param errors messages of lexing errors to report when loaded.
+     * @throws Exception when tree holds a node an image cannot store, or writing fails.
+     */
+    public static void write(Path file, byte[] hash, Program linked, List<String> errors) throws Exception{
+        byte[] image = new Writer().write(hash, linked, errors);
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, "image", ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)){
+                out.write(image);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Reads an image through a memory mapping.
+     * @param file image file.
+     * @param hash hash of source the image must be of.
+     * @return image, or null if there is no image of the source in this format.
+     * @throws Exception when image is malformed.
+     */
+    public static ProgramImage read(Path file, byte[] hash) throws Exception{
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            if (channel.size() > Integer.MAX_VALUE) return null;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e){
+            return null;
+        }
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FINGERPRINT) return null;
+            byte[] stored = new byte[hash.length];
+            buffer.get(stored);
+            if (!Arrays.equals(stored, hash)) return null;
+            return new Reader(buffer).read();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e){
+            throw new Exception("Program image '" + file + "' is cut short.");
+        }
+    }
+
+    /**
+     * Makes the linked program of the image.
+     * @return linked program.
+     */
+    public Program toProgram(){
+        return new Program(top, labelTargets, slotNames, data);
+    }
+
+    /**
+     * Get messages of lexing errors reported when the image was written.
+     * @return error messages in source order.
+     */
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    /**
+     * Writes a linked tree, pooling its strings.
+     */
+    private static final class Writer {
+
+        private final HashMap<String, Integer> pool = new HashMap<>();
+        private final ArrayList<String> strings = new ArrayList<>();
+        private final IdentityHashMap<StatementNode, Integer> indices = new IdentityHashMap<>();
+
+        /**
+         * Helper fn that numbers statements in the order they are written.
+         * @param node statements to number.
+         */
+        private void number(StatementsNode node){
+            for (StatementNode statement : node.getStatements()){
+                indices.put(statement, indices.size());
+                if (statement instanceof ForNode) number(((ForNode) statement).getStatementsNode());
+                else if (statement instanceof WhileNode) number(((WhileNode) statement).getStatementsNode());
+            }
+        }
+
+        /**
+         * Helper fn that gets the pool index of a string.
+         * @param string string, or null.
+         * @return pool index, or -1 for null.
+         */
+        private int string(String string){
+            if (string == null) return -1;
+            Integer index = pool.get(string);
+            if (index == null){
+                index = strings.size();
+                pool.put(string, index);
+                strings.add(string);
+            }
+            return index;
+        }
+
+        /**
+         * Helper fn that gets the index of a statement jumped to.
+         * @param target statement, or null.
+         * @return statement index, -1 for null, or DETACHED if not in tree.
+         */
+        private int target(StatementNode target){
+            if (target == null) return -1;
+            Integer index = indices.get(target);
+            return index == null ? DETACHED : index;
+        }
+
+        /**
+         * Writes the image.
+         * @param hash hash of source.
+         * @param linked linked program.
+         * @param errors messages of lexing errors.
+         * @return bytes of image.
+         * @throws Exception when tree holds a node an image cannot store.
+         */
+        byte[] write(byte[] hash, Program linked, List<String> errors) throws Exception{
+            number(linked.getTop());
+
+            // tree and tables first, so strings are pooled before the pool is written
+            ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+            DataOutputStream body = new DataOutputStream(bodyBytes);
+            body.writeInt(errors.size());
+            for (String error : errors) body.writeInt(string(error));
+            String[] slotNames = linked.getSlotNames();
+            body.writeInt(slotNames.length);
+            for (String name : slotNames) body.writeInt(string(name));
+            StatementNode[] labelTargets = linked.getLabelTargets();
+            body.writeInt(labelTargets.length);
+            for (StatementNode target : labelTargets) body.writeInt(target(target));
+            linked.getData().write(body);
+            body.writeInt(indices.size());
+            statements(body, linked.getTop());
+            body.flush();
+
+            ByteArrayOutputStream imageBytes = new ByteArrayOutputStream(bodyBytes.size() + 64);
+            DataOutputStream image = new DataOutputStream(imageBytes);
+            image.writeInt(MAGIC);
+            image.writeInt(FINGERPRINT);
+            image.write(hash);
+            image.writeInt(strings.size());
+            for (String string : strings){
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                image.writeInt(bytes.length);
+                image.write(bytes);
+            }
+            bodyBytes.writeTo(image);
+            image.flush();
+            return imageBytes.toByteArray();
+        }
+
+        /**
+         * Helper fn that writes a list of statements.
+         * @param out stream to write to.
+         * @param node statements to write.
+         * @throws Exception when a statement cannot be stored.
+         */
+        private void statements(DataOutputStream out, StatementsNode node) throws Exception{
+            out.writeInt(node.getStatements().size());
+            for (StatementNode statement : node.getStatements()) node(out, statement);
+        }
+
+        /**
+         * Helper fn that writes a list of nodes.
+         * @param out stream to write to.
+         * @param nodes nodes to write.
+         * @throws Exception when a node cannot be stored.
+         */
+        private void nodes(DataOutputStream out, List<? extends Node> nodes) throws Exception{
+            out.writeInt(nodes.size());
+            for (Node node : nodes) node(out, node);
+        }
+
+        /**
+         * Helper fn that writes a node that may be missing, after a flag saying whether it is there.
+         * @param out stream to write to.
+         * @param node node to write, or null.
+         * @throws Exception when node cannot be stored.
+         */
+        private void optional(DataOutputStream out, Node node) throws Exception{
+            out.writeBoolean(node != null);
+            if (node != null) node(out, node);
+        }
+
+        /**
+         * Helper fn that writes a node: its kind, then its fields.
+         * @param out stream to write to.
+         * @param node node to write.
+         * @throws Exception when node cannot be stored.
+         */
+        private void node(DataOutputStream out, Node node) throws Exception{
+            if (node instanceof AssignmentNode){
+                AssignmentNode assignment = (AssignmentNode) node;
+                out.writeByte(ASSIGNMENT);
+                node(out, assignment.getElement() != null ? assignment.getElement() : assignment.getVariable());
+                node(out, ((AssignmentNode) node).getValue());
+            }
+            else if (node instanceof PrintNode){
+                out.writeByte(PRINT);
+                nodes(out, ((PrintNode) node).getNodes());
+            }
+            else if (node instanceof ReadNode){
+                out.writeByte(READ);
+                nodes(out, ((ReadNode) node).getNodes());
+            }
+            else if (node instanceof InputNode){
+                out.writeByte(INPUT);
+                nodes(out, ((InputNode) node).getNodes());
+            }
+            else if (node instanceof IfNode){
+                IfNode ifNode = (IfNode) node;
+                out.writeByte(IF);
+                node(out, ifNode.getCondition());
+                node(out, ifNode.getLabel());
+                out.writeBoolean(ifNode.isAlwaysTaken());
+                out.writeInt(target(ifNode.getTarget()));
+            }
+            else if (node instanceof ForNode){
+                ForNode forNode = (ForNode) node;
+                out.writeByte(FOR);
+                node(out, forNode.getVar());
+                node(out, forNode.getStart());
+                node(out, forNode.getStop());
+                node(out, forNode.getStep());
+                out.writeBoolean(forNode.isParallel());
+                statements(out, forNode.getStatementsNode());
+                node(out, forNode.getNextNode().getVar());
+            }
+            else if (node instanceof ArrayNode){
+                out.writeByte(ARRAY);
+                node(out, ((ArrayNode) node).getVar());
+                nodes(out, ((ArrayNode) node).getIndices());
+            }
+            else if (node instanceof DimNode){
+                out.writeByte(DIM);
+                nodes(out, ((DimNode) node).getArrays());
+            }
+            else if (node instanceof MatNode){
+                MatNode mat = (MatNode) node;
+                out.writeByte(MAT);
+                out.writeByte(mat.getOperation().ordinal());
+                node(out, mat.getTarget());
+                optional(out, mat.getLeft());
+                optional(out, mat.getRight());
+                optional(out, mat.getScalar());
+            }
+            else if (node instanceof WhileNode){
+                out.writeByte(WHILE);
+                node(out, ((WhileNode) node).getCondition());
+                statements(out, ((WhileNode) node).getStatementsNode());
+            }
+            else if (node instanceof GoSubNode){
+                GoSubNode goSub = (GoSubNode) node;
+                out.writeByte(GOSUB);
+                out.writeInt(string(goSub.getLabel()));
+                out.writeInt(goSub.getSymbol());
+                out.writeInt(target(goSub.getTarget()));
+            }
+            else if (node instanceof ReturnNode)
+                out.writeByte(RETURN);
+            else if (node instanceof RestoreNode){
+                RestoreNode restore = (RestoreNode) node;
+                out.writeByte(RESTORE);
+                out.writeInt(string(restore.getLabel()));
+                out.writeInt(restore.getSymbol());
+                out.writeInt(target(restore.getTarget()));
+                out.writeInt(restore.getPosition());
+            }
+            else if (node instanceof IntegerNode){
+                out.writeByte(INTEGER);
+                out.writeInt(((IntegerNode) node).getInteger());
+            }
+            else if (node instanceof FloatNode){
+                out.writeByte(FLOAT);
+                out.writeFloat(((FloatNode) node).getFloat());
+            }
+            else if (node instanceof StringNode){
+                out.writeByte(STRING);
+                out.writeInt(string(((StringNode) node).getString()));
+            }
+            else if (node instanceof VariableNode){
+                out.writeByte(VARIABLE);
+                out.writeInt(string(((VariableNode) node).getName()));
+                out.writeInt(((VariableNode) node).getSymbol());
+            }
+            else if (node instanceof MathOpNode){
+                MathOpNode op = (MathOpNode) node;
+                out.writeByte(MATH);
+                out.writeByte(op.getOperation().ordinal());
+                node(out, op.getLeft());
+                node(out, op.getRight());
+            }
+            else if (node instanceof ConcatNode){
+                out.writeByte(CONCAT);
+                node(out, ((ConcatNode) node).getLeft());
+                node(out, ((ConcatNode) node).getRight());
+            }
+            else if (node instanceof FunctionNode){
+                out.writeByte(FUNCTION);
+                out.writeByte(((FunctionNode) node).getFunction().ordinal());
+                nodes(out, ((FunctionNode) node).getParams());
+            }
+            else if (node instanceof BooleanOperationNode){
+                BooleanOperationNode op = (BooleanOperationNode) node;
+                out.writeByte(BOOLEAN);
+                out.writeByte(op.getOperator().ordinal());
+                node(out, op.getLeft());
+                node(out, op.getRight());
+            }
+            else throw new Exception("Node '" + node + "' cannot be stored in a program image.");
+        }
+    }
+
+    /**
+     * Reads a linked tree from a mapped image, then binds its jumps and
+     * next statements.
+     */
+    private static final class Reader {
+
+        private static final TokenType[] tokenTypes = TokenType.values();
+        private static final MathOpNode.Operation[] operations = MathOpNode.Operation.values();
+        private static final BooleanOperationNode.Operator[] operators = BooleanOperationNode.Operator.values();
+        private static final MatNode.Operation[] matOperations = MatNode.Operation.values();
+
+        private final ByteBuffer in;
+        private String[] strings;
+        private StatementNode[] statements;
+        private int statementCount = 0;
+
+        // nodes whose jumps are bound once every statement is read, and the statements they jump to
+        private final ArrayList<StatementNode> jumps = new ArrayList<>();
+        private final ArrayList<Integer> targets = new ArrayList<>();
+
+        // stands in for statements that left the tree, as the removed statement did
+        private final StatementNode detached = new DataNode(new ArrayList<>());
+
+        /**
+         * Constructor.
+         * @param in image positioned after the hash.
+         */
+        Reader(ByteBuffer in){
+            this.in = in;
+        }
+
+        /**
+         * Helper fn that reads a pooled string.
+         * @return string, or null.
+         */
+        private String string(){
+            int index = in.getInt();
+            return index < 0 ? null : strings[index];
+        }
+
+        /**
+         * Helper fn that gets a statement by index.
+         * @param index statement index.
+         * @return statement, or null.
+         * @throws Exception when index is out of range.
+         */
+        private StatementNode statement(int index) throws Exception{
+            if (index == -1) return null;
+            if (index == DETACHED) return detached;
+            if (index < 0 || index >= statementCount) throw new Exception("Bad statement index " + index + ".");
+            return statements[index];
+        }
+
+        /**
+         * Reads the image.
+         * @return image.
+         * @throws Exception when image is malformed.
+         */
+        ProgramImage read() throws Exception{
+            strings = new String[in.getInt()];
+            for (int i = 0; i < strings.length; i++){
+                byte[] bytes = new byte[in.getInt()];
+                in.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            ArrayList<String> errors = new ArrayList<>();
+            for (int count = in.getInt(); count > 0; count--) errors.add(string());
+            String[] slotNames = new String[in.getInt()];
+            for (int i = 0; i < slotNames.length; i++) slotNames[i] = string();
+            int[] labels = new int[in.getInt()];
+            for (int i = 0; i < labels.length; i++) labels[i] = in.getInt();
+            DataSegment data = DataSegment.read(in);
+            statements = new StatementNode[in.getInt()];
+            StatementsNode top = statements();
+
+            // bind jumps and labels now every statement exists
+            for (int i = 0; i < jumps.size(); i++){
+                StatementNode jump = jumps.get(i);
+                StatementNode target = statement(targets.get(i));
+                if (jump instanceof IfNode) ((IfNode) jump).setTarget(target);
+                else if (jump instanceof GoSubNode) ((GoSubNode) jump).setTarget(target);
+                else ((RestoreNode) jump).setTarget(target);
+            }
+            StatementNode[] labelTargets = new StatementNode[labels.length];
+            for (int i = 0; i < labels.length; i++) labelTargets[i] = statement(labels[i]);
+            return new ProgramImage(top, labelTargets, slotNames, data, errors);
+        }
+
+        /**
+         * Helper fn that reads a list of statements, setting each one's next statement.
+         * @return statements.
+         * @throws Exception when image is malformed.
+         */
+        private StatementsNode statements() throws Exception{
+            StatementsNode node = new StatementsNode();
+            int count = in.getInt();
+            StatementNode previous = null;
+            for (int i = 0; i < count; i++){
+                if (statementCount == statements.length) throw new Exception("Too many statements.");
+                // number statement before reading any it holds, as the writer did
+                int index = statementCount++;
+                StatementNode statement = (StatementNode) node();
+                statements[index] = statement;
+                node.addNode(statement);
+                if (previous != null) previous.setNextStatement(statement);
+                previous = statement;
+            }
+            return node;
+        }
+
+        /**
+         * Helper fn that reads a list of nodes.
+         * @param <T> type of nodes.
+         * @param type class of nodes.
+         * @return nodes.
+         * @throws Exception when image is malformed.
+         */
+        private <T extends Node> ArrayList<T> nodes(Class<T> type) throws Exception{
+            int count = in.getInt();
+            ArrayList<T> nodes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) nodes.add(type.cast(node()));
+            return nodes;
+        }
+
+        /**
+         * Helper fn that records a jump to bind once every statement is read.
+         * @param jump node that jumps.
+         * @return node that jumps.
+         */
+        private StatementNode jump(StatementNode jump){
+            jumps.add(jump);
+            targets.add(in.getInt());
+            return jump;
+        }
+
+        /**
+         * Helper fn that reads a node written after a flag saying whether it is there.
+         * @return node, or null.
+         * @throws Exception when image is malformed.
+         */
+        private Node optional() throws Exception{
+            return in.get() != 0 ? node() : null;
+        }
+
+        /**
+         * Helper fn that reads a node.
+         * @return node.
+         * @throws Exception when image is malformed.
+         */
+        private Node node() throws Exception{
+            byte kind = in.get();
+            switch (kind){
+                case ASSIGNMENT: {
+                    Node target = node();
+                    Node value = node();
+                    return target instanceof ArrayNode ? new AssignmentNode((ArrayNode) target, value)
+                            : new AssignmentNode((VariableNode) target, value);
+                }
+                case ARRAY:
+                    return new ArrayNode((VariableNode) node(), nodes(Node.class));
+                case DIM:
+                    return new DimNode(nodes(ArrayNode.class));
+                case MAT: {
+                    MatNode.Operation operation = matOperations[in.get()];
+                    VariableNode target = (VariableNode) node();
+                    VariableNode left = (VariableNode) optional();
+                    VariableNode right = (VariableNode) optional();
+                    return new MatNode(operation, target, left, right, optional());
+                }
+                case PRINT:
+                    return new PrintNode(nodes(Node.class));
+                case READ:
+                    return new ReadNode(nodes(VariableNode.class));
+                case INPUT:
+                    return new InputNode(nodes(Node.class));
+                case IF: {
+                    IfNode ifNode = new IfNode((BooleanOperationNode) node(), (VariableNode) node());
+                    ifNode.setAlwaysTaken(in.get() != 0);
+                    return jump(ifNode);
+                }
+                case FOR: {
+                    VariableNode var = (VariableNode) node();
+                    Node start = node();
+                    Node stop = node();
+                    Node step = node();
+                    boolean parallel = in.get() != 0;
+                    StatementsNode body = statements();
+                    NextNode next = new NextNode((VariableNode) node());
+                    return new ForNode(var, start, stop, step, body, next, parallel);
+                }
+                case WHILE:
+                    return new WhileNode((BooleanOperationNode) node(), statements());
+                case GOSUB:
+                    return jump(new GoSubNode(string(), in.getInt()));
+                case RETURN:
+                    return new ReturnNode();
+                case RESTORE: {
+                    RestoreNode restore = (RestoreNode) jump(new RestoreNode(string(), in.getInt()));
+                    restore.setPosition(in.getInt());
+                    return restore;
+                }
+                case INTEGER:
+                    return new IntegerNode(in.getInt());
+                case FLOAT:
+                    return new FloatNode(in.getFloat());
+                case STRING:
+                    return new StringNode(string());
+                case VARIABLE:
+                    return new VariableNode(string(), in.getInt());
+                case MATH: {
+                    MathOpNode.Operation operation = operations[in.get()];
+                    return new MathOpNode(operation, node(), node());
+                }
+                case CONCAT:
+                    return new ConcatNode(node(), node());
+                case FUNCTION: {
+                    TokenType function = tokenTypes[in.get()];
+                    return new FunctionNode(nodes(Node.class), function);
+                }
+                case BOOLEAN: {
+                    BooleanOperationNode.Operator operator = operators[in.get()];
+                    return new BooleanOperationNode(node(), node(), operator);
+                }
+                default:
+                    throw new Exception("Bad node kind " + kind + ".");
+            }
+        }
+    }
+}
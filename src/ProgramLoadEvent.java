@@ -0,0 +1,41 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event spanning the load of a program, from reading the source or
+ * program image to a linked tree, with the time each stage took.
+ */
+@Name("basic.ProgramLoad")
+@Label("Program Load")
+@Category("BASIC")
+@Description("Lexing, parsing and linking of a program")
+@StackTrace(false)
+public class ProgramLoadEvent extends jdk.jfr.Event {
+
+    @Label("Source")
+    public String source;
+
+    @Label("From Program Image")
+    @Description("Loaded from a cached program image instead of the source")
+    public boolean cached;
+
+    @Label("Lex Time")
+    @Description("Time lexing took, overlapping parsing when the source is streamed")
+    @Timespan(Timespan.NANOSECONDS)
+    public long lexTime;
+
+    @Label("Parse Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long parseTime;
+
+    @Label("Link Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long linkTime;
+
+    @Label("Statements")
+    public int statements;
+}
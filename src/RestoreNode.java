@@ -0,0 +1,85 @@
+/**
+ * Node that moves the data cursor back to the start of the data,
+ * or to the first datum at or after a label.
+ */
+public class RestoreNode extends StatementNode {
+
+    private final String label;
+    private final int symbol;
+    private StatementNode target;
+    private int position = 0;
+
+    /**
+     * Constructor for RESTORE without a label.
+     */
+    public RestoreNode(){
+        this(null, -1);
+    }
+
+    /**
+     * Constructor.
+     * @param label to restore to.
+     * @param symbol ID of label in symbol table.
+     */
+    public RestoreNode(String label, int symbol){
+        this.label = label;
+        this.symbol = symbol;
+    }
+
+    /**
+     * Getter for label.
+     * @return label, or null to restore to the start.
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Getter for symbol ID of label.
+     * @return ID of label in symbol table, or -1 if none.
+     */
+    public int getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * Getter for labeled statement, resolved at link time.
+     * @return target statement, or null if no label.
+     */
+    public StatementNode getTarget() {
+        return target;
+    }
+
+    /**
+     * Setter for labeled statement.
+     * @param target target statement.
+     */
+    public void setTarget(StatementNode target) {
+        this.target = target;
+    }
+
+    /**
+     * Getter for position in data segment, resolved at link time.
+     * @return index of next datum to read after restoring.
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Setter for position in data segment.
+     * @param position index of next datum to read.
+     */
+    public void setPosition(int position) {
+        this.position = position;
+    }
+
+    /**
+     * Make a string representation of the node.
+     * @return string representation of the node.
+     */
+    @Override
+    public String toString() {
+        return label == null ? "Restore" : "Restore: \"" + label + '\"';
+    }
+}
@@ -0,0 +1,23 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JFR event for a statement that took longer than the threshold, 20 ms
+ * unless the recording sets basic.SlowStatement#threshold. FOR loops and
+ * subroutine calls have events of their own.
+ */
+@Name("basic.SlowStatement")
+@Label("Slow Statement")
+@Category("BASIC")
+@Description("Statement that ran longer than the threshold")
+@Threshold("20 ms")
+@StackTrace(false)
+public class SlowStatementEvent extends jdk.jfr.Event {
+
+    @Label("Statement")
+    public String statement;
+}
@@ -0,0 +1,37 @@
+import java.io.PrintStream;
+
+/**
+ * Output sink that writes to a print stream, such as standard output.
+ */
+public class StreamOutputSink extends OutputSink {
+
+    private final PrintStream stream;
+
+    /**
+     * Constructor.
+     * @param stream stream to write to; it is flushed but never closed.
+     * @param raw true to print items without header and tabs.
+     * @param policy when to flush.
+     */
+    public StreamOutputSink(PrintStream stream, boolean raw, FlushPolicy policy){
+        super(raw, policy);
+        this.stream = stream;
+    }
+
+    /**
+     * Writes text to the stream.
+     * @param text text to write.
+     */
+    @Override
+    protected void write(String text){
+        stream.print(text);
+    }
+
+    /**
+     * Flushes the stream.
+     */
+    @Override
+    public void flush(){
+        stream.flush();
+    }
+}
@@ -3,30 +3,51 @@
  */
 public class StringNode extends Node {
 
-    private final String string;
+    private final BasicString value;
+
+    // java string of value, made when first asked for
+    private String string;
 
     /**
      * Constructor.
      * @param string payload of node.
      */
     public StringNode(String string){
+        this.value = BasicString.of(string);
         this.string = string;
     }
 
+    /**
+     * Constructor.
+     * @param value payload of node.
+     */
+    public StringNode(BasicString value){
+        this.value = value;
+    }
+
     /**
      * Accessor for string member.
      * @return member string.
      */
     public String getString() {
+        if (string == null) string = value.toString();
         return this.string;
     }
 
+    /**
+     * Accessor for value member, as the interpreter stores it.
+     * @return member value.
+     */
+    public BasicString getValue() {
+        return value;
+    }
+
     /**
      * Get string representation of node.
      * @return string representation of node.
      */
     @Override
     public String toString() {
-        return "String: \"" + this.string + "\"";
+        return "String: \"" + getString() + "\"";
     }
 }
@@ -0,0 +1,113 @@
+import java.util.Arrays;
+
+/**
+ * Program-wide table of identifier and label names. Each distinct name is
+ * stored once and given a small int ID, so nodes can carry IDs and the
+ * interpreter can index by them. Names are interned straight from source
+ * text without building a string unless the name is new. The lexer thread
+ * interns while the parser thread reads, so access is synchronized.
+ */
+public class SymbolTable {
+
+    // open addressing table of ID + 1 per bucket, 0 when empty
+    private int[] buckets = new int[256];
+    private String[] names = new String[128];
+    private int[] hashes = new int[128];
+    private int count = 0;
+
+    /**
+     * Helper fn that hashes part of a char sequence like String.hashCode.
+     * @param text text holding name.
+     * @param offset offset of name.
+     * @param length length of name.
+     * @return hash of name.
+     */
+    private static int hash(CharSequence text, int offset, int length){
+        int hash = 0;
+        for (int i = 0; i < length; i++) hash = 31 * hash + text.charAt(offset + i);
+        return hash;
+    }
+
+    /**
+     * Helper fn that compares a stored name with part of a char sequence.
+     * @param name stored name.
+     * @param text text holding name.
+     * @param offset offset of name.
+     * @param length length of name.
+     * @return true if equal.
+     */
+    private static boolean same(String name, CharSequence text, int offset, int length){
+        if (name.length() != length) return false;
+        for (int i = 0; i < length; i++)
+            if (name.charAt(i) != text.charAt(offset + i)) return false;
+        return true;
+    }
+
+    /**
+     * Helper fn that doubles the bucket table and rehashes.
+     */
+    private void grow(){
+        buckets = new int[buckets.length * 2];
+        int mask = buckets.length - 1;
+        for (int id = 0; id < count; id++){
+            int bucket = hashes[id] & mask;
+            while (buckets[bucket] != 0) bucket = (bucket + 1) & mask;
+            buckets[bucket] = id + 1;
+        }
+    }
+
+    /**
+     * Gets the ID of a name within source text, adding it if new.
+     * @param text text holding name.
+     * @param offset offset of name.
+     * @param length length of name.
+     * @return ID of name.
+     */
+    public synchronized int intern(CharSequence text, int offset, int length){
+        int hash = hash(text, offset, length);
+        int mask = buckets.length - 1;
+        int bucket = hash & mask;
+        while (buckets[bucket] != 0){
+            int id = buckets[bucket] - 1;
+            if (hashes[id] == hash && same(names[id], text, offset, length)) return id;
+            bucket = (bucket + 1) & mask;
+        }
+        // add new name, keeping table at most half full
+        if (count == names.length){
+            names = Arrays.copyOf(names, count * 2);
+            hashes = Arrays.copyOf(hashes, count * 2);
+        }
+        int id = count++;
+        names[id] = text.subSequence(offset, offset + length).toString();
+        hashes[id] = hash;
+        buckets[bucket] = id + 1;
+        if (count * 2 > buckets.length) grow();
+        return id;
+    }
+
+    /**
+     * Gets the ID of a name, adding it if new.
+     * @param name name.
+     * @return ID of name.
+     */
+    public int intern(String name){
+        return intern(name, 0, name.length());
+    }
+
+    /**
+     * Get name of an ID.
+     * @param id ID of name.
+     * @return name.
+     */
+    public synchronized String name(int id) {
+        return names[id];
+    }
+
+    /**
+     * Get number of names.
+     * @return number of names.
+     */
+    public synchronized int size() {
+        return count;
+    }
+}
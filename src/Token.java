@@ -6,10 +6,16 @@ public class Token {
 
     private final TokenType tokenType;
     private final String value;
+    private final int symbol;
 
-    public Token(TokenType tokenType, String string){
+    public Token(TokenType tokenType, String string, int symbol){
         this.tokenType = tokenType;
         this.value = string;
+        this.symbol = symbol;
+    }
+
+    public Token(TokenType tokenType, String string){
+        this(tokenType, string, -1);
     }
 
     public Token(TokenType tokenType){
@@ -32,6 +38,14 @@ public class Token {
         return value;
     }
 
+    /**
+     * Getter for symbol ID of identifier or label token.
+     * @return ID in symbol table of lexer, or -1 if none.
+     */
+    public int getSymbol() {
+        return symbol;
+    }
+
     /**
      * This method provides a string representation of the token.
      * @return string representation of the token.
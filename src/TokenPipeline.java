@@ -0,0 +1,215 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Lexes a memory-mapped source file on a background thread and hands the
+ * packed tokens to the parser in batches through a bounded queue, so lexing and
+ * parsing overlap and only a few batches are held in memory at once.
+ */
+public class TokenPipeline implements TokenSource, AutoCloseable {
+
+    // tokens per batch and batches in flight
+    static final int BATCH_SIZE = 1024;
+    private static final int QUEUE_CAPACITY = 16;
+
+    // batch marking end of source
+    private static final Lexer END = new Lexer();
+
+    private final MappedByteBuffer source;
+    private final SymbolTable symbols = new SymbolTable();
+    private final BlockingQueue<Lexer> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread lexer;
+    private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+    private volatile Exception failure;
+    // nanoTime lexing started, and how long it took once done
+    private final long started = System.nanoTime();
+    private volatile long lexNanos = -1;
+    private boolean finished = false;
+
+    /**
+     * Read-only view of ASCII bytes of the mapped source, so lines are lexed
+     * without being copied into strings.
+     */
+    static final class AsciiLine implements CharSequence {
+
+        private final MappedByteBuffer buffer;
+        private final int start;
+        private final int length;
+
+        /**
+         * Constructor.
+         * @param buffer mapped source.
+         * @param start offset of first byte.
+         * @param length number of bytes.
+         */
+        AsciiLine(MappedByteBuffer buffer, int start, int length){
+            this.buffer = buffer;
+            this.start = start;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) buffer.get(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return new AsciiLine(buffer, start + from, to - from);
+        }
+
+        @Override
+        public String toString() {
+            byte[] bytes = new byte[length];
+            buffer.get(start, bytes);
+            return new String(bytes, StandardCharsets.US_ASCII);
+        }
+    }
+
+    /**
+     * Constructor, mapping the file and starting the lexer thread.
+     * @param path source file.
+     * @throws IOException when file cannot be read or is too large to map.
+     */
+    public TokenPipeline(Path path) throws IOException{
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Source file too large to map.");
+            source = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        lexer = new Thread(this::lexAll, "basic-lexer");
+        lexer.setDaemon(true);
+        lexer.start();
+    }
+
+    /**
+     * Body of lexer thread, lexing line by line into packed batches.
+     */
+    private void lexAll(){
+        try {
+            int limit = source.limit();
+            CharSequence text = new AsciiLine(source, 0, limit);
+            Lexer batch = new Lexer(text, symbols);
+            int start = 0;
+            while (start < limit){
+                // find end of line, accepting \n, \r and \r\n, and note bytes beyond ascii
+                int end = start;
+                boolean ascii = true;
+                byte b;
+                while (end < limit && (b = source.get(end)) != '\n' && b != '\r'){
+                    if (b < 0) ascii = false;
+                    end++;
+                }
+                // lex line, reporting errors and moving on as the line reader did
+                try {
+                    if (ascii) batch.lexLine(start, end);
+                    else {
+                        // decode line as UTF-8 and send it as a batch of its own
+                        if (batch.size() > 0){
+                            queue.put(batch);
+                            batch = new Lexer(text, symbols);
+                        }
+                        byte[] bytes = new byte[end - start];
+                        source.get(start, bytes);
+                        String line = new String(bytes, StandardCharsets.UTF_8);
+                        Lexer decoded = new Lexer(line, symbols);
+                        decoded.lexLine(0, line.length());
+                        queue.put(decoded);
+                    }
+                } catch (InterruptedException e){
+                    throw e;
+                } catch (Exception e){
+                    System.out.println("Error: " + e.getMessage());
+                    errors.add(e.getMessage());
+                }
+                if (batch.size() >= BATCH_SIZE){
+                    queue.put(batch);
+                    batch = new Lexer(text, symbols);
+                }
+                // skip line terminator
+                if (end < limit && source.get(end) == '\r') end++;
+                if (end < limit && source.get(end) == '\n') end++;
+                start = end;
+            }
+            if (batch.size() > 0) queue.put(batch);
+            lexNanos = System.nanoTime() - started;
+            queue.put(END);
+        } catch (InterruptedException e){
+            // pipeline was closed early
+        } catch (RuntimeException e){
+            failure = e;
+            try {
+                queue.put(END);
+            } catch (InterruptedException ignored){
+                // pipeline was closed early
+            }
+        }
+    }
+
+    /**
+     * Get symbol table identifiers and labels are interned in.
+     * @return symbol table.
+     */
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * Get time the lexer thread took, including waits for the parser to
+     * take batches.
+     * @return nanoseconds lexing took, or has taken so far if not done.
+     */
+    public long getLexNanos() {
+        long nanos = lexNanos;
+        return nanos >= 0 ? nanos : System.nanoTime() - started;
+    }
+
+    /**
+     * Get messages of lexing errors reported so far.
+     * @return error messages in source order.
+     */
+    public List<String> getErrors() {
+        synchronized (errors){
+            return new ArrayList<>(errors);
+        }
+    }
+
+    /**
+     * Takes the next batch of tokens, waiting for the lexer if needed.
+     * @return lexer holding batch of tokens, or null at end of source.
+     * @throws Exception when lexer thread failed.
+     */
+    @Override
+    public Lexer next() throws Exception{
+        if (finished) return null;
+        Lexer batch = queue.take();
+        if (batch == END){
+            finished = true;
+            if (failure != null) throw new Exception("Lexing failed: " + failure.getMessage(), failure);
+            return null;
+        }
+        return batch;
+    }
+
+    /**
+     * Stops the lexer thread if it is still running.
+     */
+    @Override
+    public void close() {
+        lexer.interrupt();
+    }
+}
@@ -0,0 +1,12 @@
+/**
+ * Source of packed token batches for a token stream.
+ */
+public interface TokenSource {
+
+    /**
+     * Takes the next batch of tokens.
+     * @return lexer holding batch of tokens, or null at end of source.
+     * @throws Exception when lexing failed.
+     */
+    Lexer next() throws Exception;
+}
@@ -0,0 +1,180 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stream of tokens for the parser, read through an index cursor with
+ * lookahead and a mark to return to. Tokens come from a list or, batch
+ * by batch, from a token source; batched tokens only become Token objects
+ * when the parser takes them, and consumed tokens are dropped once no
+ * mark needs them.
+ */
+public class TokenStream {
+
+    // token types, tokens once made, and the batch and index to make them from
+    private TokenType[] types;
+    private Token[] tokens;
+    private Lexer[] batches;
+    private int[] indices;
+    private int size;
+    private int cursor = 0;
+    private int mark = -1;
+    private TokenSource source;
+
+    /**
+     * Constructor.
+     * @param tokens list of tokens.
+     */
+    public TokenStream(List<Token> tokens){
+        this.tokens = tokens.toArray(new Token[0]);
+        this.size = this.tokens.length;
+        this.types = new TokenType[size];
+        for (int i = 0; i < size; i++) types[i] = this.tokens[i].getTokenType();
+    }
+
+    /**
+     * Constructor that reads tokens batch by batch as the source produces them.
+     * @param source source of token batches.
+     */
+    public TokenStream(TokenSource source){
+        this.types = new TokenType[4096];
+        this.tokens = new Token[4096];
+        this.batches = new Lexer[4096];
+        this.indices = new int[4096];
+        this.size = 0;
+        this.source = source;
+    }
+
+    /**
+     * Helper fn that pulls batches from the source until the buffer holds
+     * the token k places past the cursor.
+     * @param k distance from cursor.
+     * @return true if that token exists.
+     * @throws Exception when lexing failed.
+     */
+    private boolean fill(int k) throws Exception{
+        while (cursor + k >= size && source != null){
+            Lexer batch = source.next();
+            if (batch == null){
+                source = null;
+                break;
+            }
+            // drop consumed tokens no mark needs, then grow if still short
+            int keep = mark >= 0 ? mark : cursor;
+            if (keep > 0){
+                int remaining = size - keep;
+                System.arraycopy(types, keep, types, 0, remaining);
+                System.arraycopy(tokens, keep, tokens, 0, remaining);
+                System.arraycopy(batches, keep, batches, 0, remaining);
+                System.arraycopy(indices, keep, indices, 0, remaining);
+                Arrays.fill(tokens, remaining, size, null);
+                Arrays.fill(batches, remaining, size, null);
+                size = remaining;
+                cursor -= keep;
+                if (mark >= 0) mark -= keep;
+            }
+            int needed = size + batch.size();
+            if (needed > types.length){
+                int capacity = Math.max(types.length * 2, needed);
+                types = Arrays.copyOf(types, capacity);
+                tokens = Arrays.copyOf(tokens, capacity);
+                batches = Arrays.copyOf(batches, capacity);
+                indices = Arrays.copyOf(indices, capacity);
+            }
+            for (int i = 0; i < batch.size(); i++){
+                types[size] = batch.typeAt(i);
+                batches[size] = batch;
+                indices[size] = i;
+                size++;
+            }
+        }
+        return cursor + k < size;
+    }
+
+    /**
+     * Helper fn that gets a buffered token, making it if needed.
+     * @param at position in buffer.
+     * @return token.
+     */
+    private Token get(int at){
+        if (tokens[at] == null){
+            tokens[at] = batches[at].tokenAt(indices[at]);
+            batches[at] = null;
+        }
+        return tokens[at];
+    }
+
+    /**
+     * Looks at a token without consuming it.
+     * @param k distance from cursor, 0 for the next token.
+     * @return token, or null past the end.
+     * @throws Exception when lexing failed.
+     */
+    public Token peek(int k) throws Exception{
+        return fill(k) ? get(cursor + k) : null;
+    }
+
+    /**
+     * Checks whether a token has the given type, without consuming it.
+     * @param k distance from cursor, 0 for the next token.
+     * @param type type to check for.
+     * @return true if token exists and has the type.
+     * @throws Exception when lexing failed.
+     */
+    public boolean check(int k, TokenType type) throws Exception{
+        return fill(k) && types[cursor + k] == type;
+    }
+
+    /**
+     * Consumes the next token if it has the given type.
+     * @param type type to match.
+     * @return token if matching, otherwise null.
+     * @throws Exception when lexing failed.
+     */
+    public Token match(TokenType type) throws Exception{
+        return check(0, type) ? get(cursor++) : null;
+    }
+
+    /**
+     * Replaces the next token, for when the parser reads one token as two.
+     * @param token replacement.
+     * @throws Exception when there is no next token.
+     */
+    public void replace(Token token) throws Exception{
+        if (!fill(0)) throw new Exception("No token to replace.");
+        types[cursor] = token.getTokenType();
+        tokens[cursor] = token;
+    }
+
+    /**
+     * Check whether any tokens remain.
+     * @return true if at least one token remains.
+     * @throws Exception when lexing failed.
+     */
+    public boolean hasNext() throws Exception{
+        return fill(0);
+    }
+
+    /**
+     * Remembers the cursor so it can be reset to; replaces an earlier mark.
+     */
+    public void mark() {
+        mark = cursor;
+    }
+
+    /**
+     * Moves the cursor back to the mark and clears it.
+     * @throws Exception when there is no mark.
+     */
+    public void reset() throws Exception{
+        if (mark < 0) throw new Exception("Token stream reset without mark.");
+        cursor = mark;
+        mark = -1;
+    }
+
+    /**
+     * Clears the mark, keeping the cursor where it is.
+     */
+    public void unmark() {
+        mark = -1;
+    }
+}
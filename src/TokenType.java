@@ -26,10 +26,16 @@ public enum TokenType {
     DATA,
     GOSUB,
     RETURN,
+    RESTORE,
+    PARALLEL,
     FOR,
     NEXT,
     STEP,
     TO,
+    WHILE,
+    WEND,
+    DIM,
+    MAT,
     IF,
     THEN,
     FN_RANDOM,
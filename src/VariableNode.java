@@ -4,13 +4,16 @@
 public class VariableNode extends Node {
 
     private final String name;
+    private final int symbol;
 
     /**
      * Constructor
      * @param name of variable.
+     * @param symbol ID of name in symbol table.
      */
-    public VariableNode(String name){
+    public VariableNode(String name, int symbol){
         this.name = name;
+        this.symbol = symbol;
     }
 
     /**
@@ -21,6 +24,14 @@ public class VariableNode extends Node {
         return name;
     }
 
+    /**
+     * Getter for symbol ID, which is also the variable's storage slot.
+     * @return ID of name in symbol table.
+     */
+    public int getSymbol() {
+        return symbol;
+    }
+
     /**
      * Get string representation of variable.
      * @return string representation of variable.
@@ -0,0 +1,342 @@
+import java.io.IOException;
+import java.util.Scanner;
+
+/**
+ * Virtual machine that executes compiled bytecode with a switch dispatch loop.
+ */
+public class VirtualMachine {
+
+    // program to run
+    private final Bytecode bytecode;
+
+    // variable stores, indexed by slot
+    private final int[] intStore;
+    private final float[] floatStore;
+    private final String[] stringStore;
+    private final boolean[] intSet;
+    private final boolean[] floatSet;
+
+    // data cursor, input scanner and output sink
+    private int dataIndex = 0;
+    private Scanner in;
+    private final OutputSink out;
+
+    /**
+     * Constructor, printing to standard output.
+     * @param bytecode program to run.
+     */
+    public VirtualMachine(Bytecode bytecode){
+        this(bytecode, new StreamOutputSink(System.out, false, OutputSink.FlushPolicy.LINE));
+    }
+
+    /**
+     * Constructor.
+     * @param bytecode program to run.
+     * @param out sink for program output; flushed, not closed, after running.
+     */
+    public VirtualMachine(Bytecode bytecode, OutputSink out){
+        this.bytecode = bytecode;
+        this.out = out;
+        int slots = bytecode.getSlotNames().length;
+        intStore = new int[slots];
+        floatStore = new float[slots];
+        stringStore = new String[slots];
+        intSet = new boolean[slots];
+        floatSet = new boolean[slots];
+    }
+
+    /**
+     * Helper fn that evaluates a function to a number.
+     * @param node function node.
+     * @return numeric result.
+     * @throws Exception when function does not return a number.
+     */
+    private static float call(FunctionNode node) throws Exception{
+        Node result = Interpreter.function(node);
+        if (result instanceof IntegerNode) return ((IntegerNode) result).getInteger();
+        if (result instanceof FloatNode) return ((FloatNode) result).getFloat();
+        throw new Exception("Function does not return numeric type.");
+    }
+
+    /**
+     * Helper fn that prints a function result.
+     * @param node function node.
+     * @throws Exception on invalid syntax.
+     */
+    private void printCall(FunctionNode node) throws Exception{
+        Node result = Interpreter.function(node);
+        if (result instanceof StringNode)
+            out.printItem(((StringNode) result).getString());
+        else if (result instanceof IntegerNode)
+            out.printItem(String.valueOf(((IntegerNode) result).getInteger()));
+        else if (result instanceof FloatNode)
+            out.printItem(String.valueOf(((FloatNode) result).getFloat()));
+        else {
+            if (!out.isRaw()) out.print("\t");
+            out.print(String.valueOf(result));
+        }
+    }
+
+    /**
+     * Helper fn that reads the next datum into a variable.
+     * @param slot slot of variable.
+     * @throws Exception when datum is missing.
+     */
+    private void read(int slot) throws Exception{
+        DataSegment data = bytecode.getData();
+        switch (data.tagAt(dataIndex)){
+            case DataSegment.INT:
+                intStore[slot] = data.intAt(dataIndex++);
+                intSet[slot] = true;
+                break;
+            case DataSegment.FLOAT:
+                floatStore[slot] = data.floatAt(dataIndex++);
+                floatSet[slot] = true;
+                break;
+            case DataSegment.STRING:
+                stringStore[slot] = data.stringAt(dataIndex++);
+                break;
+            default:
+                throw new Exception("Node '" + bytecode.getSlotNames()[slot] + "' is of unsupported type.");
+        }
+    }
+
+    /**
+     * Helper fn that prints a variable.
+     * @param slot slot of variable.
+     * @throws IOException when output fails.
+     */
+    private void printVar(int slot) throws IOException{
+        if (intSet[slot])
+            out.printItem(String.valueOf(intStore[slot]));
+        else if (floatSet[slot])
+            out.printItem(String.valueOf(floatStore[slot]));
+        else if (stringStore[slot] != null)
+            out.printItem(stringStore[slot]);
+        else {
+            if (!out.isRaw()) out.print("\t");
+            System.err.println("Variable '" + bytecode.getSlotNames()[slot] + "' does not exist.");
+        }
+    }
+
+    /**
+     * Helper fn that reads a line of input into a variable.
+     * @param slot slot of variable.
+     * @throws IOException when output fails.
+     */
+    private void input(int slot) throws IOException{
+        if (in == null) in = new Scanner(System.in);
+        out.print(bytecode.getSlotNames()[slot] + ": ");
+        out.flush();
+        stringStore[slot] = in.nextLine();
+        out.print("\n");
+    }
+
+    /**
+     * Runs the program until it halts, then flushes output.
+     * @throws Exception on runtime error.
+     */
+    public void run() throws Exception{
+        try {
+            dispatch();
+        } finally {
+            out.flush();
+        }
+    }
+
+    /**
+     * Dispatch loop that executes instructions until HALT.
+     * @throws Exception on runtime error.
+     */
+    private void dispatch() throws Exception{
+
+        // cache program arrays in locals
+        final int[] code = bytecode.getCode();
+        final float[] floats = bytecode.getFloats();
+        final String[] strings = bytecode.getStrings();
+        final FunctionNode[] functions = bytecode.getFunctions();
+        final int[] intStore = this.intStore;
+        final float[] floatStore = this.floatStore;
+        final boolean[] intSet = this.intSet;
+        final boolean[] floatSet = this.floatSet;
+
+        // machine state
+        final float[] stack = new float[Math.max(bytecode.getMaxStack(), 1)];
+        final double[] loopStart = new double[bytecode.getLoopCount()];
+        final double[] loopStep = new double[bytecode.getLoopCount()];
+        final long[] loopTrips = new long[bytecode.getLoopCount()];
+        final long[] loopIndex = new long[bytecode.getLoopCount()];
+        int[] returns = new int[16];
+        int sp = 0;
+        int rsp = 0;
+        int pc = 0;
+        int slot;
+        int loop;
+
+        // dispatch loop
+        while (true){
+            switch (code[pc++]){
+                case Opcode.HALT:
+                    return;
+                case Opcode.JUMP:
+                    pc = code[pc];
+                    break;
+                case Opcode.GOSUB:
+                    if (rsp == returns.length) {
+                        int[] grown = new int[returns.length * 2];
+                        System.arraycopy(returns, 0, grown, 0, rsp);
+                        returns = grown;
+                    }
+                    returns[rsp++] = pc + 1;
+                    pc = code[pc];
+                    break;
+                case Opcode.RETURN:
+                    if (rsp == 0)
+                        throw new Exception("Invalid RETURN: No node exists to return to.");
+                    pc = returns[--rsp];
+                    break;
+                case Opcode.PUSH:
+                    stack[sp++] = floats[code[pc++]];
+                    break;
+                case Opcode.LOAD:
+                    slot = code[pc++];
+                    if (intSet[slot]) stack[sp++] = intStore[slot];
+                    else if (floatSet[slot]) stack[sp++] = floatStore[slot];
+                    else throw new Exception("Variable '" + bytecode.getSlotNames()[slot] + "' not found.");
+                    break;
+                case Opcode.CALL:
+                    stack[sp++] = call(functions[code[pc++]]);
+                    break;
+                case Opcode.ADD:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] + stack[sp];
+                    break;
+                case Opcode.SUBTRACT:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] - stack[sp];
+                    break;
+                case Opcode.MULTIPLY:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] * stack[sp];
+                    break;
+                case Opcode.DIVIDE:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] / stack[sp];
+                    break;
+                case Opcode.TRUNCATE:
+                    stack[sp - 1] = (int) stack[sp - 1];
+                    break;
+                case Opcode.IF_EQ:
+                    sp -= 2;
+                    pc = stack[sp] == stack[sp + 1] ? code[pc] : pc + 1;
+                    break;
+                case Opcode.IF_NE:
+                    sp -= 2;
+                    pc = stack[sp] != stack[sp + 1] ? code[pc] : pc + 1;
+                    break;
+                case Opcode.IF_GT:
+                    sp -= 2;
+                    pc = stack[sp] > stack[sp + 1] ? code[pc] : pc + 1;
+                    break;
+                case Opcode.IF_GE:
+                    sp -= 2;
+                    pc = stack[sp] >= stack[sp + 1] ? code[pc] : pc + 1;
+                    break;
+                case Opcode.IF_LT:
+                    sp -= 2;
+                    pc = stack[sp] < stack[sp + 1] ? code[pc] : pc + 1;
+                    break;
+                case Opcode.IF_LE:
+                    sp -= 2;
+                    pc = stack[sp] <= stack[sp + 1] ? code[pc] : pc + 1;
+                    break;
+                case Opcode.STORE_IMM:
+                    slot = code[pc++];
+                    intStore[slot] = code[pc++];
+                    intSet[slot] = true;
+                    break;
+                case Opcode.STORE_INT:
+                    slot = code[pc++];
+                    intStore[slot] = (int) stack[--sp];
+                    intSet[slot] = true;
+                    break;
+                case Opcode.STORE_FLOAT:
+                    slot = code[pc++];
+                    floatStore[slot] = stack[--sp];
+                    floatSet[slot] = true;
+                    break;
+                case Opcode.STORE_STRING:
+                    slot = code[pc++];
+                    stringStore[slot] = strings[code[pc++]];
+                    break;
+                case Opcode.PRINT_HEADER:
+                    out.printHeader();
+                    break;
+                case Opcode.PRINT_IMM:
+                    out.printItem(String.valueOf(code[pc++]));
+                    break;
+                case Opcode.PRINT_INT:
+                    out.printItem(String.valueOf((int) stack[--sp]));
+                    break;
+                case Opcode.PRINT_FLOAT:
+                    out.printItem(String.valueOf(stack[--sp]));
+                    break;
+                case Opcode.PRINT_STRING:
+                    out.printItem(strings[code[pc++]]);
+                    break;
+                case Opcode.PRINT_VAR:
+                    printVar(code[pc++]);
+                    break;
+                case Opcode.PRINT_CALL:
+                    printCall(functions[code[pc++]]);
+                    break;
+                case Opcode.PRINT_END:
+                    out.endStatement();
+                    break;
+                case Opcode.READ:
+                    read(code[pc++]);
+                    break;
+                case Opcode.PROMPT:
+                    out.println(strings[code[pc++]]);
+                    break;
+                case Opcode.INPUT:
+                    input(code[pc++]);
+                    break;
+                case Opcode.RESTORE:
+                    dataIndex = code[pc++];
+                    break;
+                case Opcode.FOR:
+                    loop = code[pc++];
+                    slot = code[pc++];
+                    sp -= 3;
+                    loopTrips[loop] = ForNode.trips(stack[sp], stack[sp + 1], stack[sp + 2]);
+                    if (loopTrips[loop] > 0) {
+                        loopStart[loop] = stack[sp];
+                        loopStep[loop] = stack[sp + 2];
+                        loopIndex[loop] = 0;
+                        floatStore[slot] = stack[sp];
+                        floatSet[slot] = true;
+                        pc++;
+                    } else {
+                        floatSet[slot] = false;
+                        pc = code[pc];
+                    }
+                    break;
+                case Opcode.NEXT:
+                    loop = code[pc++];
+                    slot = code[pc++];
+                    if (++loopIndex[loop] < loopTrips[loop]) {
+                        floatStore[slot] = ForNode.value(loopStart[loop], loopStep[loop], loopIndex[loop]);
+                        floatSet[slot] = true;
+                        pc = code[pc];
+                    } else {
+                        floatSet[slot] = false;
+                        pc++;
+                    }
+                    break;
+                default:
+                    throw new Exception("Invalid opcode " + code[pc - 1] + " at " + (pc - 1) + ".");
+            }
+        }
+    }
+}
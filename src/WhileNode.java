@@ -0,0 +1,56 @@
+import java.util.ArrayList;
+
+/**
+ * Node for the while loop, running its statements while a condition holds.
+ */
+public class WhileNode extends StatementNode implements NodeWithStatements {
+
+    private final BooleanOperationNode condition;
+    private final StatementsNode statements;
+
+    /**
+     * Constructor
+     * @param condition condition tested before each iteration.
+     * @param statements statements to be executed.
+     */
+    public WhileNode(BooleanOperationNode condition, StatementsNode statements){
+        this.condition = condition;
+        this.statements = statements;
+    }
+
+    /**
+     * Get condition.
+     * @return condition.
+     */
+    public BooleanOperationNode getCondition() {
+        return condition;
+    }
+
+    /**
+     * Get statement node.
+     * @return statement node.
+     */
+    public StatementsNode getStatementsNode() {
+        return statements;
+    }
+
+    /**
+     * Get statement node's statement list.
+     * @return statement node's statement list.
+     */
+    public ArrayList<StatementNode> getStatements(){
+        return statements.getStatements();
+    }
+
+    /**
+     * Get string representation of nodes.
+     * @return string representation of nodes.
+     */
+    @Override
+    public String toString() {
+        return "While: { " +
+                "condition: \"" + condition +
+                "\", statements: \"" + statements +
+                "\" }";
+    }
+}
@@ -0,0 +1,41 @@
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Output sink that writes to a character writer, such as the writer of a
+ * script context.
+ */
+public class WriterOutputSink extends OutputSink {
+
+    private final Writer writer;
+
+    /**
+     * Constructor.
+     * @param writer writer to write to; it is flushed but never closed.
+     * @param raw true to print items without header and tabs.
+     * @param policy when to flush.
+     */
+    public WriterOutputSink(Writer writer, boolean raw, FlushPolicy policy){
+        super(raw, policy);
+        this.writer = writer;
+    }
+
+    /**
+     * Writes text to the writer.
+     * @param text text to write.
+     * @throws IOException when writing fails.
+     */
+    @Override
+    protected void write(String text) throws IOException{
+        writer.write(text);
+    }
+
+    /**
+     * Flushes the writer.
+     * @throws IOException when flushing fails.
+     */
+    @Override
+    public void flush() throws IOException{
+        writer.flush();
+    }
+}
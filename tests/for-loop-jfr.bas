@@ -0,0 +1,8 @@
+FOR i = 0 TO 3
+PRINT i
+NEXT i
+FOR j = 0 TO 2
+FOR k = 0 TO 2
+PRINT j * 10 + k
+NEXT k
+NEXT j
@@ -0,0 +1,7 @@
+DATA 1, 2
+READ a
+RESTORE lab
+lab: x = 1 + 2
+DATA 7
+READ b
+PRINT a, b
@@ -0,0 +1,35 @@
+#!/bin/sh
+# Regression tests: runs each tests/*.bas on the tree interpreter with -raw
+# and compares what it prints with the .expected file beside it. Programs
+# named *-jfr.bas run with JFR events on and must also record a
+# basic.ForLoop event. Compile first, by default into out:
+#   javac -d out src/*.java && tests/run.sh [classes]
+cd "$(dirname "$0")/.." || exit 1
+classes=${1:-out}
+work=$(mktemp -d)
+trap 'rm -rf "$work"' EXIT
+failed=0
+for program in tests/*.bas; do
+    name=$(basename "$program" .bas)
+    case "$name" in
+        *-jfr) flags="-Dbasic.jfr=true -Xlog:jfr+startup=error -XX:StartFlightRecording:filename=$work/$name.jfr" ;;
+        *) flags="" ;;
+    esac
+    java $flags -cp "$classes" Basic -raw "$program" > "$work/$name.out" 2>&1
+    if ! diff "tests/$name.expected" "$work/$name.out" > "$work/$name.diff"; then
+        echo "FAIL $name"
+        cat "$work/$name.diff"
+        failed=1
+        continue
+    fi
+    case "$name" in
+        *-jfr)
+            if ! jfr print --events basic.ForLoop "$work/$name.jfr" | grep -q "basic.ForLoop"; then
+                echo "FAIL $name: no basic.ForLoop event recorded"
+                failed=1
+                continue
+            fi ;;
+    esac
+    echo "ok   $name"
+done
+exit $failed